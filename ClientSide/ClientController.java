@@ -1,25 +1,26 @@
 package ClientSide;
 
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.chart.LineChart;
 import javafx.scene.chart.NumberAxis;
-import javafx.scene.chart.XYChart;
 import javafx.scene.control.*;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
+import javafx.util.Duration;
+import shared.AppLog;
+import shared.LogEntry;
+import shared.LogView;
+import shared.MetricRingBuffer;
+import shared.SeriesRenderer;
 import shared.SystemInfo;
 
-import java.io.*;
-import java.lang.management.ManagementFactory;
-import java.lang.management.OperatingSystemMXBean;
-import java.net.Socket;
-import java.time.LocalDateTime;
+import java.io.IOException;
 import java.time.format.DateTimeFormatter;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 public class ClientController {
     @FXML private Label hostnameLabel;
@@ -37,29 +38,50 @@ public class ClientController {
     @FXML private TextField serverPortField;
     @FXML private Button connectButton;
     @FXML private Button disconnectButton;
-    @FXML private TextArea logArea;
+    @FXML private ListView<LogEntry> logList;
     
-    private ScheduledExecutorService scheduler;
-    private ObjectOutputStream outputStream;
-    private Socket socket;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+    
+    private final AppLog appLog = new AppLog();
+    private LogView logView;
+    private MetricSampler sampler;
+    private SampleSender sender;
+    private Timeline refreshTimer;
+    private SystemInfo shownInfo;
+    private SampleSender.State shownState = SampleSender.State.DISCONNECTED;
     private boolean isConnected = false;
     private String serverIP = "localhost";
     private int serverPort = 5000;
-    private int timeCounter = 0;
+    private final long startMillis = System.currentTimeMillis();
     
-    private XYChart.Series<Number, Number> cpuSeries;
-    private XYChart.Series<Number, Number> memorySeries;
+    private final MetricRingBuffer cpuHistory = MetricRingBuffer.forRetention(MetricRingBuffer.defaultRetentionSeconds());
+    private final MetricRingBuffer memoryHistory = MetricRingBuffer.forRetention(MetricRingBuffer.defaultRetentionSeconds());
+    private SeriesRenderer cpuSeries;
+    private SeriesRenderer memorySeries;
     
     public void initialize() {
+        logView = new LogView(appLog, logList);
         serverIPField.setText(serverIP);
         serverPortField.setText(String.valueOf(serverPort));
         
         setupCharts();
-        updateLocalInfo();
         
-        // Update local info every second
-        scheduler = Executors.newSingleThreadScheduledExecutor();
-        scheduler.scheduleAtFixedRate(this::updateLocalInfo, 0, 1, TimeUnit.SECONDS);
+        // Sample every second on the sampler thread; history and sending happen there too
+        sender = new SampleSender(createSpool(), this::log);
+        sampler = new MetricSampler(this::log);
+        sampler.addListener((time, info) -> {
+            cpuHistory.add(time, info.getCpuUsage());
+            memoryHistory.add(time, info.getMemoryUsagePercentage());
+        });
+        sampler.addListener(sender::offer);
+        sender.setOnControl(sampler::apply);
+        sampler.start(Long.getLong("rms.sampleMs", 1000));
+        
+        // Redraw at the UI's own rate from the latest snapshot
+        refreshTimer = new Timeline(new KeyFrame(Duration.millis(Long.getLong("rms.ui.refreshMs", 1000)),
+            e -> refreshView()));
+        refreshTimer.setCycleCount(Animation.INDEFINITE);
+        refreshTimer.play();
     }
     
     private void setupCharts() {
@@ -84,6 +106,7 @@ public class ClientController {
         cpuChart.setTitle("CPU Usage Over Time");
         cpuChart.setPrefSize(350, 250);
         cpuChart.setAnimated(false);
+        cpuChart.setCreateSymbols(false);
         
         // Create Memory Chart
         NumberAxis memoryXAxis = new NumberAxis();
@@ -95,6 +118,7 @@ public class ClientController {
         memoryChart.setTitle("Memory Usage Over Time");
         memoryChart.setPrefSize(350, 250);
         memoryChart.setAnimated(false);
+        memoryChart.setCreateSymbols(false);
         
         setupChartSeries();
         
@@ -109,79 +133,82 @@ public class ClientController {
     }
     
     private void setupChartSeries() {
-        cpuSeries = new XYChart.Series<>();
-        cpuSeries.setName("CPU");
         if (cpuChart != null) {
-            cpuChart.getData().add(cpuSeries);
+            cpuSeries = new SeriesRenderer(cpuHistory, cpuChart, "CPU", startMillis);
         }
         
-        memorySeries = new XYChart.Series<>();
-        memorySeries.setName("Memory");
         if (memoryChart != null) {
-            memoryChart.getData().add(memorySeries);
+            memorySeries = new SeriesRenderer(memoryHistory, memoryChart, "Memory", startMillis);
         }
     }
     
-    private void updateLocalInfo() {
-        Platform.runLater(() -> {
-            try {
-                OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
-                com.sun.management.OperatingSystemMXBean sunOsBean = 
-                    (com.sun.management.OperatingSystemMXBean) osBean;
-                
-                String hostname = java.net.InetAddress.getLocalHost().getHostName();
-                String os = System.getProperty("os.name") + " " + System.getProperty("os.version");
-                int cores = Runtime.getRuntime().availableProcessors();
-                double cpuUsage = sunOsBean.getSystemCpuLoad() * 100;
-                long totalMemory = sunOsBean.getTotalPhysicalMemorySize();
-                long freeMemory = sunOsBean.getFreePhysicalMemorySize();
-                long usedMemory = totalMemory - freeMemory;
-                
-                // Update labels
-                hostnameLabel.setText(hostname);
-                osLabel.setText(os);
-                cpuCoresLabel.setText(cores + " cores");
-                cpuUsageLabel.setText(String.format("%.1f%%", cpuUsage));
-                memoryUsageLabel.setText(String.format("%.1f GB / %.1f GB (%.1f%%)",
-                    bytesToGB(usedMemory), bytesToGB(totalMemory),
-                    (usedMemory * 100.0 / totalMemory)));
-                timestampLabel.setText(LocalDateTime.now().format(
-                    DateTimeFormatter.ofPattern("HH:mm:ss")));
-                
-                // Update charts if they exist
-                if (cpuSeries != null && memorySeries != null) {
-                    cpuSeries.getData().add(new XYChart.Data<>(timeCounter, cpuUsage));
-                    memorySeries.getData().add(new XYChart.Data<>(timeCounter, 
-                        (usedMemory * 100.0 / totalMemory)));
-                    
-                    // Limit data points to last 50
-                    if (cpuSeries.getData().size() > 50) {
-                        cpuSeries.getData().remove(0);
-                        memorySeries.getData().remove(0);
-                    }
-                    
-                    timeCounter++;
-                }
-                
-                // Send to server if connected
-                if (isConnected && outputStream != null) {
-                    SystemInfo info = new SystemInfo(hostname, os, cores, cpuUsage,
-                        totalMemory, usedMemory, "Connected");
-                    outputStream.writeObject(info);
-                    outputStream.flush();
-                }
-                
-            } catch (Exception e) {
-                log("Error updating system info: " + e.getMessage());
-                e.printStackTrace();
-            }
-        });
+    private SampleSpool createSpool() {
+        try {
+            return SampleSpool.fromSystemProperties();
+        } catch (IOException e) {
+            log("Spool file unavailable, buffering in memory only: " + e.getMessage());
+            return new SampleSpool(Integer.getInteger("rms.spool.capacity", 3600));
+        }
+    }
+    
+    private void refreshView() {
+        updateConnectionStatus();
+        
+        SystemInfo info = sampler.latest();
+        if (info == null || info == shownInfo) return;
+        
+        // Static facts only need to be shown once
+        if (shownInfo == null) {
+            hostnameLabel.setText(info.getHostname());
+            osLabel.setText(info.getOs());
+            cpuCoresLabel.setText(info.getCpuCores() + " cores");
+        }
+        shownInfo = info;
+        
+        cpuUsageLabel.setText(String.format("%.1f%%", info.getCpuUsage()));
+        memoryUsageLabel.setText(String.format("%.1f GB / %.1f GB (%.1f%%)",
+            bytesToGB(info.getUsedMemory()), bytesToGB(info.getTotalMemory()),
+            info.getMemoryUsagePercentage()));
+        timestampLabel.setText(info.getTimestamp().format(TIME_FORMAT));
+        
+        // Redraw charts if they exist
+        if (cpuSeries != null && memorySeries != null) {
+            cpuSeries.render();
+            memorySeries.render();
+        }
     }
     
     private double bytesToGB(long bytes) {
         return bytes / (1024.0 * 1024.0 * 1024.0);
     }
     
+    private void updateConnectionStatus() {
+        SampleSender.State state = sender.getState();
+        if (state == SampleSender.State.RECONNECTING) {
+            statusLabel.setText("Reconnecting (" + sender.backlog() + " samples buffered)");
+        }
+        if (state == shownState) return;
+        shownState = state;
+        
+        switch (state) {
+            case CONNECTING:
+                statusLabel.setText("Connecting...");
+                statusLabel.setStyle("-fx-text-fill: orange;");
+                break;
+            case CONNECTED:
+                statusLabel.setText("Connected to server");
+                statusLabel.setStyle("-fx-text-fill: green;");
+                break;
+            case RECONNECTING:
+                statusLabel.setStyle("-fx-text-fill: red;");
+                break;
+            case DISCONNECTED:
+                statusLabel.setText("Disconnected");
+                statusLabel.setStyle("-fx-text-fill: orange;");
+                break;
+        }
+    }
+    
     @FXML
     private void connectToServer() {
         if (isConnected) return;
@@ -189,66 +216,54 @@ public class ClientController {
         try {
             serverIP = serverIPField.getText();
             serverPort = Integer.parseInt(serverPortField.getText());
-            
-            socket = new Socket(serverIP, serverPort);
-            outputStream = new ObjectOutputStream(socket.getOutputStream());
-            isConnected = true;
-            
-            Platform.runLater(() -> {
-                statusLabel.setText("Connected to server");
-                statusLabel.setStyle("-fx-text-fill: green;");
-                connectButton.setDisable(true);
-                disconnectButton.setDisable(false);
-                log("Connected to server at " + serverIP + ":" + serverPort);
-            });
-            
-        } catch (Exception e) {
-            Platform.runLater(() -> {
-                statusLabel.setText("Connection failed");
-                statusLabel.setStyle("-fx-text-fill: red;");
-                log("Failed to connect: " + e.getMessage());
-            });
+        } catch (NumberFormatException e) {
+            statusLabel.setText("Connection failed");
+            statusLabel.setStyle("-fx-text-fill: red;");
+            log("Invalid port: " + serverPortField.getText());
+            return;
         }
+        
+        // Connecting, retries and backoff all happen on the sender thread
+        sender.start(serverIP, serverPort);
+        isConnected = true;
+        connectButton.setDisable(true);
+        disconnectButton.setDisable(false);
+        updateConnectionStatus();
     }
     
     @FXML
     private void disconnectFromServer() {
         if (!isConnected) return;
         
-        try {
-            isConnected = false;
-            if (outputStream != null) outputStream.close();
-            if (socket != null && !socket.isClosed()) socket.close();
-            
-            Platform.runLater(() -> {
-                statusLabel.setText("Disconnected");
-                statusLabel.setStyle("-fx-text-fill: orange;");
-                connectButton.setDisable(false);
-                disconnectButton.setDisable(true);
-                log("Disconnected from server");
-            });
-            
-        } catch (IOException e) {
-            log("Error disconnecting: " + e.getMessage());
-        }
+        isConnected = false;
+        sender.stop();
+        
+        Platform.runLater(() -> {
+            updateConnectionStatus();
+            connectButton.setDisable(false);
+            disconnectButton.setDisable(true);
+            log("Disconnected from server");
+        });
     }
     
     private void log(String message) {
-        Platform.runLater(() -> {
-            logArea.appendText(LocalDateTime.now().format(
-                DateTimeFormatter.ofPattern("HH:mm:ss")) + " - " + message + "\n");
-        });
+        appLog.log("client", message);
     }
     
     @FXML
     private void clearLog() {
-        logArea.clear();
+        logView.clear();
     }
     
     public void stopMonitoring() {
         disconnectFromServer();
-        if (scheduler != null) {
-            scheduler.shutdown();
+        if (refreshTimer != null) {
+            refreshTimer.stop();
+        }
+        if (sampler != null) {
+            sampler.stop();
         }
+        logView.stop();
+        appLog.close();
     }
 }
\ No newline at end of file
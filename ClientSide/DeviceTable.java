@@ -0,0 +1,83 @@
+package ClientSide;
+
+import shared.MetricSet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * Devices seen in a /proc table, looked up by the raw name bytes so a known
+ * device costs no String. Each device keeps its previous counters and metric
+ * slots; ignored devices are remembered so they are only judged once.
+ */
+final class DeviceTable {
+    static final class Device {
+        final String name;
+        final byte[] key;
+        final boolean ignored;
+        final long[] previous;
+        final int[] slots;
+        boolean primed;
+
+        Device(String name, byte[] key, boolean ignored, int counters, int metrics) {
+            this.name = name;
+            this.key = key;
+            this.ignored = ignored;
+            this.previous = new long[counters];
+            this.slots = new int[metrics];
+        }
+    }
+
+    private final String prefix;
+    private final String[] suffixes;
+    private final int counters;
+    private final Predicate<String> accept;
+    private Device[] devices = new Device[8];
+    private int count;
+
+    // Metric names are prefix + "." + device + "." + suffix
+    DeviceTable(String prefix, String[] suffixes, int counters, Predicate<String> accept) {
+        this.prefix = prefix;
+        this.suffixes = suffixes;
+        this.counters = counters;
+        this.accept = accept;
+    }
+
+    Device lookup(byte[] data, int start, int end, MetricSet metrics) {
+        for (int i = 0; i < count; i++) {
+            byte[] key = devices[i].key;
+            if (Arrays.equals(key, 0, key.length, data, start, end)) {
+                return devices[i];
+            }
+        }
+        byte[] key = Arrays.copyOfRange(data, start, end);
+        String name = new String(key, StandardCharsets.US_ASCII);
+        boolean ignored = !fits(name) || !accept.test(name);
+        Device device = new Device(name, key, ignored, counters, suffixes.length);
+        if (!ignored) {
+            for (int i = 0; i < suffixes.length; i++) {
+                device.slots[i] = metrics.slot(prefix + "." + name + "." + suffixes[i]);
+            }
+        }
+        if (count == devices.length) {
+            devices = Arrays.copyOf(devices, count * 2);
+        }
+        devices[count++] = device;
+        return device;
+    }
+
+    // Counters can go backwards when a device is re-attached; that interval reads as zero
+    static double rate(long current, long previous, double seconds) {
+        return current < previous ? 0 : (current - previous) / seconds;
+    }
+
+    private boolean fits(String name) {
+        for (String suffix : suffixes) {
+            if (prefix.length() + name.length() + suffix.length() + 2 > MetricSet.MAX_NAME_LENGTH) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,94 @@
+package ClientSide;
+
+import shared.MetricCollector;
+import shared.MetricSet;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Per-disk throughput and utilisation from {@code /proc/diskstats}, as
+ * {@code disk.<dev>.readBytesPerSec}, {@code writeBytesPerSec} and
+ * {@code util} (percent of time with I/O in flight). Only whole block devices
+ * listed in {@code /sys/block} are reported, without loop and ram devices.
+ */
+public class DiskStatsCollector implements MetricCollector {
+    private static final String PATH = "/proc/diskstats";
+    private static final int SECTOR_BYTES = 512;
+    private static final int READ_SECTORS = 0;
+    private static final int WRITE_SECTORS = 1;
+    private static final int IO_MILLIS = 2;
+
+    private final DeviceTable devices = new DeviceTable("disk",
+            new String[] {"readBytesPerSec", "writeBytesPerSec", "util"}, 3, DiskStatsCollector::isWholeDisk);
+    private ProcFile file;
+    private long previousNanos;
+
+    @Override
+    public String getName() {
+        return "disk";
+    }
+
+    @Override
+    public boolean isSupported() {
+        return Files.isReadable(Paths.get(PATH));
+    }
+
+    @Override
+    public void open() throws IOException {
+        file = new ProcFile(PATH);
+    }
+
+    @Override
+    public void collect(MetricSet metrics) throws IOException {
+        long now = System.nanoTime();
+        double seconds = previousNanos == 0 ? 0 : (now - previousNanos) / 1e9;
+        previousNanos = now;
+        file.load();
+        while (file.hasMore()) {
+            file.nextLong();
+            file.nextLong();
+            int start = file.nextToken((byte) ' ');
+            DeviceTable.Device device = devices.lookup(file.data(), start, file.position(), metrics);
+            if (device.ignored) {
+                file.nextLine();
+                continue;
+            }
+            file.nextLong();                       // reads completed
+            file.nextLong();                       // reads merged
+            long readSectors = file.nextLong();
+            file.nextLong();                       // ms reading
+            file.nextLong();                       // writes completed
+            file.nextLong();                       // writes merged
+            long writeSectors = file.nextLong();
+            file.nextLong();                       // ms writing
+            file.nextLong();                       // I/Os in flight
+            long ioMillis = file.nextLong();
+            file.nextLine();
+
+            long[] previous = device.previous;
+            if (device.primed && seconds > 0) {
+                metrics.set(device.slots[0], DeviceTable.rate(readSectors, previous[READ_SECTORS], seconds) * SECTOR_BYTES);
+                metrics.set(device.slots[1], DeviceTable.rate(writeSectors, previous[WRITE_SECTORS], seconds) * SECTOR_BYTES);
+                metrics.set(device.slots[2], Math.min(100, DeviceTable.rate(ioMillis, previous[IO_MILLIS], seconds) / 10));
+            }
+            previous[READ_SECTORS] = readSectors;
+            previous[WRITE_SECTORS] = writeSectors;
+            previous[IO_MILLIS] = ioMillis;
+            device.primed = true;
+        }
+    }
+
+    private static boolean isWholeDisk(String name) {
+        return !name.startsWith("loop") && !name.startsWith("ram")
+                && Files.isDirectory(Paths.get("/sys/block", name));
+    }
+
+    @Override
+    public void close() {
+        if (file != null) {
+            file.close();
+        }
+    }
+}
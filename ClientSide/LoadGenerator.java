@@ -0,0 +1,291 @@
+package ClientSide;
+
+import shared.EpochClock;
+import shared.LatencyHistogram;
+import shared.SamplingControl;
+import shared.SystemInfo;
+import shared.SystemInfoCodec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Headless synthetic fleet: each simulated host opens its own connection,
+ * speaks the client protocol and sends random-walk CPU and memory samples.
+ * Latency is measured from writing a batch to receiving its ACK.
+ *
+ * Usage: {@code LoadGenerator [host] [port]}. Settings:
+ * <pre>
+ *   rms.load.hosts          simulated hosts (default 1000)
+ *   rms.load.prefix         hostname prefix, so several generators can share a server (default loadgen)
+ *   rms.load.rateHz         samples per second per host (default 1)
+ *   rms.load.batch          samples per frame (default 1)
+ *   rms.load.rampSec        spread initial connects over this many seconds (default 5)
+ *   rms.load.durationSec    run time after ramp-up, 0 runs until killed (default 60)
+ *   rms.load.churnPerMin    percent of hosts that reconnect each minute (default 0)
+ *   rms.load.burstEverySec  start a burst this often, 0 disables (default 0)
+ *   rms.load.burstSec       burst length (default 5)
+ *   rms.load.burstFactor    rate multiplier during a burst (default 10)
+ * </pre>
+ * Every second it prints samples sent and acknowledged, connected hosts and
+ * ACK latency percentiles for that second; a summary follows at the end.
+ *
+ * Hosts follow the server's CONTROL frames like real clients do: a
+ * controlled interval replaces {@code rms.load.rateHz} and bursts, and a
+ * paused host sends nothing until it is resumed or reconnects.
+ */
+public class LoadGenerator {
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    // Send times are kept per sequence number modulo this, far beyond any sane backlog
+    private static final int INFLIGHT_SLOTS = 1 << 12;
+
+    private final String serverHost;
+    private final int serverPort;
+    private final int hosts = Integer.getInteger("rms.load.hosts", 1000);
+    private final String prefix = System.getProperty("rms.load.prefix", "loadgen");
+    private final double rateHz = Double.parseDouble(System.getProperty("rms.load.rateHz", "1"));
+    private final int batch = Math.max(1, Math.min(SystemInfoCodec.MAX_BATCH, Integer.getInteger("rms.load.batch", 1)));
+    private final long rampMillis = Long.getLong("rms.load.rampSec", 5) * 1000;
+    private final long durationMillis = Long.getLong("rms.load.durationSec", 60) * 1000;
+    private final double churnPerMin = Double.parseDouble(System.getProperty("rms.load.churnPerMin", "0"));
+    private final long burstEveryMillis = Long.getLong("rms.load.burstEverySec", 0) * 1000;
+    private final long burstMillis = Long.getLong("rms.load.burstSec", 5) * 1000;
+    private final double burstFactor = Double.parseDouble(System.getProperty("rms.load.burstFactor", "10"));
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder acked = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder controlled = new LongAdder();
+    private final AtomicInteger connected = new AtomicInteger();
+    private final LatencyHistogram interval = new LatencyHistogram();
+    private final LatencyHistogram overall = new LatencyHistogram();
+    private final long startNanos = System.nanoTime();
+    private volatile boolean isRunning = true;
+
+    public LoadGenerator(String serverHost, int serverPort) {
+        this.serverHost = serverHost;
+        this.serverPort = serverPort;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : Integer.getInteger("rms.port", 5000);
+        new LoadGenerator(host, port).run();
+    }
+
+    public void run() throws InterruptedException {
+        System.out.printf("Simulating %d hosts at %.2f Hz (batch %d) against %s:%d%n",
+                hosts, rateHz, batch, serverHost, serverPort);
+        for (int i = 0; i < hosts; i++) {
+            int id = i;
+            long delay = hosts > 1 ? rampMillis * i / hosts : 0;
+            Thread.ofVirtual().name("load-host-" + i).start(() -> simulate(id, delay));
+        }
+
+        long deadline = durationMillis > 0 ? rampMillis + durationMillis : Long.MAX_VALUE;
+        long lastSent = 0, lastAcked = 0;
+        for (long second = 1; elapsedMillis() < deadline; second++) {
+            Thread.sleep(Math.max(0, second * 1000 - elapsedMillis()));
+            long totalSent = sent.sum(), totalAcked = acked.sum();
+            System.out.printf("t=%3ds hosts=%d sent/s=%d acked/s=%d p50=%.2fms p99=%.2fms p999=%.2fms max=%.2fms%s%n",
+                    second, connected.get(), totalSent - lastSent, totalAcked - lastAcked,
+                    millis(interval.percentile(0.50)), millis(interval.percentile(0.99)),
+                    millis(interval.percentile(0.999)), millis(interval.getMax()),
+                    inBurst(elapsedMillis()) ? " [burst]" : "");
+            interval.reset();
+            lastSent = totalSent;
+            lastAcked = totalAcked;
+        }
+        isRunning = false;
+
+        double seconds = elapsedMillis() / 1000.0;
+        System.out.printf("Summary: sent=%d acked=%d (%.0f samples/s) reconnects=%d failures=%d controls=%d%n",
+                sent.sum(), acked.sum(), acked.sum() / seconds, reconnects.sum(), failures.sum(), controlled.sum());
+        System.out.printf("Latency: p50=%.2fms p90=%.2fms p99=%.2fms p999=%.2fms max=%.2fms mean=%.2fms%n",
+                millis(overall.percentile(0.50)), millis(overall.percentile(0.90)),
+                millis(overall.percentile(0.99)), millis(overall.percentile(0.999)),
+                millis(overall.getMax()), overall.getMean() / 1000.0);
+    }
+
+    // One simulated host: connect, send until churned or failed, reconnect
+    private void simulate(int id, long startDelayMillis) {
+        sleepMillis(startDelayMillis);
+        Random random = new Random(id);
+        Walk cpu = new Walk(random, 5 + random.nextDouble() * 60, 4, 0, 100);
+        long totalMemory = (4L + random.nextInt(61)) << 30;
+        Walk used = new Walk(random, totalMemory * (0.2 + random.nextDouble() * 0.6), totalMemory / 200.0,
+                0, totalMemory);
+        SystemInfo identity = new SystemInfo(String.format("%s-%05d", prefix, id), "Linux", 2 + random.nextInt(63),
+                cpu.value, totalMemory, (long) used.value, "Connected");
+
+        while (isRunning) {
+            try {
+                runConnection(identity, cpu, used);
+            } catch (IOException e) {
+                failures.increment();
+                sleepMillis(500 + ThreadLocalRandom.current().nextLong(500));
+            }
+            reconnects.increment();
+        }
+    }
+
+    private void runConnection(SystemInfo identity, Walk cpu, Walk used) throws IOException {
+        Socket socket = new Socket();
+        Thread reader = null;
+        try {
+            socket.connect(new InetSocketAddress(serverHost, serverPort), CONNECT_TIMEOUT_MS);
+            socket.setTcpNoDelay(true);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+            SystemInfoCodec codec = new SystemInfoCodec();
+            codec.writeHello(identity, out);
+            out.flush();
+            codec.readWelcome(in);
+
+            connected.incrementAndGet();
+            try {
+                long[] sendNanos = new long[INFLIGHT_SLOTS];
+                AtomicReference<SamplingControl> control = new AtomicReference<>(SamplingControl.DEFAULT);
+                reader = Thread.ofVirtual().start(() -> readAcks(socket, in, sendNanos, control));
+                sendUntilChurned(codec, out, cpu, used, sendNanos, control);
+            } finally {
+                connected.decrementAndGet();
+            }
+        } finally {
+            socket.close();
+            if (reader != null) {
+                reader.interrupt();
+            }
+        }
+    }
+
+    private void sendUntilChurned(SystemInfoCodec codec, DataOutputStream out, Walk cpu, Walk used,
+                                  long[] sendNanos, AtomicReference<SamplingControl> control) throws IOException {
+        long[] times = new long[batch];
+        double[] cpuValues = new double[batch];
+        long[] usedValues = new long[batch];
+        // Chance per batch that this host drops its connection, from the per-minute churn rate
+        double churnChance = churnPerMin / 100.0 / 60.0 / (rateHz / batch);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long seq = 0;
+        long next = System.nanoTime() + random.nextLong((long) (1e9 / rateHz) + 1);
+
+        while (isRunning) {
+            for (int i = 0; i < batch; i++) {
+                SamplingControl current = control.get();
+                while (current.isPaused() && isRunning) {
+                    sleepMillis(100);
+                    current = control.get();
+                    next = System.nanoTime();
+                }
+                next += current.getIntervalMillis() > 0 ? current.getIntervalMillis() * 1_000_000L
+                        : (long) (1e9 / (inBurst(elapsedMillis()) ? rateHz * burstFactor : rateHz));
+                parkUntil(next);
+                times[i] = EpochClock.nanos();
+                cpuValues[i] = cpu.step();
+                usedValues[i] = (long) used.step();
+            }
+            long lastSeq = seq + batch - 1;
+            sendNanos[(int) (lastSeq % INFLIGHT_SLOTS)] = System.nanoTime();
+            codec.writeBatch(seq, batch, times, cpuValues, usedValues, out);
+            out.flush();
+            seq += batch;
+            sent.add(batch);
+
+            if (churnChance > 0 && random.nextDouble() < churnChance) {
+                return;
+            }
+        }
+    }
+
+    private void readAcks(Socket socket, DataInputStream in, long[] sendNanos,
+                          AtomicReference<SamplingControl> control) {
+        SystemInfoCodec codec = new SystemInfoCodec();
+        long lastAcked = -1;
+        try {
+            while (!socket.isClosed()) {
+                byte type = codec.readFrame(in);
+                if (type == SystemInfoCodec.CONTROL) {
+                    control.set(codec.lastControl());
+                    controlled.increment();
+                } else if (type == SystemInfoCodec.ACK) {
+                    long seq = codec.lastSeq();
+                    long latencyMicros = (System.nanoTime() - sendNanos[(int) (seq % INFLIGHT_SLOTS)]) / 1000;
+                    interval.record(latencyMicros);
+                    overall.record(latencyMicros);
+                    acked.add(seq - lastAcked);
+                    lastAcked = seq;
+                }
+            }
+        } catch (IOException e) {
+            // Connection closed by churn, shutdown or the server
+        }
+    }
+
+    private boolean inBurst(long elapsedMillis) {
+        return burstEveryMillis > 0 && elapsedMillis >= rampMillis
+                && (elapsedMillis - rampMillis) % burstEveryMillis >= burstEveryMillis - burstMillis;
+    }
+
+    private long elapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static void parkUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static void sleepMillis(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    // Mean-reverting random walk clamped to [min, max]
+    private static final class Walk {
+        private final Random random;
+        private final double mean;
+        private final double step;
+        private final double min;
+        private final double max;
+        double value;
+
+        Walk(Random random, double mean, double step, double min, double max) {
+            this.random = random;
+            this.mean = mean;
+            this.step = step;
+            this.min = min;
+            this.max = max;
+            this.value = mean;
+        }
+
+        double step() {
+            value += random.nextGaussian() * step + (mean - value) * 0.05;
+            value = Math.max(min, Math.min(max, value));
+            return value;
+        }
+    }
+}
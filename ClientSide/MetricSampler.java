@@ -0,0 +1,185 @@
+package ClientSide;
+
+import shared.EpochClock;
+import shared.MetricCollector;
+import shared.MetricSet;
+import shared.SamplingControl;
+import shared.SystemInfo;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Collects local metrics on its own scheduled thread and publishes immutable
+ * {@link SystemInfo} snapshots. Facts that cannot change while the process
+ * runs (hostname, OS, core count, total memory) are looked up once.
+ *
+ * Listeners run on the sampler thread and must hand work off rather than block;
+ * {@link #latest()} lets a UI poll at its own refresh rate instead.
+ *
+ * Named metrics come from the {@link MetricCollector}s on the class path that
+ * support this platform; {@code rms.collectors} (for example {@code cpu,net})
+ * limits which ones run.
+ *
+ * The server can change the interval, pause sampling or narrow the collectors
+ * further with a {@link SamplingControl}; {@link SamplingControl#DEFAULT}
+ * restores the settings the sampler was started with.
+ */
+public class MetricSampler {
+    public interface Listener {
+        void onSample(long timeMillis, SystemInfo info);
+    }
+
+    private final com.sun.management.OperatingSystemMXBean osBean =
+            (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    private final String hostname;
+    private final String os;
+    private final int cores;
+    private final long totalMemory;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Consumer<String> log;
+    // Sampler thread only
+    private final List<MetricCollector> collectors;
+    private final MetricSet metrics = new MetricSet();
+    private List<String> enabledCollectors;
+    private ScheduledFuture<?> task;
+    private long ownIntervalMillis;
+    private SamplingControl control = SamplingControl.DEFAULT;
+    private final ScheduledExecutorService scheduler;
+    private volatile SystemInfo latest;
+
+    public MetricSampler(Consumer<String> log) {
+        this.log = log;
+        this.collectors = loadCollectors(log);
+        this.hostname = resolveHostname();
+        this.os = System.getProperty("os.name") + " " + System.getProperty("os.version");
+        this.cores = Runtime.getRuntime().availableProcessors();
+        this.totalMemory = osBean.getTotalPhysicalMemorySize();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metric-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void start(long intervalMillis) {
+        scheduler.execute(() -> {
+            ownIntervalMillis = intervalMillis;
+            task = scheduler.scheduleAtFixedRate(this::sample, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    // Takes effect on the sampler thread, after any sample in progress
+    public void apply(SamplingControl newControl) {
+        scheduler.execute(() -> {
+            SamplingControl previous = control;
+            control = newControl;
+            enabledCollectors = newControl.getCollectors().isEmpty() ? null
+                    : Arrays.asList(newControl.getCollectors().split("\\s*,\\s*"));
+            boolean started = ownIntervalMillis > 0;
+            if (started && (newControl.isPaused() != previous.isPaused()
+                    || newControl.getIntervalMillis() != previous.getIntervalMillis())) {
+                if (task != null) {
+                    task.cancel(false);
+                    task = null;
+                }
+                if (!newControl.isPaused()) {
+                    long interval = newControl.getIntervalMillis() > 0 ? newControl.getIntervalMillis() : ownIntervalMillis;
+                    task = scheduler.scheduleAtFixedRate(this::sample, interval, interval, TimeUnit.MILLISECONDS);
+                }
+            }
+        });
+    }
+
+    public void stop() {
+        // Queued behind any sample in progress, so collectors are never closed mid-read
+        scheduler.execute(() -> collectors.forEach(MetricCollector::close));
+        scheduler.shutdown();
+    }
+
+    // Most recent snapshot, or null before the first sample
+    public SystemInfo latest() {
+        return latest;
+    }
+
+    private void sample() {
+        try {
+            double cpuUsage = Math.max(0, osBean.getSystemCpuLoad() * 100);
+            long usedMemory = totalMemory - osBean.getFreePhysicalMemorySize();
+            long captured = EpochClock.nanos();
+            collectNamedMetrics();
+
+            SystemInfo info = new SystemInfo(hostname, os, cores, cpuUsage, totalMemory, usedMemory, "Connected",
+                    captured, -1, 0, metrics.snapshot());
+            latest = info;
+            for (Listener listener : listeners) {
+                listener.onSample(info.getTimeMillis(), info);
+            }
+        } catch (RuntimeException e) {
+            // Keep the schedule alive; a failed sample is simply skipped
+            log.accept("Sample failed: " + e);
+        }
+    }
+
+    private void collectNamedMetrics() {
+        metrics.clear();
+        // Indexed so a steady-state round allocates nothing, not even an iterator
+        for (int i = 0; i < collectors.size(); ) {
+            MetricCollector collector = collectors.get(i);
+            if (enabledCollectors != null && !enabledCollectors.contains(collector.getName())) {
+                i++;
+                continue;
+            }
+            try {
+                collector.collect(metrics);
+                i++;
+            } catch (IOException | RuntimeException e) {
+                log.accept("Collector " + collector.getName() + " disabled: " + e.getMessage());
+                collector.close();
+                collectors.remove(i);
+            }
+        }
+    }
+
+    private static List<MetricCollector> loadCollectors(Consumer<String> log) {
+        String enabled = System.getProperty("rms.collectors");
+        List<String> names = enabled == null ? null : Arrays.asList(enabled.split("\\s*,\\s*"));
+        List<MetricCollector> loaded = new ArrayList<>();
+        for (MetricCollector collector : ServiceLoader.load(MetricCollector.class)) {
+            if ((names != null && !names.contains(collector.getName())) || !collector.isSupported()) {
+                continue;
+            }
+            try {
+                collector.open();
+                loaded.add(collector);
+            } catch (IOException e) {
+                log.accept("Collector " + collector.getName() + " unavailable: " + e.getMessage());
+            }
+        }
+        return loaded;
+    }
+
+    private static String resolveHostname() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return System.getenv().getOrDefault("HOSTNAME", "unknown");
+        }
+    }
+}
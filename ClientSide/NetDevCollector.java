@@ -0,0 +1,93 @@
+package ClientSide;
+
+import shared.MetricCollector;
+import shared.MetricSet;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Per-interface traffic from {@code /proc/net/dev}, as
+ * {@code net.<if>.rxBytesPerSec}, {@code txBytesPerSec} and
+ * {@code errorsPerSec} (errors and drops in both directions). Loopback is left out.
+ */
+public class NetDevCollector implements MetricCollector {
+    private static final String PATH = "/proc/net/dev";
+    private static final int RX_BYTES = 0;
+    private static final int TX_BYTES = 1;
+    private static final int ERRORS = 2;
+
+    private final DeviceTable interfaces = new DeviceTable("net",
+            new String[] {"rxBytesPerSec", "txBytesPerSec", "errorsPerSec"}, 3, name -> !name.equals("lo"));
+    private ProcFile file;
+    private long previousNanos;
+
+    @Override
+    public String getName() {
+        return "net";
+    }
+
+    @Override
+    public boolean isSupported() {
+        return Files.isReadable(Paths.get(PATH));
+    }
+
+    @Override
+    public void open() throws IOException {
+        file = new ProcFile(PATH);
+    }
+
+    @Override
+    public void collect(MetricSet metrics) throws IOException {
+        long now = System.nanoTime();
+        double seconds = previousNanos == 0 ? 0 : (now - previousNanos) / 1e9;
+        previousNanos = now;
+        file.load();
+        // Two header lines
+        file.nextLine();
+        file.nextLine();
+        while (file.hasMore()) {
+            // Large counters can follow the colon without a space
+            int start = file.nextToken((byte) ':');
+            DeviceTable.Device device = interfaces.lookup(file.data(), start, file.position(), metrics);
+            if (device.ignored) {
+                file.nextLine();
+                continue;
+            }
+            file.skip(1);
+            long rxBytes = file.nextLong();
+            file.nextLong();                       // rx packets
+            long rxErrors = file.nextLong();
+            long rxDrops = file.nextLong();
+            file.nextLong();                       // rx fifo
+            file.nextLong();                       // rx frame
+            file.nextLong();                       // rx compressed
+            file.nextLong();                       // rx multicast
+            long txBytes = file.nextLong();
+            file.nextLong();                       // tx packets
+            long txErrors = file.nextLong();
+            long txDrops = file.nextLong();
+            file.nextLine();
+
+            long errors = rxErrors + rxDrops + txErrors + txDrops;
+            long[] previous = device.previous;
+            if (device.primed && seconds > 0) {
+                metrics.set(device.slots[0], DeviceTable.rate(rxBytes, previous[RX_BYTES], seconds));
+                metrics.set(device.slots[1], DeviceTable.rate(txBytes, previous[TX_BYTES], seconds));
+                metrics.set(device.slots[2], DeviceTable.rate(errors, previous[ERRORS], seconds));
+            }
+            previous[RX_BYTES] = rxBytes;
+            previous[TX_BYTES] = txBytes;
+            previous[ERRORS] = errors;
+            device.primed = true;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (file != null) {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package ClientSide;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * A /proc file kept open and re-read from offset 0 into a reused buffer,
+ * with a cursor for hand-written parsing. Nothing is allocated per read once
+ * the buffer has grown to fit the file.
+ */
+final class ProcFile implements Closeable {
+    private final RandomAccessFile file;
+    private byte[] data = new byte[8192];
+    private int length;
+    private int pos;
+
+    ProcFile(String path) throws IOException {
+        this.file = new RandomAccessFile(path, "r");
+    }
+
+    // Reads the current contents and puts the cursor at the start
+    void load() throws IOException {
+        file.seek(0);
+        length = 0;
+        int read;
+        while ((read = file.read(data, length, data.length - length)) > 0) {
+            length += read;
+            if (length == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+        }
+        pos = 0;
+    }
+
+    boolean hasMore() {
+        return pos < length;
+    }
+
+    void nextLine() {
+        while (pos < length && data[pos++] != '\n') {
+            // Skip to just past the newline
+        }
+    }
+
+    void skipSpaces() {
+        while (pos < length && (data[pos] == ' ' || data[pos] == '\t')) {
+            pos++;
+        }
+    }
+
+    void skip(int bytes) {
+        pos = Math.min(length, pos + bytes);
+    }
+
+    boolean startsWith(byte[] prefix) {
+        if (length - pos < prefix.length) {
+            return false;
+        }
+        return Arrays.equals(data, pos, pos + prefix.length, prefix, 0, prefix.length);
+    }
+
+    boolean atDigit() {
+        return pos < length && data[pos] >= '0' && data[pos] <= '9';
+    }
+
+    // Unsigned decimal after optional blanks; 0 at the end of the line
+    long nextLong() {
+        skipSpaces();
+        long value = 0;
+        while (pos < length && data[pos] >= '0' && data[pos] <= '9') {
+            value = value * 10 + (data[pos++] - '0');
+        }
+        return value;
+    }
+
+    // Skips blanks and moves past the next run of bytes up to a blank, newline or the given stop byte.
+    // Returns the start offset; the end offset is position() afterwards.
+    int nextToken(byte stop) {
+        skipSpaces();
+        int start = pos;
+        while (pos < length && data[pos] != ' ' && data[pos] != '\t' && data[pos] != '\n' && data[pos] != stop) {
+            pos++;
+        }
+        return start;
+    }
+
+    int position() {
+        return pos;
+    }
+
+    byte[] data() {
+        return data;
+    }
+
+    @Override
+    public void close() {
+        try {
+            file.close();
+        } catch (IOException ignored) {
+            // Nothing to release
+        }
+    }
+}
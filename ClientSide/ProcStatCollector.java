@@ -0,0 +1,103 @@
+package ClientSide;
+
+import shared.MetricCollector;
+import shared.MetricSet;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Total and per-core CPU busy percentage and total iowait from
+ * {@code /proc/stat}, as {@code cpu.total}, {@code cpu.core.N} and
+ * {@code cpu.iowait}.
+ */
+public class ProcStatCollector implements MetricCollector {
+    private static final String PATH = "/proc/stat";
+    private static final byte[] CPU = {'c', 'p', 'u'};
+
+    private ProcFile file;
+    // Index 0 is the aggregate line, index n + 1 is core n
+    private long[] previousTotal = new long[0];
+    private long[] previousIdle = new long[0];
+    private int[] slots = new int[0];
+    private long previousIowait;
+    private int iowaitSlot = -1;
+
+    @Override
+    public String getName() {
+        return "cpu";
+    }
+
+    @Override
+    public boolean isSupported() {
+        return Files.isReadable(Paths.get(PATH));
+    }
+
+    @Override
+    public void open() throws IOException {
+        file = new ProcFile(PATH);
+    }
+
+    @Override
+    public void collect(MetricSet metrics) throws IOException {
+        file.load();
+        // The cpu lines come first; stop at the first line that is not one
+        while (file.hasMore() && file.startsWith(CPU)) {
+            file.skip(CPU.length);
+            int index = file.atDigit() ? (int) file.nextLong() + 1 : 0;
+            long user = file.nextLong();
+            long nice = file.nextLong();
+            long system = file.nextLong();
+            long idle = file.nextLong();
+            long iowait = file.nextLong();
+            long irq = file.nextLong();
+            long softirq = file.nextLong();
+            long steal = file.nextLong();
+            file.nextLine();
+
+            long total = user + nice + system + idle + iowait + irq + softirq + steal;
+            long idleAll = idle + iowait;
+            ensureCapacity(index);
+            long deltaTotal = total - previousTotal[index];
+            if (previousTotal[index] != 0 && deltaTotal > 0) {
+                if (slots[index] < 0) {
+                    slots[index] = metrics.slot(index == 0 ? "cpu.total" : "cpu.core." + (index - 1));
+                }
+                double idleShare = (double) (idleAll - previousIdle[index]) / deltaTotal;
+                metrics.set(slots[index], Math.max(0, Math.min(100, 100 * (1 - idleShare))));
+                if (index == 0) {
+                    if (iowaitSlot < 0) {
+                        iowaitSlot = metrics.slot("cpu.iowait");
+                    }
+                    metrics.set(iowaitSlot, Math.max(0, 100.0 * (iowait - previousIowait) / deltaTotal));
+                }
+            }
+            previousTotal[index] = total;
+            previousIdle[index] = idleAll;
+            if (index == 0) {
+                previousIowait = iowait;
+            }
+        }
+    }
+
+    private void ensureCapacity(int index) {
+        if (index < slots.length) {
+            return;
+        }
+        int size = Math.max(index + 1, slots.length * 2);
+        int old = slots.length;
+        previousTotal = Arrays.copyOf(previousTotal, size);
+        previousIdle = Arrays.copyOf(previousIdle, size);
+        slots = Arrays.copyOf(slots, size);
+        Arrays.fill(slots, old, size, -1);
+    }
+
+    @Override
+    public void close() {
+        if (file != null) {
+            file.close();
+        }
+    }
+}
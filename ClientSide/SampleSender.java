@@ -0,0 +1,241 @@
+package ClientSide;
+
+import shared.MetricValues;
+import shared.SamplingControl;
+import shared.SystemInfo;
+import shared.SystemInfoCodec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Delivers spooled samples to the server on its own thread.
+ *
+ * Samples go into a {@link SampleSpool} and stay there until the server
+ * acknowledges them. When the connection fails the sender reconnects with
+ * jittered exponential backoff ({@code rms.reconnect.minMs} doubling up to
+ * {@code rms.reconnect.maxMs}) and then drains the backlog in batches of up to
+ * {@link SystemInfoCodec#MAX_BATCH} samples. Named metrics are not spooled:
+ * only the latest snapshot is sent, whenever a new one is available.
+ *
+ * CONTROL frames from the server are passed to the {@link #setOnControl}
+ * listener on the reader thread; when the connection ends the listener gets
+ * {@link SamplingControl#DEFAULT}, since the server's settings end with it.
+ */
+public class SampleSender {
+    public enum State { DISCONNECTED, CONNECTING, CONNECTED, RECONNECTING }
+
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final int HANDSHAKE_TIMEOUT_MS = 5000;
+
+    private final SampleSpool spool;
+    private final Consumer<String> log;
+    private final long minBackoffMillis = Long.getLong("rms.reconnect.minMs", 500);
+    private final long maxBackoffMillis = Long.getLong("rms.reconnect.maxMs", 30_000);
+    private volatile SystemInfo identity;
+    private volatile TimedMetrics latestMetrics;
+    private volatile State state = State.DISCONNECTED;
+    private volatile boolean isRunning = false;
+    private volatile Socket socket;
+    private volatile Consumer<SamplingControl> onControl = control -> { };
+    private boolean handshakeDone;
+    private Thread thread;
+    private String serverIP;
+    private int serverPort;
+
+    public SampleSender(SampleSpool spool, Consumer<String> log) {
+        this.spool = spool;
+        this.log = log;
+    }
+
+    // Connects in the background and keeps reconnecting until stop()
+    public synchronized void start(String serverIP, int serverPort) {
+        if (isRunning) return;
+
+        this.serverIP = serverIP;
+        this.serverPort = serverPort;
+        spool.clear();
+        isRunning = true;
+        state = State.CONNECTING;
+
+        thread = new Thread(this::run, "sample-sender");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        isRunning = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+        closeSocket();
+        spool.clear();
+        state = State.DISCONNECTED;
+        onControl.accept(SamplingControl.DEFAULT);
+    }
+
+    // Called on the reader thread; must hand work off rather than block
+    public void setOnControl(Consumer<SamplingControl> onControl) {
+        this.onControl = onControl;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long backlog() {
+        return spool.backlog();
+    }
+
+    // Called from the sampler thread; never blocks on the network
+    public void offer(long timeMillis, SystemInfo info) {
+        if (!isRunning) return;
+        if (identity == null) {
+            identity = info;
+        }
+        spool.add(info.getTimeNanos(), info.getCpuUsage(), info.getUsedMemory());
+        if (info.getMetrics().size() > 0) {
+            latestMetrics = new TimedMetrics(timeMillis, info.getMetrics());
+        }
+    }
+
+    private void run() {
+        long backoff = minBackoffMillis;
+        while (isRunning) {
+            handshakeDone = false;
+            try {
+                connectAndSend();
+            } catch (IOException e) {
+                if (isRunning) {
+                    log.accept((handshakeDone ? "Connection lost: " : "Failed to connect: ") + e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+            closeSocket();
+            if (handshakeDone) {
+                onControl.accept(SamplingControl.DEFAULT);
+            }
+            if (!isRunning) break;
+
+            if (handshakeDone) {
+                backoff = minBackoffMillis;
+            }
+            state = State.RECONNECTING;
+            long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+            backoff = Math.min(maxBackoffMillis, backoff * 2);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    // Runs one connection until it fails or the sender is stopped
+    private void connectAndSend() throws IOException, InterruptedException {
+        while (identity == null) {
+            Thread.sleep(100);
+        }
+
+        Socket connection = new Socket();
+        socket = connection;
+        connection.connect(new InetSocketAddress(serverIP, serverPort), CONNECT_TIMEOUT_MS);
+        connection.setTcpNoDelay(true);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+
+        SystemInfoCodec codec = new SystemInfoCodec();
+        codec.writeHello(identity, out);
+        out.flush();
+        connection.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+        codec.readWelcome(in);
+        connection.setSoTimeout(0);
+
+        handshakeDone = true;
+        state = State.CONNECTED;
+        log.accept("Connected to server at " + serverIP + ":" + serverPort
+                + (spool.backlog() > 0 ? ", sending " + spool.backlog() + " buffered samples" : ""));
+        spool.rewind();
+        startAckReader(connection, in);
+
+        SampleSpool.SpoolBatch batch = new SampleSpool.SpoolBatch(SystemInfoCodec.MAX_BATCH);
+        TimedMetrics sentMetrics = null;
+        // The reader closes the socket when the server goes away, which a paused client would never write to notice
+        while (isRunning && !connection.isClosed()) {
+            boolean wrote = false;
+            if (spool.nextBatch(batch, SystemInfoCodec.MAX_BATCH, 1000) > 0) {
+                codec.writeBatch(batch.firstSeq, batch.count, batch.times, batch.cpu, batch.used, out);
+                wrote = true;
+            }
+            TimedMetrics metrics = latestMetrics;
+            if (metrics != null && metrics != sentMetrics) {
+                codec.writeMetrics(metrics.timeMillis, metrics.values, out);
+                sentMetrics = metrics;
+                wrote = true;
+            }
+            if (wrote) {
+                out.flush();
+            }
+        }
+        if (isRunning) {
+            throw new IOException("Server closed the connection");
+        }
+    }
+
+    private void startAckReader(Socket connection, DataInputStream in) {
+        Thread reader = new Thread(() -> {
+            SystemInfoCodec codec = new SystemInfoCodec();
+            try {
+                while (!connection.isClosed()) {
+                    byte type = codec.readFrame(in);
+                    if (type == SystemInfoCodec.ACK) {
+                        spool.acknowledge(codec.lastSeq());
+                    } else if (type == SystemInfoCodec.CONTROL) {
+                        log.accept("Server set sampling: " + codec.lastControl());
+                        onControl.accept(codec.lastControl());
+                    }
+                }
+            } catch (IOException e) {
+                // Closing ends the writer loop as well
+                try {
+                    connection.close();
+                } catch (IOException ignored) {
+                    // Already closed
+                }
+            }
+        }, "sample-ack-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private static final class TimedMetrics {
+        final long timeMillis;
+        final MetricValues values;
+
+        TimedMetrics(long timeMillis, MetricValues values) {
+            this.timeMillis = timeMillis;
+            this.values = values;
+        }
+    }
+
+    private void closeSocket() {
+        Socket current = socket;
+        socket = null;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                log.accept("Error disconnecting: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package ClientSide;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+/**
+ * Bounded buffer of samples that the server has not acknowledged yet.
+ *
+ * Samples are numbered consecutively. The newest {@code rms.spool.capacity}
+ * live in an in-memory ring of primitives. When the ring overflows, its oldest
+ * sample moves to a spill file if {@code rms.spool.file} is set; once that file
+ * holds {@code rms.spool.fileMaxRecords} samples, or without a file, the oldest
+ * samples are dropped and counted. Samples leave the spool only when
+ * {@link #acknowledge} covers them, so whatever was in flight on a connection
+ * that broke is sent again after {@link #rewind}.
+ *
+ * Thread-safe: the sampler adds, the sender reads and the ACK reader acknowledges.
+ */
+public class SampleSpool {
+    private static final int RECORD_SIZE = 8 + 8 + 8;
+
+    private final long[] times;
+    private final double[] cpu;
+    private final long[] used;
+    private final RandomAccessFile spill;
+    private final long spillMaxRecords;
+
+    // Sequence ranges: spill file [spillBaseSeq, ringSeq), ring [ringSeq, nextSeq),
+    // unacknowledged [oldestSeq, nextSeq), unsent [sendSeq, nextSeq)
+    private long spillBaseSeq = 0;
+    private long ringSeq = 0;
+    private long oldestSeq = 0;
+    private long sendSeq = 0;
+    private long nextSeq = 0;
+    private long dropped = 0;
+
+    // Memory only: overflow drops the oldest samples
+    public SampleSpool(int capacity) {
+        this.times = new long[capacity];
+        this.cpu = new double[capacity];
+        this.used = new long[capacity];
+        this.spill = null;
+        this.spillMaxRecords = 0;
+    }
+
+    public SampleSpool(int capacity, Path spillFile, long spillMaxRecords) throws IOException {
+        this.times = new long[capacity];
+        this.cpu = new double[capacity];
+        this.used = new long[capacity];
+        this.spillMaxRecords = spillMaxRecords;
+        this.spill = new RandomAccessFile(spillFile.toFile(), "rw");
+        spill.setLength(0);
+    }
+
+    public static SampleSpool fromSystemProperties() throws IOException {
+        int capacity = Integer.getInteger("rms.spool.capacity", 3600);
+        String file = System.getProperty("rms.spool.file");
+        if (file == null) {
+            return new SampleSpool(capacity);
+        }
+        return new SampleSpool(capacity, Path.of(file), Long.getLong("rms.spool.fileMaxRecords", 1_000_000));
+    }
+
+    // Capture time in epoch nanoseconds
+    public synchronized void add(long timeNanos, double cpuUsage, long usedMemory) {
+        if (nextSeq - ringSeq == times.length) {
+            evictOldestFromRing();
+        }
+        int slot = (int) (nextSeq % times.length);
+        times[slot] = timeNanos;
+        cpu[slot] = cpuUsage;
+        used[slot] = usedMemory;
+        nextSeq++;
+        notifyAll();
+    }
+
+    /**
+     * Copies up to {@code max} unsent samples into the batch, waiting up to
+     * {@code waitMillis} for one to arrive. Returns the number copied.
+     */
+    public synchronized int nextBatch(SpoolBatch batch, int max, long waitMillis)
+            throws InterruptedException, IOException {
+        if (sendSeq == nextSeq) {
+            wait(waitMillis);
+        }
+        int count = (int) Math.min(max, nextSeq - sendSeq);
+        for (int i = 0; i < count; i++) {
+            long seq = sendSeq + i;
+            if (seq < ringSeq) {
+                spill.seek((seq - spillBaseSeq) * RECORD_SIZE);
+                batch.times[i] = spill.readLong();
+                batch.cpu[i] = spill.readDouble();
+                batch.used[i] = spill.readLong();
+            } else {
+                int slot = (int) (seq % times.length);
+                batch.times[i] = times[slot];
+                batch.cpu[i] = cpu[slot];
+                batch.used[i] = used[slot];
+            }
+        }
+        batch.firstSeq = sendSeq;
+        batch.count = count;
+        sendSeq += count;
+        return count;
+    }
+
+    // Releases every sample up to and including seq
+    public synchronized void acknowledge(long seq) {
+        if (seq < oldestSeq) return;
+        oldestSeq = Math.min(seq + 1, nextSeq);
+        if (oldestSeq >= ringSeq) {
+            ringSeq = oldestSeq;
+            if (spillBaseSeq != ringSeq) {
+                truncateSpill();
+            }
+        }
+    }
+
+    // Called after a reconnect: everything not yet acknowledged is sent again
+    public synchronized void rewind() {
+        sendSeq = oldestSeq;
+    }
+
+    public synchronized long backlog() {
+        return nextSeq - oldestSeq;
+    }
+
+    public synchronized long dropped() {
+        return dropped;
+    }
+
+    public synchronized void clear() {
+        ringSeq = nextSeq;
+        discardBefore(nextSeq);
+        dropped = 0;
+    }
+
+    public synchronized void close() {
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException ignored) {
+                // Nothing to flush
+            }
+        }
+    }
+
+    private void evictOldestFromRing() {
+        if (spill != null && ringSeq - spillBaseSeq >= spillMaxRecords) {
+            // Spill file is full: give up its contents, which are the oldest samples
+            discardBefore(ringSeq);
+        }
+        boolean spilled = spill != null && writeSpilled(ringSeq);
+        ringSeq++;
+        if (!spilled) {
+            discardBefore(ringSeq);
+        }
+    }
+
+    private boolean writeSpilled(long seq) {
+        int slot = (int) (seq % times.length);
+        try {
+            spill.seek((seq - spillBaseSeq) * RECORD_SIZE);
+            spill.writeLong(times[slot]);
+            spill.writeDouble(cpu[slot]);
+            spill.writeLong(used[slot]);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Drops every retained sample before seq, which must not be past ringSeq
+    private void discardBefore(long seq) {
+        dropped += seq - oldestSeq;
+        oldestSeq = seq;
+        sendSeq = Math.max(sendSeq, seq);
+        truncateSpill();
+    }
+
+    private void truncateSpill() {
+        spillBaseSeq = ringSeq;
+        if (spill != null) {
+            try {
+                spill.setLength(0);
+            } catch (IOException ignored) {
+                // Records are addressed from spillBaseSeq, stale bytes are harmless
+            }
+        }
+    }
+
+    // Reusable primitive batch handed to the sender
+    public static final class SpoolBatch {
+        public long firstSeq;
+        public int count;
+        public final long[] times;
+        public final double[] cpu;
+        public final long[] used;
+
+        public SpoolBatch(int capacity) {
+            this.times = new long[capacity];
+            this.cpu = new double[capacity];
+            this.used = new long[capacity];
+        }
+    }
+}
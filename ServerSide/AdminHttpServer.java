@@ -0,0 +1,63 @@
+package ServerSide;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Small HTTP server for local tooling, bound to {@code rms.http.bind}
+ * (loopback by default) on {@code rms.http.port}. Handlers run on virtual
+ * threads so a slow reader never holds up another request.
+ */
+public class AdminHttpServer {
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private AdminHttpServer(HttpServer server) {
+        this.server = server;
+    }
+
+    public static AdminHttpServer start(int port) throws IOException {
+        String bind = System.getProperty("rms.http.bind");
+        InetAddress address = bind != null ? InetAddress.getByName(bind) : InetAddress.getLoopbackAddress();
+        AdminHttpServer admin = new AdminHttpServer(HttpServer.create(new InetSocketAddress(address, port), 0));
+        admin.server.setExecutor(admin.executor);
+        admin.server.start();
+        return admin;
+    }
+
+    public void handle(String path, HttpHandler handler) {
+        server.createContext(path, handler);
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    public static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
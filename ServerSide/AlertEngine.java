@@ -0,0 +1,252 @@
+package ServerSide;
+
+import shared.SystemInfo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Evaluates alert rules against every received sample on its own thread.
+ *
+ * Ingest threads copy samples into a batch under a short lock, the same way
+ * {@link HistoryStore} does, and the engine thread swaps the batch out and
+ * runs each host's rule states over it. Rule states are only touched by the
+ * engine thread. Only transitions (raised or cleared) are emitted, and all
+ * transitions from one pass are handed to the listener as a single list.
+ * If the batch fills up faster than the engine drains it, samples are dropped
+ * and counted instead of blocking ingestion. Disconnects go into the same
+ * batch, in order with the samples, and are never dropped.
+ */
+public class AlertEngine {
+    private final List<AlertRule> rules;
+    private final Consumer<List<AlertEvent>> listener;
+    private final Consumer<String> log;
+    private final long tickMillis = Long.getLong("rms.alert.tickMs", 1000);
+    private final int batchCapacity = Integer.getInteger("rms.alert.batchSize", 1 << 14);
+
+    private final Map<String, HostRules> hosts = new HashMap<>();
+    private final AtomicLong droppedSamples = new AtomicLong();
+
+    private final Object lock = new Object();
+    private Batch filling = new Batch(batchCapacity);
+    private Batch draining = new Batch(batchCapacity);
+
+    private volatile boolean isRunning;
+    private Thread worker;
+
+    public AlertEngine(List<AlertRule> rules, Consumer<List<AlertEvent>> listener, Consumer<String> log) {
+        this.rules = new ArrayList<>(rules);
+        this.listener = listener;
+        this.log = log;
+    }
+
+    // CPU, memory and staleness rules with limits taken from rms.alert.* properties
+    public static List<AlertRule> defaultRules() {
+        List<AlertRule> rules = new ArrayList<>();
+        rules.add(new ThresholdRule(Metric.CPU,
+                Integer.getInteger("rms.alert.cpuPercent", 90),
+                Integer.getInteger("rms.alert.cpuClearPercent", 80),
+                Long.getLong("rms.alert.cpuForSec", 30) * 1000));
+        rules.add(new RollingPercentileRule(Metric.MEMORY, 0.95,
+                Integer.getInteger("rms.alert.memoryMargin", 2),
+                Integer.getInteger("rms.alert.memoryWindow", 600),
+                Integer.getInteger("rms.alert.memoryWarmup", 60),
+                Long.getLong("rms.alert.memoryForSec", 30) * 1000));
+        rules.add(new StaleRule(Long.getLong("rms.alert.staleSec", 10) * 1000));
+        return rules;
+    }
+
+    public void start() {
+        if (isRunning) return;
+        isRunning = true;
+        worker = new Thread(this::evaluateLoop, "alert-engine");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void stop() {
+        isRunning = false;
+        if (worker != null) {
+            synchronized (lock) {
+                lock.notify();
+            }
+            worker = null;
+        }
+    }
+
+    // Called from ingest threads; never waits for evaluation
+    public void submit(long timeMillis, SystemInfo info) {
+        synchronized (lock) {
+            Batch batch = filling;
+            if (batch.size == batch.capacity) {
+                droppedSamples.incrementAndGet();
+                return;
+            }
+            int i = batch.size++;
+            batch.times[i] = timeMillis;
+            batch.infos[i] = info;
+            if (batch.size == batch.capacity / 2) {
+                lock.notify();
+            }
+        }
+    }
+
+    // Forgets a disconnected host once the samples submitted before it are evaluated; its active alerts are cleared
+    public void remove(String hostname) {
+        synchronized (lock) {
+            Batch batch = filling;
+            if (batch.size == batch.capacity) {
+                // Later samples are dropped until the swap, so running these after the batch keeps the order
+                batch.removedWhenFull.add(hostname);
+                return;
+            }
+            int i = batch.size++;
+            batch.removed[i] = hostname;
+        }
+    }
+
+    public long getDroppedSamples() {
+        return droppedSamples.get();
+    }
+
+    private void evaluateLoop() {
+        List<AlertEvent> events = new ArrayList<>();
+        long lastTick = System.currentTimeMillis();
+        while (isRunning) {
+            Batch batch;
+            synchronized (lock) {
+                if (filling.size == 0) {
+                    try {
+                        lock.wait(Math.max(1, Math.min(100, tickMillis)));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                batch = filling;
+                filling = draining;
+                draining = batch;
+            }
+
+            long start = System.nanoTime();
+            try {
+                for (int i = 0; i < batch.size; i++) {
+                    if (batch.infos[i] != null) {
+                        // One bad sample must not cost the disconnects queued behind it
+                        try {
+                            evaluate(batch.times[i], batch.infos[i], events);
+                        } catch (RuntimeException e) {
+                            log.accept("Alert evaluation failed: " + e.getMessage());
+                        }
+                        batch.infos[i] = null;
+                    } else {
+                        forget(batch.removed[i], events);
+                        batch.removed[i] = null;
+                    }
+                }
+                batch.size = 0;
+                for (String hostname : batch.removedWhenFull) {
+                    forget(hostname, events);
+                }
+                batch.removedWhenFull.clear();
+
+                long now = System.currentTimeMillis();
+                if (now - lastTick >= tickMillis) {
+                    lastTick = now;
+                    for (HostRules host : hosts.values()) {
+                        host.tick(now, events);
+                    }
+                }
+            } catch (RuntimeException e) {
+                batch.size = 0;
+                log.accept("Alert evaluation failed: " + e.getMessage());
+            }
+
+            ServerMetrics.ALERT_PASS.record(System.nanoTime() - start);
+
+            if (!events.isEmpty()) {
+                listener.accept(events);
+                events = new ArrayList<>();
+            }
+        }
+    }
+
+    private void evaluate(long timeMillis, SystemInfo info, List<AlertEvent> events) {
+        HostRules host = hosts.get(info.getHostname());
+        if (host == null) {
+            host = new HostRules(info.getHostname());
+            hosts.put(info.getHostname(), host);
+        }
+        host.sample(timeMillis, info, events);
+    }
+
+    private void forget(String hostname, List<AlertEvent> events) {
+        HostRules removed = hosts.remove(hostname);
+        if (removed != null) {
+            removed.clearAll(System.currentTimeMillis(), events);
+        }
+    }
+
+    // Rule states of one host plus which of them are currently raised
+    private final class HostRules {
+        private final String hostname;
+        private final AlertRule.State[] states;
+        private final boolean[] active;
+
+        HostRules(String hostname) {
+            this.hostname = hostname;
+            this.states = new AlertRule.State[rules.size()];
+            this.active = new boolean[rules.size()];
+            for (int i = 0; i < states.length; i++) {
+                states[i] = rules.get(i).newState();
+            }
+        }
+
+        void sample(long timeMillis, SystemInfo info, List<AlertEvent> events) {
+            for (int i = 0; i < states.length; i++) {
+                transition(i, states[i].onSample(timeMillis, info), timeMillis, events);
+            }
+        }
+
+        void tick(long timeMillis, List<AlertEvent> events) {
+            for (int i = 0; i < states.length; i++) {
+                transition(i, states[i].onTick(timeMillis), timeMillis, events);
+            }
+        }
+
+        void clearAll(long timeMillis, List<AlertEvent> events) {
+            for (int i = 0; i < states.length; i++) {
+                if (active[i]) {
+                    active[i] = false;
+                    events.add(new AlertEvent(hostname, rules.get(i).getName(), false, timeMillis, "host disconnected"));
+                }
+            }
+        }
+
+        private void transition(int i, boolean nowActive, long timeMillis, List<AlertEvent> events) {
+            if (nowActive == active[i]) return;
+            active[i] = nowActive;
+            events.add(new AlertEvent(hostname, rules.get(i).getName(), nowActive, timeMillis, states[i].describe()));
+        }
+    }
+
+    // Entry i is a sample, or a disconnect of removed[i] when infos[i] is null
+    private static final class Batch {
+        final int capacity;
+        final long[] times;
+        final SystemInfo[] infos;
+        final String[] removed;
+        final List<String> removedWhenFull = new ArrayList<>();
+        int size;
+
+        Batch(int capacity) {
+            this.capacity = capacity;
+            this.times = new long[capacity];
+            this.infos = new SystemInfo[capacity];
+            this.removed = new String[capacity];
+        }
+    }
+}
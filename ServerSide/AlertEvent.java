@@ -0,0 +1,42 @@
+package ServerSide;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+// A state change of one rule on one host; only transitions are ever emitted.
+public class AlertEvent {
+    private final String hostname;
+    private final String ruleName;
+    private final boolean raised;
+    private final long timeMillis;
+    private final String detail;
+
+    public AlertEvent(String hostname, String ruleName, boolean raised, long timeMillis, String detail) {
+        this.hostname = hostname;
+        this.ruleName = ruleName;
+        this.raised = raised;
+        this.timeMillis = timeMillis;
+        this.detail = detail;
+    }
+
+    public String getHostname() { return hostname; }
+    public String getRuleName() { return ruleName; }
+    public boolean isRaised() { return raised; }
+    public long getTimeMillis() { return timeMillis; }
+    public String getDetail() { return detail; }
+
+    public LocalDateTime getTime() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(timeMillis), ZoneId.systemDefault());
+    }
+
+    // Identifies the alert across its raise and clear events
+    public String key() {
+        return hostname + '\u0000' + ruleName;
+    }
+
+    @Override
+    public String toString() {
+        return (raised ? "ALERT " : "CLEARED ") + hostname + ": " + ruleName + " (" + detail + ")";
+    }
+}
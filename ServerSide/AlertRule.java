@@ -0,0 +1,25 @@
+package ServerSide;
+
+import shared.SystemInfo;
+
+/**
+ * A condition evaluated incrementally per host. Each host gets its own
+ * {@link State}; a state must do constant work per sample and must not look
+ * at history beyond what it keeps itself.
+ */
+public interface AlertRule {
+    String getName();
+
+    State newState();
+
+    interface State {
+        // Returns whether the condition is active after this sample
+        boolean onSample(long timeMillis, SystemInfo info);
+
+        // Periodic check without a sample; returns whether the condition is active
+        boolean onTick(long timeMillis);
+
+        // Human readable detail for the raised alert
+        String describe();
+    }
+}
@@ -0,0 +1,118 @@
+package ServerSide;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Blocking accept loop that runs one ClientHandler per connection on the given executor.
+public class BlockingIngestTransport implements IngestTransport {
+    private static final long ACCEPT_RETRY_MS = 100;
+
+    private final IngestSink sink;
+    private final SessionRegistry sessions;
+    private final ExecutorService handlers;
+    private final String name;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private ServerSocket serverSocket;
+    private volatile boolean isRunning = false;
+
+    public BlockingIngestTransport(IngestSink sink, SessionRegistry sessions, ExecutorService handlers, String name) {
+        this.sink = sink;
+        this.sessions = sessions;
+        this.handlers = handlers;
+        this.name = name;
+    }
+
+    @Override
+    public void start(int port) throws IOException {
+        serverSocket = new ServerSocket(port);
+        isRunning = true;
+        if (handlers instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) handlers;
+            ServerMetrics.REGISTRY.gauge("ingest_pool_threads", "Platform threads in the connection handler pool",
+                    pool::getPoolSize);
+        }
+
+        Thread acceptor = new Thread(this::acceptLoop, "ingest-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    // Only stopping ends the loop; a failure with one connection must not stop the server accepting others
+    private void acceptLoop() {
+        while (isRunning) {
+            Socket clientSocket;
+            try {
+                clientSocket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!isRunning) break;
+                // E.g. out of file descriptors; back off instead of spinning until it clears
+                sink.log("Server error: " + e.getMessage());
+                try {
+                    Thread.sleep(ACCEPT_RETRY_MS);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+                continue;
+            }
+            long accepted = System.nanoTime();
+            ServerMetrics.CONNECTIONS_ACCEPTED.increment();
+            connections.add(clientSocket);
+            try {
+                handlers.execute(() -> {
+                    ServerMetrics.ACCEPT.record(System.nanoTime() - accepted);
+                    try {
+                        new ClientHandler(clientSocket, sink, sessions).run();
+                    } finally {
+                        connections.remove(clientSocket);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                connections.remove(clientSocket);
+                try {
+                    clientSocket.close();
+                } catch (IOException ignored) {
+                    // Nothing to release
+                }
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        isRunning = false;
+        try {
+            if (serverSocket != null && !serverSocket.isClosed()) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            sink.log("Error stopping server: " + e.getMessage());
+        }
+        for (Socket socket : connections) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Handler reports the disconnect
+            }
+        }
+        handlers.shutdown();
+        // Handlers deliver the disconnects of the sockets just closed; wait for them
+        try {
+            handlers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ServerMetrics.REGISTRY.removeGauge("ingest_pool_threads");
+    }
+
+    @Override
+    public String describe() {
+        return name;
+    }
+}
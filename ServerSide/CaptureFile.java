@@ -0,0 +1,376 @@
+package ServerSide;
+
+import shared.IntervalSummary;
+import shared.MetricValues;
+import shared.SystemInfo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary capture of what the transports delivered to the ingest path, written
+ * by {@link IngestRecorder} and read back by {@link CaptureReplay}.
+ *
+ * <pre>
+ * header:  int magic, int version, long startNanos (epoch)
+ * record:  u8 type, zigzag varlong receive time delta (ns since the previous record), body
+ *   SAMPLE   ref hostname, u8 flags, [ref os, varint cpuCores, varlong totalMemory, ref status],
+ *            zigzag varlong capture time delta, zigzag varlong seq delta - 1, num cpuUsage,
+ *            zigzag varlong usedMemory delta, [varint count, count x (ref name, num value)]
+ *   REMOVE   ref hostname
+ *   SUMMARY  ref hostname, varint count, num cpuMin, num cpuAvg, num cpuMax,
+ *            varlong usedMemoryMin, varlong usedMemoryMax
+ *   METRICS  ref hostname, varlong timeMillis, varint count, count x (ref name, num value)
+ * </pre>
+ * A ref is varint 0 followed by a UTF string, which then gets the next index,
+ * or varint index + 1 for a string seen before. A num is zigzag varlong
+ * hundredths + 1 if that is exact, as it is for everything the wire protocol
+ * decodes, otherwise varint 0 and the 8-byte double. Deltas are against the
+ * previous sample of the same host; its static fields and metric names are
+ * only written when they change. A file cut short by a crash reads up to the
+ * last complete record.
+ */
+final class CaptureFile {
+    static final int MAGIC = 0x524D5343;
+    static final int VERSION = 1;
+
+    static final int SAMPLE = 1;
+    static final int REMOVE = 2;
+    static final int SUMMARY = 3;
+    static final int METRICS = 4;
+
+    private static final int IDENTITY = 1;
+    private static final int METRIC_NAMES = 2;
+    private static final int METRIC_VALUES = 4;
+
+    private CaptureFile() {
+    }
+
+    // Host state both sides keep to encode samples as deltas
+    private static final class HostState {
+        String os;
+        int cpuCores;
+        long totalMemory;
+        String status;
+        long lastTime;
+        long lastSeq = -1;
+        long lastUsed;
+        String[] names = new String[0];
+    }
+
+    static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final Map<String, HostState> hosts = new HashMap<>();
+        private long lastReceived;
+        private long records;
+
+        Writer(Path file, long startNanos) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(startNanos);
+            lastReceived = startNanos;
+        }
+
+        void sample(long receivedNanos, SystemInfo info) throws IOException {
+            header(SAMPLE, receivedNanos);
+            ref(info.getHostname());
+            HostState host = hosts.computeIfAbsent(info.getHostname(), name -> new HostState());
+            MetricValues metrics = info.getMetrics();
+            boolean identity = host.os == null || !host.os.equals(info.getOs()) || info.getCpuCores() != host.cpuCores
+                    || info.getTotalMemory() != host.totalMemory || !host.status.equals(info.getStatus());
+            boolean names = !sameNames(metrics, host.names);
+            out.writeByte((identity ? IDENTITY : 0) | (names ? METRIC_NAMES : 0)
+                    | (metrics.size() > 0 ? METRIC_VALUES : 0));
+            if (identity) {
+                host.os = info.getOs();
+                host.cpuCores = info.getCpuCores();
+                host.totalMemory = info.getTotalMemory();
+                host.status = info.getStatus();
+                ref(host.os);
+                writeVarLong(host.cpuCores);
+                writeVarLong(host.totalMemory);
+                ref(host.status);
+            }
+            writeVarLong(zigzag(info.getTimeNanos() - host.lastTime));
+            writeVarLong(zigzag(info.getSeq() - host.lastSeq - 1));
+            number(info.getCpuUsage());
+            writeVarLong(zigzag(info.getUsedMemory() - host.lastUsed));
+            host.lastTime = info.getTimeNanos();
+            host.lastSeq = info.getSeq();
+            host.lastUsed = info.getUsedMemory();
+
+            if (names) {
+                writeVarLong(metrics.size());
+                host.names = new String[metrics.size()];
+                for (int i = 0; i < metrics.size(); i++) {
+                    host.names[i] = metrics.name(i);
+                    ref(host.names[i]);
+                }
+            }
+            for (int i = 0; i < metrics.size(); i++) {
+                number(metrics.value(i));
+            }
+        }
+
+        void remove(long receivedNanos, String hostname) throws IOException {
+            header(REMOVE, receivedNanos);
+            ref(hostname);
+            hosts.remove(hostname);
+        }
+
+        void summary(long receivedNanos, IntervalSummary summary) throws IOException {
+            header(SUMMARY, receivedNanos);
+            ref(summary.getHostname());
+            writeVarLong(summary.getCount());
+            number(summary.getCpuMin());
+            number(summary.getCpuAvg());
+            number(summary.getCpuMax());
+            writeVarLong(summary.getUsedMemoryMin());
+            writeVarLong(summary.getUsedMemoryMax());
+        }
+
+        void metrics(long receivedNanos, String hostname, long timeMillis, MetricValues metrics) throws IOException {
+            header(METRICS, receivedNanos);
+            ref(hostname);
+            writeVarLong(timeMillis);
+            writeVarLong(metrics.size());
+            for (int i = 0; i < metrics.size(); i++) {
+                ref(metrics.name(i));
+                number(metrics.value(i));
+            }
+        }
+
+        long getRecords() {
+            return records;
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        private void header(int type, long receivedNanos) throws IOException {
+            out.writeByte(type);
+            writeVarLong(zigzag(receivedNanos - lastReceived));
+            lastReceived = receivedNanos;
+            records++;
+        }
+
+        private void ref(String value) throws IOException {
+            Integer index = strings.get(value);
+            if (index != null) {
+                writeVarLong(index + 1);
+                return;
+            }
+            strings.put(value, strings.size());
+            writeVarLong(0);
+            out.writeUTF(value);
+        }
+
+        private void number(double value) throws IOException {
+            long hundredths = Math.round(value * 100);
+            if (Math.abs(hundredths) < 1L << 60
+                    && Double.doubleToRawLongBits(hundredths / 100.0) == Double.doubleToRawLongBits(value)) {
+                writeVarLong(zigzag(hundredths) + 1);
+            } else {
+                writeVarLong(0);
+                out.writeDouble(value);
+            }
+        }
+
+        private void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+
+        private static boolean sameNames(MetricValues metrics, String[] names) {
+            if (metrics.size() != names.length) return false;
+            for (int i = 0; i < names.length; i++) {
+                if (!metrics.name(i).equals(names[i])) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Reads records one at a time; after {@link #next()} the fields of the
+     * record's type are set.
+     */
+    static final class Reader implements Closeable {
+        private final DataInputStream in;
+        private final long startNanos;
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, HostState> hosts = new HashMap<>();
+        private long receivedNanos;
+
+        int type;
+        String hostname;
+        SystemInfo sample;
+        IntervalSummary summary;
+        long metricsTimeMillis;
+        MetricValues metrics;
+
+        Reader(Path file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not a capture file: " + file);
+                }
+                int version = in.readInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported capture version " + version + ": " + file);
+                }
+                startNanos = in.readLong();
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            receivedNanos = startNanos;
+        }
+
+        long getStartNanos() {
+            return startNanos;
+        }
+
+        // When the current record reached the server, epoch nanoseconds
+        long getReceivedNanos() {
+            return receivedNanos;
+        }
+
+        // False at the end of the file, or at a record a crash cut short
+        boolean next() throws IOException {
+            try {
+                int read = in.read();
+                if (read < 0) {
+                    return false;
+                }
+                type = read;
+                receivedNanos += unzigzag(readVarLong());
+                hostname = ref();
+                switch (type) {
+                    case SAMPLE:
+                        readSample();
+                        break;
+                    case REMOVE:
+                        hosts.remove(hostname);
+                        break;
+                    case SUMMARY:
+                        summary = new IntervalSummary(hostname, (int) readVarLong(), number(), number(), number(),
+                                readVarLong(), readVarLong());
+                        break;
+                    case METRICS:
+                        metricsTimeMillis = readVarLong();
+                        String[] names = new String[(int) readVarLong()];
+                        double[] values = new double[names.length];
+                        for (int i = 0; i < names.length; i++) {
+                            names[i] = ref();
+                            values[i] = number();
+                        }
+                        metrics = new MetricValues(names, values);
+                        break;
+                    default:
+                        throw new IOException("Unknown capture record type " + type);
+                }
+                return true;
+            } catch (EOFException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private void readSample() throws IOException {
+            HostState host = hosts.computeIfAbsent(hostname, name -> new HostState());
+            int flags = in.readUnsignedByte();
+            if ((flags & IDENTITY) != 0) {
+                host.os = ref();
+                host.cpuCores = (int) readVarLong();
+                host.totalMemory = readVarLong();
+                host.status = ref();
+            }
+            host.lastTime += unzigzag(readVarLong());
+            host.lastSeq += unzigzag(readVarLong()) + 1;
+            double cpuUsage = number();
+            host.lastUsed += unzigzag(readVarLong());
+
+            if ((flags & METRIC_NAMES) != 0) {
+                // Snapshots with unchanged names share one array, as they did on the server
+                host.names = new String[(int) readVarLong()];
+                for (int i = 0; i < host.names.length; i++) {
+                    host.names[i] = ref();
+                }
+            }
+            MetricValues values = MetricValues.EMPTY;
+            if ((flags & METRIC_VALUES) != 0) {
+                double[] metricValues = new double[host.names.length];
+                for (int i = 0; i < metricValues.length; i++) {
+                    metricValues[i] = number();
+                }
+                values = new MetricValues(host.names, metricValues);
+            }
+            sample = new SystemInfo(hostname, host.os, host.cpuCores, cpuUsage, host.totalMemory, host.lastUsed,
+                    host.status, host.lastTime, host.lastSeq, receivedNanos, values);
+        }
+
+        private String ref() throws IOException {
+            int index = (int) readVarLong();
+            if (index > 0) {
+                if (index > strings.size()) {
+                    throw new IOException("Bad string reference " + index);
+                }
+                return strings.get(index - 1);
+            }
+            String value = in.readUTF();
+            strings.add(value);
+            return value;
+        }
+
+        private double number() throws IOException {
+            long encoded = readVarLong();
+            return encoded == 0 ? in.readDouble() : unzigzag(encoded - 1) / 100.0;
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
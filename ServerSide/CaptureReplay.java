@@ -0,0 +1,145 @@
+package ServerSide;
+
+import shared.EpochClock;
+import shared.SystemInfo;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Feeds a capture written by {@link IngestRecorder} into an ingest sink, so
+ * recorded fleet traffic can be played against the server without clients.
+ * Enabled by {@code rms.replay.file}; {@code rms.replay.speed} is a multiple
+ * of the recorded pace (default 1) or {@code max} for as fast as the sink
+ * accepts.
+ *
+ * One thread delivers the records in the order they were captured, so a
+ * replay is the same sequence of samples, summaries and disconnects every
+ * time, only more or less compressed in time. Capture and receive times are
+ * moved onto the replay clock, keeping each sample's recorded capture-to-receive
+ * lag, so history and staleness behave as they would live; with
+ * {@code rms.replay.retime=false} the recorded times are kept.
+ */
+public class CaptureReplay {
+    private final Path file;
+    private final double speed;
+    private final boolean retime = Boolean.parseBoolean(System.getProperty("rms.replay.retime", "true"));
+    private final IngestSink sink;
+    private final Consumer<String> log;
+    private final Thread thread;
+    // Released by the sink when it has room again
+    private final Semaphore room = new Semaphore(0);
+    private final Runnable roomFreed = room::release;
+    private volatile boolean isRunning = true;
+
+    private CaptureReplay(Path file, double speed, IngestSink sink, Consumer<String> log) {
+        this.file = file;
+        this.speed = speed;
+        this.sink = sink;
+        this.log = log;
+        this.thread = new Thread(this::run, "capture-replay");
+        this.thread.setDaemon(true);
+    }
+
+    // speed is a multiple of the recorded pace; 0 or less replays as fast as possible
+    public static CaptureReplay start(Path file, double speed, IngestSink sink, Consumer<String> log) {
+        CaptureReplay replay = new CaptureReplay(file, speed, sink, log);
+        replay.thread.start();
+        return replay;
+    }
+
+    // "max", or a positive multiple of the recorded pace
+    public static double parseSpeed(String speed) {
+        if (speed.equalsIgnoreCase("max")) {
+            return 0;
+        }
+        double parsed = Double.parseDouble(speed.endsWith("x") ? speed.substring(0, speed.length() - 1) : speed);
+        if (!(parsed > 0)) {
+            throw new IllegalArgumentException("Replay speed must be positive or max: " + speed);
+        }
+        return parsed;
+    }
+
+    public void stop() {
+        isRunning = false;
+        thread.interrupt();
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Waits until the whole capture has been delivered or the replay was stopped
+    public void await() throws InterruptedException {
+        thread.join();
+    }
+
+    public String describe() {
+        return file + " at " + (speed > 0 ? speed + "x" : "max speed");
+    }
+
+    private void run() {
+        long events = 0;
+        long samples = 0;
+        long startNanos = System.nanoTime();
+        try (CaptureFile.Reader reader = new CaptureFile.Reader(file)) {
+            long firstReceived = reader.getStartNanos();
+            long replayEpoch = EpochClock.nanos();
+            while (isRunning && reader.next()) {
+                long due = speed > 0 ? startNanos + (long) ((reader.getReceivedNanos() - firstReceived) / speed) : 0;
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                    if (!isRunning) break;
+                }
+                if (!sink.hasRoom(roomFreed)) {
+                    try {
+                        room.acquire();
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+                // The recorded receive time moved onto the replay clock
+                long shift = retime ? replayEpoch + (System.nanoTime() - startNanos) - reader.getReceivedNanos() : 0;
+                deliver(reader, shift);
+                events++;
+                if (reader.type == CaptureFile.SAMPLE) {
+                    samples++;
+                }
+                ServerMetrics.REPLAY_EVENTS.increment();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.accept("Replay of " + file + " failed: " + e.getMessage());
+        }
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        log.accept(String.format("Replay of %s %s: %d events, %d samples in %.1f s (%.0f samples/s)", file,
+                isRunning ? "finished" : "stopped", events, samples, seconds, samples / Math.max(seconds, 1e-9)));
+    }
+
+    private void deliver(CaptureFile.Reader reader, long shift) {
+        switch (reader.type) {
+            case CaptureFile.SAMPLE:
+                SystemInfo info = reader.sample;
+                if (shift != 0) {
+                    info = new SystemInfo(info.getHostname(), info.getOs(), info.getCpuCores(), info.getCpuUsage(),
+                            info.getTotalMemory(), info.getUsedMemory(), info.getStatus(), info.getTimeNanos() + shift,
+                            info.getSeq(), info.getReceivedNanos() + shift, info.getMetrics());
+                }
+                sink.addOrUpdateClient(info);
+                break;
+            case CaptureFile.REMOVE:
+                sink.removeClient(reader.hostname);
+                break;
+            case CaptureFile.SUMMARY:
+                sink.addSummary(reader.summary);
+                break;
+            default:
+                sink.addMetrics(reader.hostname, reader.metricsTimeMillis + shift / 1_000_000, reader.metrics);
+                break;
+        }
+    }
+}
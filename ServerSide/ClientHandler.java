@@ -1,48 +1,142 @@
-package ServerSide;
-import java.io.*;
-import java.net.Socket;
-import shared.SystemInfo;
-
-public class ClientHandler implements Runnable {
-    private Socket socket;
-    private ServerController controller;
-    private ObjectInputStream inputStream;
-    private String clientHostname;
-    
-    public ClientHandler(Socket socket, ServerController controller) {
-        this.socket = socket;
-        this.controller = controller;
-    }
-    
-    @Override
-    public void run() {
-        try {
-            inputStream = new ObjectInputStream(socket.getInputStream());
-            clientHostname = socket.getInetAddress().getHostName();
-            
-            controller.log("New connection from: " + clientHostname);
-            
-            while (!socket.isClosed()) {
-                SystemInfo info = (SystemInfo) inputStream.readObject();
-                controller.addOrUpdateClient(info);
-            }
-            
-        } catch (EOFException e) {
-            // Client disconnected normally
-        } catch (Exception e) {
-            controller.log("Error with client " + clientHostname + ": " + e.getMessage());
-        } finally {
-            closeConnection();
-        }
-    }
-    
-    private void closeConnection() {
-        try {
-            if (inputStream != null) inputStream.close();
-            if (socket != null && !socket.isClosed()) socket.close();
-            controller.removeClient(clientHostname);
-        } catch (IOException e) {
-            controller.log("Error closing connection: " + e.getMessage());
-        }
-    }
+package ServerSide;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Semaphore;
+import shared.SamplingControl;
+import shared.SystemInfo;
+import shared.SystemInfoCodec;
+
+public class ClientHandler implements Runnable {
+    private Socket socket;
+    private IngestSink controller;
+    private final SessionRegistry sessions;
+    private SessionRegistry.Connection connection;
+    private DataInputStream inputStream;
+    private DataOutputStream outputStream;
+    private final SystemInfoCodec codec = new SystemInfoCodec();
+    // CONTROL frames come from the sampling policy's thread; writes to outputStream hold its lock
+    private final SystemInfoCodec controlCodec = new SystemInfoCodec();
+    private final ByteBuffer frame = ByteBuffer.allocate(SystemInfoCodec.MAX_FRAME_SIZE);
+    // Released by the sink when it has room again
+    private final Semaphore room = new Semaphore(0);
+    private final Runnable roomFreed = room::release;
+    
+    public ClientHandler(Socket socket, IngestSink controller, SessionRegistry sessions) {
+        this.socket = socket;
+        this.controller = controller;
+        this.sessions = sessions;
+    }
+    
+    @Override
+    public void run() {
+        try {
+            inputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            outputStream = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            connection = sessions.open("blocking", (InetSocketAddress) socket.getRemoteSocketAddress());
+            connection.setControlWriter(this::writeControl);
+            
+            controller.log("New connection from: " + connection.describe());
+            
+            while (!socket.isClosed()) {
+                awaitRoom();
+                byte type = readFrame();
+                if (type == SystemInfoCodec.HELLO) {
+                    SessionRegistry.Session session = sessions.register(connection, codec.lastSessionId(),
+                            codec.lastHostname(), codec.lastSessionRelayed());
+                    codec.renameLastSession(session.getKey());
+                    synchronized (outputStream) {
+                        codec.writeWelcome(codec.lastSessionId(), outputStream);
+                    }
+                } else if (type == SystemInfoCodec.BATCH) {
+                    countSamples();
+                    for (SystemInfo info : codec.samples()) {
+                        controller.addOrUpdateClient(info);
+                    }
+                    synchronized (outputStream) {
+                        codec.writeAck(codec.lastSessionId(), codec.lastSeq(), outputStream);
+                    }
+                } else if (type == SystemInfoCodec.SUMMARY) {
+                    controller.addSummary(codec.lastSummary());
+                } else if (type == SystemInfoCodec.METRICS && codec.lastMetrics() != null) {
+                    controller.addMetrics(codec.lastHostname(), codec.lastMetricsTime(), codec.lastMetrics());
+                } else if (type == SystemInfoCodec.BYE) {
+                    if (sessions.close(connection.session(codec.lastSessionId()))) {
+                        ServerMetrics.HOST_SAMPLES.remove(codec.lastHostname());
+                        controller.removeClient(codec.lastHostname());
+                    }
+                }
+            }
+            
+        } catch (EOFException e) {
+            // Client disconnected normally
+        } catch (Exception e) {
+            controller.log("Error with client " + (connection == null ? socket.getRemoteSocketAddress() : connection.describe())
+                    + ": " + e.getMessage());
+        } finally {
+            closeConnection();
+        }
+    }
+    
+    // Stops reading while the sink is full, so TCP flow control slows the client down
+    private void awaitRoom() throws InterruptedException {
+        if (!controller.hasRoom(roomFreed)) {
+            long start = System.nanoTime();
+            room.acquire();
+            ServerMetrics.INGEST_BLOCKED.record(System.nanoTime() - start);
+        }
+    }
+
+    // Reads the frame first so the decode timer only covers decoding
+    private byte readFrame() throws IOException {
+        int length = inputStream.readUnsignedShort();
+        SystemInfoCodec.checkLength(length);
+        inputStream.readFully(frame.array(), 0, length);
+        frame.clear().limit(length);
+        ServerMetrics.BYTES_RECEIVED.add(SystemInfoCodec.LENGTH_SIZE + length);
+
+        long start = System.nanoTime();
+        byte type = codec.decode(frame);
+        ServerMetrics.DECODE.record(System.nanoTime() - start);
+        ServerMetrics.FRAMES_RECEIVED.increment();
+        return type;
+    }
+
+    private void writeControl(int sessionId, SamplingControl control) {
+        try {
+            synchronized (outputStream) {
+                controlCodec.writeControl(sessionId, control, outputStream);
+            }
+        } catch (IOException e) {
+            // The handler thread sees the failed connection on its next read or write
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Already closed
+            }
+        }
+    }
+
+    private void countSamples() {
+        int count = codec.samples().size();
+        ServerMetrics.SAMPLES_RECEIVED.add(count);
+        ServerMetrics.HOST_SAMPLES.get(codec.samples().get(0).getHostname()).add(count);
+    }
+
+    private void closeConnection() {
+        ServerMetrics.CONNECTIONS_CLOSED.increment();
+        try {
+            if (inputStream != null) inputStream.close();
+            if (socket != null && !socket.isClosed()) socket.close();
+            if (connection != null) {
+                for (SessionRegistry.Session session : sessions.close(connection)) {
+                    ServerMetrics.HOST_SAMPLES.remove(session.getKey());
+                    controller.removeClient(session.getKey());
+                }
+            }
+        } catch (IOException e) {
+            controller.log("Error closing connection: " + e.getMessage());
+        }
+    }
 }
\ No newline at end of file
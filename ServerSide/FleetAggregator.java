@@ -0,0 +1,272 @@
+package ServerSide;
+
+import shared.SystemInfo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fleet-wide and per-group CPU and memory percentiles, maintained as samples
+ * arrive so a query never looks at individual hosts.
+ *
+ * "Now" sketches hold exactly one value per connected host: a new sample
+ * moves the host's count from its previous bucket to the new one. Window
+ * sketches cover the last {@code rms.fleet.windowSec} seconds as a ring of
+ * {@code rms.fleet.slotSec} slots whose sum is kept up to date; an expired
+ * slot is subtracted and reused. A sample costs a fixed number of counter
+ * updates and a query a fixed number of bucket scans, whatever the fleet size.
+ *
+ * Groups come from {@code rms.fleet.groups}, a list like
+ * {@code web=web-*,db=db*}; hosts that match no pattern are grouped by OS.
+ * At most {@code rms.fleet.maxGroups} groups are tracked, the rest count as
+ * "other".
+ */
+public class FleetAggregator {
+    public static final String FLEET = "All hosts";
+    private static final String OTHER = "other";
+    private static final double[] QUANTILES = {0.50, 0.95, 0.99};
+
+    private final long slotMillis = Long.getLong("rms.fleet.slotSec", 10) * 1000;
+    private final int slots = (int) Math.max(1, Long.getLong("rms.fleet.windowSec", 300) * 1000 / slotMillis);
+    private final int maxGroups = Integer.getInteger("rms.fleet.maxGroups", 32);
+    private final List<String[]> patterns = parsePatterns(System.getProperty("rms.fleet.groups", ""));
+
+    private final Map<String, Aggregate> groups = new LinkedHashMap<>();
+    private final Map<String, HostState> hosts = new HashMap<>();
+    private final Aggregate fleet;
+    private long currentSlot = Long.MIN_VALUE;
+
+    public FleetAggregator() {
+        fleet = new Aggregate(FLEET);
+    }
+
+    // Called from ingest threads
+    public synchronized void record(long timeMillis, SystemInfo info) {
+        advance(timeMillis);
+        // A sample older than the window, such as an old backlog, only updates the host's current value
+        long slot = Math.floorDiv(timeMillis, slotMillis);
+        boolean inWindow = currentSlot - slot < slots;
+        int cpu = QuantileSketch.bucketOf(info.getCpuUsage());
+        int memory = QuantileSketch.bucketOf(info.getMemoryUsagePercentage());
+
+        HostState host = hosts.get(info.getHostname());
+        if (host == null) {
+            host = new HostState(group(info));
+            hosts.put(info.getHostname(), host);
+            host.group.hosts++;
+            fleet.hosts++;
+        } else {
+            fleet.removeNow(host.cpu, host.memory);
+            host.group.removeNow(host.cpu, host.memory);
+        }
+        host.cpu = cpu;
+        host.memory = memory;
+        fleet.add(slot, inWindow, cpu, memory);
+        host.group.add(slot, inWindow, cpu, memory);
+    }
+
+    public synchronized void remove(String hostname) {
+        HostState host = hosts.remove(hostname);
+        if (host == null) return;
+        fleet.removeNow(host.cpu, host.memory);
+        host.group.removeNow(host.cpu, host.memory);
+        fleet.hosts--;
+        host.group.hosts--;
+    }
+
+    // Fleet row first, then one row per group that has ever had a host
+    public synchronized List<Summary> summarize(long timeMillis) {
+        advance(timeMillis);
+        List<Summary> rows = new ArrayList<>(groups.size() + 1);
+        rows.add(fleet.summarize());
+        for (Aggregate group : groups.values()) {
+            rows.add(group.summarize());
+        }
+        return rows;
+    }
+
+    public long getWindowSeconds() {
+        return slots * slotMillis / 1000;
+    }
+
+    private void advance(long timeMillis) {
+        long slot = Math.floorDiv(timeMillis, slotMillis);
+        if (currentSlot == Long.MIN_VALUE || slot - currentSlot >= slots) {
+            currentSlot = slot;
+            fleet.clearWindow();
+            for (Aggregate group : groups.values()) group.clearWindow();
+            return;
+        }
+        while (currentSlot < slot) {
+            currentSlot++;
+            fleet.expire(currentSlot);
+            for (Aggregate group : groups.values()) group.expire(currentSlot);
+        }
+    }
+
+    private Aggregate group(SystemInfo info) {
+        String name = null;
+        for (String[] pattern : patterns) {
+            if (matches(pattern[1], info.getHostname())) {
+                name = pattern[0];
+                break;
+            }
+        }
+        if (name == null) {
+            name = info.getOs();
+        }
+        Aggregate group = groups.get(name);
+        if (group == null && groups.size() >= maxGroups) {
+            name = OTHER;
+            group = groups.get(OTHER);
+        }
+        if (group == null) {
+            group = new Aggregate(name);
+            groups.put(name, group);
+        }
+        return group;
+    }
+
+    // Glob with '*' only
+    private static boolean matches(String glob, String value) {
+        String[] parts = glob.split("\\*", -1);
+        int at = 0;
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i];
+            if (i == 0) {
+                if (!value.startsWith(part)) return false;
+                at = part.length();
+            } else if (i == parts.length - 1) {
+                return value.length() - part.length() >= at && value.endsWith(part);
+            } else {
+                int found = value.indexOf(part, at);
+                if (found < 0) return false;
+                at = found + part.length();
+            }
+        }
+        return at == value.length();
+    }
+
+    private static List<String[]> parsePatterns(String spec) {
+        List<String[]> patterns = new ArrayList<>();
+        for (String entry : spec.split(",")) {
+            int eq = entry.indexOf('=');
+            if (eq > 0) {
+                patterns.add(new String[] {entry.substring(0, eq).trim(), entry.substring(eq + 1).trim()});
+            }
+        }
+        return patterns;
+    }
+
+    private static final class HostState {
+        final Aggregate group;
+        int cpu;
+        int memory;
+
+        HostState(Aggregate group) {
+            this.group = group;
+        }
+    }
+
+    // Sketches for one group: latest value per host, plus a sliding window of all samples
+    private final class Aggregate {
+        final String name;
+        final QuantileSketch cpuNow = new QuantileSketch();
+        final QuantileSketch memoryNow = new QuantileSketch();
+        final QuantileSketch cpuWindow = new QuantileSketch();
+        final QuantileSketch memoryWindow = new QuantileSketch();
+        final QuantileSketch[] cpuSlots = new QuantileSketch[slots];
+        final QuantileSketch[] memorySlots = new QuantileSketch[slots];
+        int hosts;
+
+        Aggregate(String name) {
+            this.name = name;
+            for (int i = 0; i < slots; i++) {
+                cpuSlots[i] = new QuantileSketch();
+                memorySlots[i] = new QuantileSketch();
+            }
+        }
+
+        void add(long slot, boolean inWindow, int cpu, int memory) {
+            cpuNow.add(cpu);
+            memoryNow.add(memory);
+            if (!inWindow) return;
+            int index = (int) Math.floorMod(slot, (long) slots);
+            cpuSlots[index].add(cpu);
+            memorySlots[index].add(memory);
+            cpuWindow.add(cpu);
+            memoryWindow.add(memory);
+        }
+
+        void removeNow(int cpu, int memory) {
+            cpuNow.remove(cpu);
+            memoryNow.remove(memory);
+        }
+
+        // Drops the slot that is about to be reused for the given slot number
+        void expire(long slot) {
+            int index = (int) Math.floorMod(slot, (long) slots);
+            cpuWindow.removeAll(cpuSlots[index]);
+            memoryWindow.removeAll(memorySlots[index]);
+            cpuSlots[index].clear();
+            memorySlots[index].clear();
+        }
+
+        void clearWindow() {
+            cpuWindow.clear();
+            memoryWindow.clear();
+            for (int i = 0; i < slots; i++) {
+                cpuSlots[i].clear();
+                memorySlots[i].clear();
+            }
+        }
+
+        Summary summarize() {
+            return new Summary(name, hosts, quantiles(cpuNow), quantiles(memoryNow),
+                    quantiles(cpuWindow), quantiles(memoryWindow));
+        }
+
+        private double[] quantiles(QuantileSketch sketch) {
+            double[] values = new double[QUANTILES.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = sketch.quantile(QUANTILES[i]);
+            }
+            return values;
+        }
+    }
+
+    // p50, p95 and p99 of one group; NaN where there is no data
+    public static final class Summary {
+        private final String name;
+        private final int hosts;
+        private final double[] cpuNow;
+        private final double[] memoryNow;
+        private final double[] cpuWindow;
+        private final double[] memoryWindow;
+
+        Summary(String name, int hosts, double[] cpuNow, double[] memoryNow, double[] cpuWindow, double[] memoryWindow) {
+            this.name = name;
+            this.hosts = hosts;
+            this.cpuNow = cpuNow;
+            this.memoryNow = memoryNow;
+            this.cpuWindow = cpuWindow;
+            this.memoryWindow = memoryWindow;
+        }
+
+        public String getName() { return name; }
+        public int getHosts() { return hosts; }
+        public double getCpuP50() { return cpuNow[0]; }
+        public double getCpuP95() { return cpuNow[1]; }
+        public double getCpuP99() { return cpuNow[2]; }
+        public double getMemoryP50() { return memoryNow[0]; }
+        public double getMemoryP95() { return memoryNow[1]; }
+        public double getMemoryP99() { return memoryNow[2]; }
+        public double getCpuWindowP95() { return cpuWindow[1]; }
+        public double getCpuWindowP99() { return cpuWindow[2]; }
+        public double getMemoryWindowP95() { return memoryWindow[1]; }
+        public double getMemoryWindowP99() { return memoryWindow[2]; }
+    }
+}
@@ -0,0 +1,63 @@
+package ServerSide;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the server without a display. Usage: {@code HeadlessServerMain [port]}.
+ * The log goes to {@code rms.log.file} (default {@code server.log}) and a
+ * status line is printed every {@code rms.statusSec} seconds.
+ *
+ * To replay recorded traffic without clients, start it with
+ * {@code -Drms.replay.file=capture.bin -Drms.replay.speed=10}; adding
+ * {@code -Drms.replay.exit=true} prints a final status line and exits once
+ * the capture has been delivered. See {@link CaptureReplay}.
+ */
+public class HeadlessServerMain {
+    public static void main(String[] args) throws InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Integer.getInteger("rms.port", 5000);
+        if (System.getProperty("rms.log.file") == null) {
+            System.setProperty("rms.log.file", "server.log");
+        }
+
+        ServerEngine engine = new ServerEngine();
+        engine.open();
+        try {
+            engine.start(port);
+        } catch (IOException e) {
+            System.err.println("Server error: " + e.getMessage());
+            engine.close();
+            System.exit(1);
+        }
+        System.out.println("Listening on port " + port + " (" + engine.describe() + ")");
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            engine.close();
+            stopped.countDown();
+        }, "server-shutdown"));
+
+        CaptureReplay replay = engine.getReplay();
+        if (replay != null && Boolean.getBoolean("rms.replay.exit")) {
+            replay.await();
+            printStatus(engine);
+            System.exit(0);
+        }
+
+        long statusMillis = Long.getLong("rms.statusSec", 10) * 1000;
+        while (!stopped.await(statusMillis, TimeUnit.MILLISECONDS)) {
+            printStatus(engine);
+        }
+    }
+
+    private static void printStatus(ServerEngine engine) {
+        HistoryStore store = engine.getStore();
+        System.out.println("hosts=" + engine.getHosts().size()
+                + String.format(" maxAgeSec=%.1f", engine.getLag().maxAgeSeconds())
+                + " ingestDropped=" + ServerMetrics.INGEST_DROPPED.sum()
+                + " ingestCoalesced=" + ServerMetrics.INGEST_COALESCED.sum()
+                + " storeDropped=" + (store == null ? 0 : store.getDroppedSamples())
+                + " alertDropped=" + engine.getAlerts().getDroppedSamples());
+    }
+}
@@ -0,0 +1,259 @@
+package ServerSide;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * One memory-mapped segment file of the history store.
+ *
+ * <pre>
+ * header (64 bytes): int magic, int version, int recordSize, int capacity,
+ *                    long partitionStart, long committedCount
+ * record (40 bytes): long timeMillis, int hostId, int reserved,
+ *                    double cpuUsage, long usedMemory, long totalMemory
+ * </pre>
+ *
+ * A side file with the same name and an {@code .idx} extension holds the
+ * segment's time range, CPU range and host set once it is sealed; it is
+ * rebuilt from the records if missing or stale.
+ */
+class HistorySegment {
+    static final int MAGIC = 0x524D5331;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 40;
+    private static final int COUNT_OFFSET = 24;
+
+    final Path file;
+    final long partitionStart;
+    final int sequence;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private volatile int count;
+    private volatile boolean sealed;
+
+    // Index, owned by the writer thread until the segment is sealed
+    private long minTime = Long.MAX_VALUE;
+    private long maxTime = Long.MIN_VALUE;
+    private double minCpu = Double.MAX_VALUE;
+    private double maxCpu = -Double.MAX_VALUE;
+    private final BitSet hosts = new BitSet();
+
+    private HistorySegment(Path file, long partitionStart, int sequence, FileChannel channel,
+                           MappedByteBuffer buffer, int capacity, int count, boolean sealed) {
+        this.file = file;
+        this.partitionStart = partitionStart;
+        this.sequence = sequence;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.count = count;
+        this.sealed = sealed;
+    }
+
+    static HistorySegment create(Path dir, long partitionStart, int sequence, int capacity) throws IOException {
+        Path file = dir.resolve(fileName(partitionStart, sequence));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, RECORD_SIZE);
+        buffer.putInt(12, capacity);
+        buffer.putLong(16, partitionStart);
+        buffer.putLong(COUNT_OFFSET, 0);
+        return new HistorySegment(file, partitionStart, sequence, channel, buffer, capacity, 0, false);
+    }
+
+    // Opens an existing segment read-only; only the committed records are visible.
+    static HistorySegment open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(8) != RECORD_SIZE) {
+            channel.close();
+            throw new IOException("Not a history segment: " + file.getFileName());
+        }
+        int capacity = buffer.getInt(12);
+        long partitionStart = buffer.getLong(16);
+        int count = (int) Math.min(buffer.getLong(COUNT_OFFSET), capacity);
+        HistorySegment segment = new HistorySegment(file, partitionStart, parseSequence(file),
+                channel, buffer, capacity, count, true);
+        if (!segment.loadIndex()) {
+            segment.rebuildIndex();
+            segment.writeIndex();
+        }
+        return segment;
+    }
+
+    boolean isFull() {
+        return count >= capacity;
+    }
+
+    boolean isSealed() {
+        return sealed;
+    }
+
+    int count() {
+        return count;
+    }
+
+    long minTime() {
+        return minTime;
+    }
+
+    long maxTime() {
+        return maxTime;
+    }
+
+    // Writer thread only; the record becomes visible to readers on commit()
+    void append(int index, long timeMillis, int hostId, double cpuUsage, long usedMemory, long totalMemory) {
+        int offset = HEADER_SIZE + index * RECORD_SIZE;
+        buffer.putLong(offset, timeMillis);
+        buffer.putInt(offset + 8, hostId);
+        buffer.putInt(offset + 12, 0);
+        buffer.putDouble(offset + 16, cpuUsage);
+        buffer.putLong(offset + 24, usedMemory);
+        buffer.putLong(offset + 32, totalMemory);
+        updateIndex(timeMillis, hostId, cpuUsage);
+    }
+
+    int nextIndex() {
+        return count;
+    }
+
+    void commit(int newCount) {
+        buffer.putLong(COUNT_OFFSET, newCount);
+        count = newCount;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void seal() throws IOException {
+        force();
+        writeIndex();
+        sealed = true;
+    }
+
+    // True if the segment may hold samples of the host inside [from, to]
+    boolean mayContain(int hostId, long from, long to) {
+        if (count == 0 || maxTime < from || minTime > to) {
+            return false;
+        }
+        return !sealed || hosts.get(hostId);
+    }
+
+    void scan(int hostId, long from, long to, HistoryStore.SampleVisitor visitor) {
+        int visible = count;
+        for (int i = 0; i < visible; i++) {
+            int offset = HEADER_SIZE + i * RECORD_SIZE;
+            if (buffer.getInt(offset + 8) != hostId) {
+                continue;
+            }
+            long time = buffer.getLong(offset);
+            if (time >= from && time <= to) {
+                visitor.accept(time, buffer.getDouble(offset + 16),
+                        buffer.getLong(offset + 24), buffer.getLong(offset + 32));
+            }
+        }
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Mapping stays valid until collected
+        }
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(indexFile());
+    }
+
+    private void updateIndex(long timeMillis, int hostId, double cpuUsage) {
+        minTime = Math.min(minTime, timeMillis);
+        maxTime = Math.max(maxTime, timeMillis);
+        minCpu = Math.min(minCpu, cpuUsage);
+        maxCpu = Math.max(maxCpu, cpuUsage);
+        hosts.set(hostId);
+    }
+
+    private void rebuildIndex() {
+        for (int i = 0; i < count; i++) {
+            int offset = HEADER_SIZE + i * RECORD_SIZE;
+            updateIndex(buffer.getLong(offset), buffer.getInt(offset + 8), buffer.getDouble(offset + 16));
+        }
+    }
+
+    private boolean loadIndex() {
+        Path indexFile = indexFile();
+        if (!Files.exists(indexFile)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != count) {
+                return false;
+            }
+            minTime = in.readLong();
+            maxTime = in.readLong();
+            minCpu = in.readDouble();
+            maxCpu = in.readDouble();
+            long[] words = new long[in.readInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = in.readLong();
+            }
+            hosts.or(BitSet.valueOf(words));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile())))) {
+            out.writeInt(count);
+            out.writeLong(minTime);
+            out.writeLong(maxTime);
+            out.writeDouble(minCpu);
+            out.writeDouble(maxCpu);
+            long[] words = hosts.toLongArray();
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+    }
+
+    private Path indexFile() {
+        String name = file.getFileName().toString();
+        return file.resolveSibling(name.substring(0, name.length() - 4) + ".idx");
+    }
+
+    static String fileName(long partitionStart, int sequence) {
+        return String.format("seg-%d-%04d.dat", partitionStart, sequence);
+    }
+
+    static boolean isSegmentFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith("seg-") && name.endsWith(".dat");
+    }
+
+    private static int parseSequence(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(name.lastIndexOf('-') + 1, name.length() - 4));
+    }
+}
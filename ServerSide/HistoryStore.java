@@ -0,0 +1,328 @@
+package ServerSide;
+
+import shared.SystemInfo;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Append-only on-disk history of every received sample.
+ *
+ * Ingest threads copy samples into an in-memory batch under a short lock and
+ * never touch the disk. A single writer thread swaps the batch out every
+ * {@code rms.store.commitMs}, appends it to the current memory-mapped segment,
+ * publishes the new record count and forces the mapping to disk at most every
+ * {@code rms.store.syncMs}. Segments are partitioned by time
+ * ({@code rms.store.partitionMinutes}) and deleted after
+ * {@code rms.store.retentionDays}. If the batch fills up faster than the writer
+ * drains it, samples are dropped and counted instead of blocking ingestion.
+ */
+public class HistoryStore implements Closeable {
+    public interface SampleVisitor {
+        void accept(long timeMillis, double cpuUsage, long usedMemory, long totalMemory);
+    }
+
+    private static final String HOSTS_FILE = "hosts.dict";
+
+    private final Path dir;
+    private final Consumer<String> log;
+    private final long partitionMillis = Long.getLong("rms.store.partitionMinutes", 60) * 60_000;
+    private final long retentionMillis = Long.getLong("rms.store.retentionDays", 28) * 86_400_000;
+    private final long commitMillis = Long.getLong("rms.store.commitMs", 200);
+    private final long syncMillis = Long.getLong("rms.store.syncMs", 1000);
+    private final int segmentCapacity = Integer.getInteger("rms.store.segmentRecords", 1 << 20);
+    private final int batchCapacity = Integer.getInteger("rms.store.batchSize", 1 << 16);
+
+    private final Map<String, Integer> hostIds = new ConcurrentHashMap<>();
+    private final AtomicInteger nextHostId = new AtomicInteger();
+    private final Queue<String> unsavedHosts = new ConcurrentLinkedQueue<>();
+    private final List<HistorySegment> segments = new CopyOnWriteArrayList<>();
+    private final AtomicLong droppedSamples = new AtomicLong();
+
+    private final Object lock = new Object();
+    private Batch filling = new Batch(batchCapacity);
+    private Batch draining = new Batch(batchCapacity);
+
+    private HistorySegment active;
+    private int nextSequence;
+    private long lastSyncMillis;
+    private long lastRetentionCheck;
+    private volatile boolean isRunning = true;
+    private final Thread writer;
+
+    private HistoryStore(Path dir, Consumer<String> log) {
+        this.dir = dir;
+        this.log = log;
+        this.writer = new Thread(this::writeLoop, "history-writer");
+        this.writer.setDaemon(true);
+    }
+
+    public static HistoryStore open(Consumer<String> log) throws IOException {
+        return open(Paths.get(System.getProperty("rms.store.dir", "history")), log);
+    }
+
+    public static HistoryStore open(Path dir, Consumer<String> log) throws IOException {
+        Files.createDirectories(dir);
+        HistoryStore store = new HistoryStore(dir, log);
+        store.loadHosts();
+        store.loadSegments();
+        store.writer.start();
+        return store;
+    }
+
+    // Called from ingest threads; never blocks on I/O
+    public void append(long timeMillis, SystemInfo info) {
+        int hostId = hostId(info.getHostname());
+        synchronized (lock) {
+            Batch batch = filling;
+            if (batch.size == batch.capacity) {
+                droppedSamples.incrementAndGet();
+                return;
+            }
+            int i = batch.size++;
+            batch.times[i] = timeMillis;
+            batch.hostIds[i] = hostId;
+            batch.cpu[i] = info.getCpuUsage();
+            batch.used[i] = info.getUsedMemory();
+            batch.total[i] = info.getTotalMemory();
+            if (batch.size == batch.capacity / 2) {
+                lock.notify();
+            }
+        }
+    }
+
+    // Visits the committed samples of one host in [from, to], segment by segment in time order
+    public void scan(String hostname, long fromMillis, long toMillis, SampleVisitor visitor) {
+        Integer hostId = hostIds.get(hostname);
+        if (hostId == null) {
+            return;
+        }
+        for (HistorySegment segment : segments) {
+            if (segment.mayContain(hostId, fromMillis, toMillis)) {
+                segment.scan(hostId, fromMillis, toMillis, visitor);
+            }
+        }
+    }
+
+    public long getDroppedSamples() {
+        return droppedSamples.get();
+    }
+
+    @Override
+    public void close() {
+        isRunning = false;
+        synchronized (lock) {
+            lock.notify();
+        }
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (HistorySegment segment : segments) {
+            segment.close();
+        }
+    }
+
+    private int hostId(String hostname) {
+        Integer id = hostIds.get(hostname);
+        if (id != null) {
+            return id;
+        }
+        return hostIds.computeIfAbsent(hostname, host -> {
+            int newId = nextHostId.getAndIncrement();
+            unsavedHosts.add(newId + "\t" + host);
+            return newId;
+        });
+    }
+
+    private void writeLoop() {
+        while (true) {
+            boolean stopping = !isRunning;
+            synchronized (lock) {
+                if (!stopping && filling.size < filling.capacity / 2) {
+                    try {
+                        lock.wait(commitMillis);
+                    } catch (InterruptedException e) {
+                        stopping = true;
+                    }
+                }
+                Batch full = filling;
+                filling = draining;
+                draining = full;
+            }
+
+            try {
+                saveHosts();
+                if (draining.size > 0) {
+                    long start = System.nanoTime();
+                    writeBatch(draining);
+                    ServerMetrics.STORE_COMMIT.record(System.nanoTime() - start);
+                }
+                long now = System.currentTimeMillis();
+                if (stopping || now - lastSyncMillis >= syncMillis) {
+                    if (active != null) active.force();
+                    lastSyncMillis = now;
+                }
+                if (now - lastRetentionCheck >= 60_000) {
+                    deleteExpired(now);
+                    lastRetentionCheck = now;
+                }
+            } catch (IOException e) {
+                log.accept("History store error: " + e.getMessage());
+            } finally {
+                draining.size = 0;
+            }
+
+            if (stopping) {
+                sealActive();
+                return;
+            }
+        }
+    }
+
+    private void writeBatch(Batch batch) throws IOException {
+        int i = 0;
+        while (i < batch.size) {
+            long partition = batch.times[i] - Math.floorMod(batch.times[i], partitionMillis);
+            if (active == null || active.isFull() || partition > active.partitionStart) {
+                roll(partition);
+            }
+            int index = active.nextIndex();
+            int room = Math.min(batch.size - i, segmentCapacity - index);
+            int end = i + room;
+            for (; i < end; i++) {
+                long time = batch.times[i];
+                if (time - Math.floorMod(time, partitionMillis) > active.partitionStart) {
+                    break;
+                }
+                active.append(index++, time, batch.hostIds[i], batch.cpu[i], batch.used[i], batch.total[i]);
+            }
+            active.commit(index);
+        }
+    }
+
+    private void roll(long partition) throws IOException {
+        sealActive();
+        if (active != null && active.partitionStart != partition) {
+            nextSequence = 0;
+        }
+        while (Files.exists(dir.resolve(HistorySegment.fileName(partition, nextSequence)))) {
+            nextSequence++;
+        }
+        active = HistorySegment.create(dir, partition, nextSequence++, segmentCapacity);
+        segments.add(active);
+    }
+
+    private void sealActive() {
+        if (active != null && !active.isSealed()) {
+            try {
+                active.seal();
+            } catch (IOException e) {
+                log.accept("History store error: " + e.getMessage());
+            }
+        }
+    }
+
+    private void deleteExpired(long now) {
+        for (HistorySegment segment : segments) {
+            if (segment.isSealed() && segment.maxTime() < now - retentionMillis) {
+                segments.remove(segment);
+                try {
+                    segment.delete();
+                } catch (IOException e) {
+                    log.accept("Could not delete " + segment.file.getFileName() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void loadSegments() throws IOException {
+        List<HistorySegment> loaded = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                if (!HistorySegment.isSegmentFile(file)) {
+                    continue;
+                }
+                try {
+                    loaded.add(HistorySegment.open(file));
+                } catch (IOException | RuntimeException e) {
+                    log.accept("Skipping history segment " + file.getFileName() + ": " + e.getMessage());
+                }
+            }
+        }
+        loaded.sort(Comparator.comparingLong((HistorySegment s) -> s.partitionStart)
+                .thenComparingInt(s -> s.sequence));
+        segments.addAll(loaded);
+    }
+
+    private void loadHosts() throws IOException {
+        Path file = dir.resolve(HOSTS_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        int maxId = -1;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            int tab = line.indexOf('\t');
+            if (tab <= 0) {
+                continue;
+            }
+            int id = Integer.parseInt(line.substring(0, tab));
+            hostIds.put(line.substring(tab + 1), id);
+            maxId = Math.max(maxId, id);
+        }
+        nextHostId.set(maxId + 1);
+    }
+
+    // Host ids must reach the disk before any record that uses them
+    private void saveHosts() throws IOException {
+        if (unsavedHosts.isEmpty()) {
+            return;
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(dir.resolve(HOSTS_FILE), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            String line;
+            while ((line = unsavedHosts.poll()) != null) {
+                out.write(line);
+                out.newLine();
+            }
+        }
+    }
+
+    private static final class Batch {
+        final int capacity;
+        final long[] times;
+        final int[] hostIds;
+        final double[] cpu;
+        final long[] used;
+        final long[] total;
+        int size;
+
+        Batch(int capacity) {
+            this.capacity = capacity;
+            this.times = new long[capacity];
+            this.hostIds = new int[capacity];
+            this.cpu = new double[capacity];
+            this.used = new long[capacity];
+            this.total = new long[capacity];
+        }
+    }
+}
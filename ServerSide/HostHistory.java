@@ -0,0 +1,26 @@
+package ServerSide;
+
+import shared.CompressedSeries;
+import shared.HistoryBudget;
+import shared.SystemInfo;
+
+// Retained CPU and memory history of one host, written by the ingest processor.
+public class HostHistory {
+    private final CompressedSeries cpu;
+    private final CompressedSeries memory;
+
+    public HostHistory(HistoryBudget budget) {
+        this.cpu = budget.newSeries();
+        this.memory = budget.newSeries();
+    }
+
+    // Capture times can step back when a host's clock is adjusted; the series stay in time order
+    public void record(long timeMillis, SystemInfo info) {
+        long time = Math.max(timeMillis, cpu.latestTime());
+        cpu.add(time, info.getCpuUsage());
+        memory.add(time, info.getMemoryUsagePercentage());
+    }
+
+    public CompressedSeries getCpu() { return cpu; }
+    public CompressedSeries getMemory() { return memory; }
+}
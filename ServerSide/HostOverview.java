@@ -0,0 +1,308 @@
+package ServerSide;
+
+import javafx.geometry.Orientation;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import shared.CompressedSeries;
+import shared.SystemInfo;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Every host as a small tile on one {@link Canvas}: name, current CPU and
+ * memory, and sparklines of its last samples, tinted by CPU load. Only the
+ * rows in the viewport are painted, and between layout changes only the
+ * tiles whose host sent something, so the cost follows what changed rather
+ * than the number of hosts. The scene graph is a canvas and a scroll bar at
+ * any fleet size.
+ *
+ * When sorted by load the order is refreshed once a second, so tiles do not
+ * jump around on every sample. Clicking a tile selects its host.
+ * FX thread only.
+ */
+public final class HostOverview extends Region {
+    public enum Order { NAME, CPU, MEMORY }
+
+    private static final double TILE_WIDTH = 180;
+    private static final double TILE_HEIGHT = 58;
+    private static final double GAP = 4;
+    private static final int SPARK_POINTS = 60;
+    private static final long RESORT_MILLIS = 1000;
+    private static final Font NAME_FONT = Font.font(11);
+    private static final Color BACKGROUND = Color.web("#f4f4f4");
+    private static final Color HOT = Color.web("#f2a7a7");
+    private static final Color TEXT = Color.web("#222222");
+    private static final Color CPU_LINE = Color.web("#1f77b4");
+    private static final Color MEMORY_LINE = Color.web("#ff7f0e");
+    private static final Color SELECTED = Color.web("#0050c8");
+
+    private final Canvas canvas = new Canvas();
+    private final ScrollBar scrollBar = new ScrollBar();
+    private final Function<String, HostHistory> histories;
+    private final Map<String, Tile> tiles = new HashMap<>();
+    private final List<Tile> ordered = new ArrayList<>();
+    private final List<Tile> changed = new ArrayList<>();
+    private final double[] xs = new double[SPARK_POINTS];
+    private final double[] ys = new double[SPARK_POINTS];
+    private Order order = Order.NAME;
+    private Consumer<String> onSelect = hostname -> { };
+    private String selected;
+    private boolean layoutChanged = true;
+    private long lastSort;
+    private int columns = 1;
+
+    // histories seeds a new tile's sparklines; it may return null
+    public HostOverview(Function<String, HostHistory> histories) {
+        this.histories = histories;
+        scrollBar.setOrientation(Orientation.VERTICAL);
+        scrollBar.valueProperty().addListener((obs, old, value) -> repaintAll());
+        canvas.setOnScroll(e -> scrollBar.setValue(Math.max(scrollBar.getMin(),
+                Math.min(scrollBar.getMax(), scrollBar.getValue() - e.getDeltaY()))));
+        canvas.setOnMouseClicked(e -> select(tileAt(e.getX(), e.getY())));
+        getChildren().addAll(canvas, scrollBar);
+    }
+
+    public void setOnSelect(Consumer<String> onSelect) {
+        this.onSelect = onSelect;
+    }
+
+    public void setOrder(Order order) {
+        this.order = order;
+        sort();
+        repaintAll();
+    }
+
+    public void update(SystemInfo info) {
+        Tile tile = tiles.get(info.getHostname());
+        if (tile == null) {
+            tile = new Tile(info.getHostname());
+            if (!tile.seed(histories.apply(info.getHostname()))) {
+                tile.push(info.getCpuUsage(), info.getMemoryUsagePercentage());
+            }
+            tiles.put(tile.hostname, tile);
+            ordered.add(tile);
+            layoutChanged = true;
+        } else {
+            tile.push(info.getCpuUsage(), info.getMemoryUsagePercentage());
+        }
+        tile.latest = info;
+        if (!tile.changed) {
+            tile.changed = true;
+            changed.add(tile);
+        }
+    }
+
+    public void remove(String hostname) {
+        Tile tile = tiles.remove(hostname);
+        if (tile != null) {
+            ordered.remove(tile);
+            changed.remove(tile);
+            layoutChanged = true;
+        }
+    }
+
+    public int size() {
+        return tiles.size();
+    }
+
+    // Paints what changed since the last call; called once per UI pulse
+    public void paint() {
+        long now = System.currentTimeMillis();
+        if (layoutChanged || (order != Order.NAME && now - lastSort >= RESORT_MILLIS && !changed.isEmpty())) {
+            sort();
+            lastSort = now;
+            repaintAll();
+            return;
+        }
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        double offset = scrollBar.getValue();
+        for (Tile tile : changed) {
+            drawTile(g, tile, offset);
+            tile.changed = false;
+        }
+        changed.clear();
+    }
+
+    @Override
+    protected void layoutChildren() {
+        double barWidth = scrollBar.prefWidth(-1);
+        double width = Math.max(0, getWidth() - barWidth);
+        double height = getHeight();
+        canvas.setWidth(width);
+        canvas.setHeight(height);
+        canvas.relocate(0, 0);
+        scrollBar.resizeRelocate(width, 0, barWidth, height);
+        updateScrollRange();
+        repaintAll();
+    }
+
+    @Override
+    protected double computePrefHeight(double width) {
+        return 3 * (TILE_HEIGHT + GAP);
+    }
+
+    private void sort() {
+        Comparator<Tile> byName = Comparator.comparing(tile -> tile.hostname);
+        switch (order) {
+            case CPU:
+                ordered.sort(Comparator.comparingDouble((Tile tile) -> -tile.latest.getCpuUsage()).thenComparing(byName));
+                break;
+            case MEMORY:
+                ordered.sort(Comparator.comparingDouble((Tile tile) -> -tile.latest.getMemoryUsagePercentage())
+                        .thenComparing(byName));
+                break;
+            default:
+                ordered.sort(byName);
+                break;
+        }
+        for (int i = 0; i < ordered.size(); i++) {
+            ordered.get(i).index = i;
+        }
+        layoutChanged = false;
+        updateScrollRange();
+    }
+
+    private void updateScrollRange() {
+        columns = Math.max(1, (int) ((canvas.getWidth() + GAP) / (TILE_WIDTH + GAP)));
+        int rows = (ordered.size() + columns - 1) / columns;
+        double overflow = Math.max(0, rows * (TILE_HEIGHT + GAP) - canvas.getHeight());
+        scrollBar.setMax(overflow);
+        scrollBar.setVisibleAmount(canvas.getHeight());
+        scrollBar.setUnitIncrement(TILE_HEIGHT + GAP);
+        scrollBar.setBlockIncrement(canvas.getHeight());
+        if (scrollBar.getValue() > overflow) {
+            scrollBar.setValue(overflow);
+        }
+    }
+
+    private void repaintAll() {
+        if (layoutChanged) {
+            sort();
+        }
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        g.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        double offset = scrollBar.getValue();
+        int firstRow = (int) (offset / (TILE_HEIGHT + GAP));
+        int lastRow = (int) ((offset + canvas.getHeight()) / (TILE_HEIGHT + GAP));
+        int end = Math.min(ordered.size(), (lastRow + 1) * columns);
+        for (int i = firstRow * columns; i < end; i++) {
+            drawTile(g, ordered.get(i), offset);
+        }
+        for (Tile tile : changed) {
+            tile.changed = false;
+        }
+        changed.clear();
+    }
+
+    private void drawTile(GraphicsContext g, Tile tile, double offset) {
+        double x = (tile.index % columns) * (TILE_WIDTH + GAP);
+        double y = (tile.index / columns) * (TILE_HEIGHT + GAP) - offset;
+        if (y + TILE_HEIGHT < 0 || y > canvas.getHeight()) {
+            return;
+        }
+        double cpu = tile.latest.getCpuUsage();
+        g.setFill(BACKGROUND.interpolate(HOT, Math.min(1, Math.max(0, (cpu - 50) / 50))));
+        g.fillRect(x, y, TILE_WIDTH, TILE_HEIGHT);
+        if (tile.hostname.equals(selected)) {
+            g.setStroke(SELECTED);
+            g.setLineWidth(2);
+            g.strokeRect(x + 1, y + 1, TILE_WIDTH - 2, TILE_HEIGHT - 2);
+        }
+
+        g.setFill(TEXT);
+        g.setFont(NAME_FONT);
+        g.setTextBaseline(VPos.TOP);
+        g.fillText(tile.hostname, x + 5, y + 3, TILE_WIDTH - 10);
+        g.fillText(String.format("CPU %.0f%%  Mem %.0f%%", cpu, tile.latest.getMemoryUsagePercentage()),
+                x + 5, y + 16, TILE_WIDTH - 10);
+
+        double top = y + 31;
+        double height = TILE_HEIGHT - 35;
+        g.setLineWidth(1);
+        sparkline(g, tile.cpu, tile, x + 5, top, TILE_WIDTH - 10, height, CPU_LINE);
+        sparkline(g, tile.memory, tile, x + 5, top, TILE_WIDTH - 10, height, MEMORY_LINE);
+    }
+
+    private void sparkline(GraphicsContext g, float[] values, Tile tile, double x, double y, double width,
+                           double height, Color color) {
+        if (tile.count < 2) return;
+        double step = width / (SPARK_POINTS - 1);
+        int first = tile.head - tile.count + SPARK_POINTS;
+        double start = x + (SPARK_POINTS - tile.count) * step;
+        for (int i = 0; i < tile.count; i++) {
+            double value = Math.min(100, Math.max(0, values[(first + i) % SPARK_POINTS]));
+            xs[i] = start + i * step;
+            ys[i] = y + height - value / 100 * height;
+        }
+        g.setStroke(color);
+        g.strokePolyline(xs, ys, tile.count);
+    }
+
+    private Tile tileAt(double x, double y) {
+        int column = (int) (x / (TILE_WIDTH + GAP));
+        int row = (int) ((y + scrollBar.getValue()) / (TILE_HEIGHT + GAP));
+        int index = row * columns + column;
+        return column < columns && index < ordered.size() ? ordered.get(index) : null;
+    }
+
+    private void select(Tile tile) {
+        if (tile == null) return;
+        Tile previous = selected == null ? null : tiles.get(selected);
+        selected = tile.hostname;
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        if (previous != null) {
+            drawTile(g, previous, scrollBar.getValue());
+        }
+        drawTile(g, tile, scrollBar.getValue());
+        onSelect.accept(tile.hostname);
+    }
+
+    // Host state for one tile: the latest sample and the last SPARK_POINTS values
+    private static final class Tile {
+        final String hostname;
+        final float[] cpu = new float[SPARK_POINTS];
+        final float[] memory = new float[SPARK_POINTS];
+        SystemInfo latest;
+        int head;
+        int count;
+        int index;
+        boolean changed;
+
+        Tile(String hostname) {
+            this.hostname = hostname;
+        }
+
+        void push(double cpuValue, double memoryValue) {
+            cpu[head] = (float) cpuValue;
+            memory[head] = (float) memoryValue;
+            head = (head + 1) % SPARK_POINTS;
+            count = Math.min(SPARK_POINTS, count + 1);
+        }
+
+        // The engine records a sample before the dashboard sees it, so history already ends with it
+        boolean seed(HostHistory history) {
+            if (history == null || history.getCpu().size() == 0) return false;
+            CompressedSeries.Cursor cpuPoints = recent(history.getCpu());
+            CompressedSeries.Cursor memoryPoints = recent(history.getMemory());
+            while (cpuPoints.next() && memoryPoints.next()) {
+                push(cpuPoints.value(), memoryPoints.value());
+            }
+            return count > 0;
+        }
+
+        private static CompressedSeries.Cursor recent(CompressedSeries series) {
+            return series.cursor(series.latestTime() - SPARK_POINTS * 1000L, Long.MAX_VALUE);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package ServerSide;
+
+import shared.EpochClock;
+import shared.IntervalSummary;
+import shared.MetricValues;
+import shared.SystemInfo;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Passes everything the transports deliver on to the ingest path and records
+ * it, with receive timestamps, in a {@link CaptureFile} for
+ * {@link CaptureReplay}. Enabled by {@code rms.capture.file}.
+ *
+ * Transport threads only append to an in-memory batch; a writer thread swaps
+ * it out every {@code rms.capture.flushMs} (default 500) and writes it. A batch
+ * holds at most {@code rms.capture.batchSize} events (default 65536); beyond
+ * that events are left out of the capture and counted, never delayed.
+ */
+public class IngestRecorder implements IngestSink {
+    private final IngestSink target;
+    private final Path file;
+    private final Consumer<String> log;
+    private final CaptureFile.Writer writer;
+    private final long flushMillis = Long.getLong("rms.capture.flushMs", 500);
+    private final int batchCapacity = Integer.getInteger("rms.capture.batchSize", 1 << 16);
+
+    private final Object lock = new Object();
+    private List<Event> filling = new ArrayList<>();
+    private List<Event> draining = new ArrayList<>();
+
+    private volatile boolean isRunning = true;
+    private final Thread writerThread;
+
+    private IngestRecorder(IngestSink target, Path file, Consumer<String> log) throws IOException {
+        this.target = target;
+        this.file = file;
+        this.log = log;
+        this.writer = new CaptureFile.Writer(file, EpochClock.nanos());
+        this.writerThread = new Thread(this::writeLoop, "capture-writer");
+        this.writerThread.setDaemon(true);
+    }
+
+    public static IngestRecorder start(IngestSink target, Path file, Consumer<String> log) throws IOException {
+        IngestRecorder recorder = new IngestRecorder(target, file, log);
+        recorder.writerThread.start();
+        return recorder;
+    }
+
+    @Override
+    public void addOrUpdateClient(SystemInfo info) {
+        long received = info.getReceivedNanos();
+        record(new Event(CaptureFile.SAMPLE, received == 0 ? EpochClock.nanos() : received, info, null, 0));
+        target.addOrUpdateClient(info);
+    }
+
+    @Override
+    public void removeClient(String hostname) {
+        record(new Event(CaptureFile.REMOVE, EpochClock.nanos(), hostname, null, 0));
+        target.removeClient(hostname);
+    }
+
+    @Override
+    public void addSummary(IntervalSummary summary) {
+        record(new Event(CaptureFile.SUMMARY, EpochClock.nanos(), summary, null, 0));
+        target.addSummary(summary);
+    }
+
+    @Override
+    public void addMetrics(String hostname, long timeMillis, MetricValues metrics) {
+        record(new Event(CaptureFile.METRICS, EpochClock.nanos(), hostname, metrics, timeMillis));
+        target.addMetrics(hostname, timeMillis, metrics);
+    }
+
+    @Override
+    public boolean hasRoom(Runnable resume) {
+        return target.hasRoom(resume);
+    }
+
+    @Override
+    public void log(String message) {
+        target.log(message);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    // Writes what is still batched and closes the file
+    public void stop() {
+        isRunning = false;
+        synchronized (lock) {
+            lock.notify();
+        }
+        try {
+            writerThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void record(Event event) {
+        synchronized (lock) {
+            if (filling.size() == batchCapacity) {
+                ServerMetrics.CAPTURE_DROPPED.increment();
+                return;
+            }
+            filling.add(event);
+            if (filling.size() == batchCapacity / 2) {
+                lock.notify();
+            }
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                boolean stopping = !isRunning;
+                synchronized (lock) {
+                    if (!stopping && filling.isEmpty()) {
+                        lock.wait(flushMillis);
+                    }
+                    List<Event> swapped = filling;
+                    filling = draining;
+                    draining = swapped;
+                }
+                for (Event event : draining) {
+                    write(event);
+                }
+                draining.clear();
+                writer.flush();
+                if (stopping) break;
+            }
+        } catch (IOException e) {
+            log.accept("Capture stopped: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.accept("Capture close failed: " + e.getMessage());
+            }
+        }
+        log.accept("Capture " + file + " closed after " + writer.getRecords() + " events");
+    }
+
+    private void write(Event event) throws IOException {
+        switch (event.type) {
+            case CaptureFile.SAMPLE:
+                writer.sample(event.receivedNanos, (SystemInfo) event.payload);
+                break;
+            case CaptureFile.REMOVE:
+                writer.remove(event.receivedNanos, (String) event.payload);
+                break;
+            case CaptureFile.SUMMARY:
+                writer.summary(event.receivedNanos, (IntervalSummary) event.payload);
+                break;
+            default:
+                writer.metrics(event.receivedNanos, (String) event.payload, event.timeMillis, event.metrics);
+                break;
+        }
+    }
+
+    private static final class Event {
+        final int type;
+        final long receivedNanos;
+        final Object payload;
+        final MetricValues metrics;
+        final long timeMillis;
+
+        Event(int type, long receivedNanos, Object payload, MetricValues metrics, long timeMillis) {
+            this.type = type;
+            this.receivedNanos = receivedNanos;
+            this.payload = payload;
+            this.metrics = metrics;
+            this.timeMillis = timeMillis;
+        }
+    }
+}
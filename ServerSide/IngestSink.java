@@ -0,0 +1,31 @@
+package ServerSide;
+
+import shared.IntervalSummary;
+import shared.MetricValues;
+import shared.SystemInfo;
+
+// Where the ingestion transports deliver decoded samples and connection events.
+public interface IngestSink {
+    void addOrUpdateClient(SystemInfo info);
+
+    void removeClient(String hostname);
+
+    // Statistics a relay sends for samples it coalesced away
+    default void addSummary(IntervalSummary summary) {
+    }
+
+    // Latest named metrics of a host, from its collectors
+    default void addMetrics(String hostname, long timeMillis, MetricValues metrics) {
+    }
+
+    /**
+     * Flow control for transports: true if the sink takes more input now. If
+     * not, it runs {@code resume} once it has room again, from another thread,
+     * and the caller should read nothing more from that connection until then.
+     */
+    default boolean hasRoom(Runnable resume) {
+        return true;
+    }
+
+    void log(String message);
+}
@@ -0,0 +1,341 @@
+package ServerSide;
+
+import shared.EpochClock;
+import shared.IntervalSummary;
+import shared.MetricValues;
+import shared.SystemInfo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded hand-off between the transports' I/O threads and the processing
+ * that updates host state, history, fleet percentiles and alerts. One
+ * processor thread drains it in batches.
+ *
+ * What happens when processing falls behind is set per stage, by default from
+ * {@code rms.ingest.policy}:
+ * <ul>
+ *   <li>{@code DROP_OLDEST} (default): at most {@code rms.ingest.capacity}
+ *       events (default 65536) wait; a full queue discards its oldest sample.</li>
+ *   <li>{@code BLOCK}: nothing is dropped; while the queue is full,
+ *       {@link #hasRoom} tells the transports to stop reading each connection
+ *       that has more to deliver until the processor has taken the queue, so
+ *       those clients are slowed down by TCP flow control. An NIO thread keeps
+ *       serving its other connections meanwhile. The queue can run over by
+ *       about one frame per reading thread.</li>
+ *   <li>{@code COALESCE_LATEST}: only the newest sample, summary and metrics
+ *       snapshot per host wait, so memory is bounded by the number of hosts.
+ *       Every sample a newer one replaces is lost to history too, including
+ *       the samples of a replayed batch.</li>
+ * </ul>
+ * Disconnects are never dropped and are processed after everything the host
+ * sent before it, so its last samples still reach history and alerts.
+ */
+public class IngestStage implements IngestSink {
+    public enum Policy { DROP_OLDEST, BLOCK, COALESCE_LATEST }
+
+    private final IngestSink target;
+    private final Policy policy;
+    private final int capacity;
+    private final Object lock = new Object();
+
+    // DROP_OLDEST and BLOCK: samples as SystemInfo, everything else as Event, in arrival order
+    private ArrayDeque<Object> filling = new ArrayDeque<>();
+    private ArrayDeque<Object> draining = new ArrayDeque<>();
+
+    // COALESCE_LATEST
+    // What departed hosts still had waiting, each followed by its removal
+    private final ArrayDeque<Object> departures = new ArrayDeque<>();
+    private final Map<String, IntervalSummary> summaries = new LinkedHashMap<>();
+    private final Map<String, Event> metrics = new LinkedHashMap<>();
+    private final Map<String, SystemInfo> samples = new LinkedHashMap<>();
+    private final ArrayDeque<Object> coalesced = new ArrayDeque<>();
+
+    // BLOCK: callbacks of connections waiting for room
+    private final List<Runnable> waiting = new ArrayList<>();
+
+    private volatile boolean isRunning = false;
+    private Thread processor;
+
+    public IngestStage(IngestSink target) {
+        this(target, defaultPolicy(), defaultCapacity());
+    }
+
+    public IngestStage(IngestSink target, Policy policy, int capacity) {
+        this.target = target;
+        this.policy = policy;
+        this.capacity = capacity;
+    }
+
+    public void start() {
+        isRunning = true;
+        ServerMetrics.REGISTRY.gauge("ingest_queue_depth", "Events waiting between the network and processing",
+                this::depth);
+        processor = new Thread(this::processLoop, "ingest-processor");
+        processor.setDaemon(true);
+        processor.start();
+    }
+
+    // Processes what is already queued, then stops
+    public void stop() {
+        isRunning = false;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        if (processor != null) {
+            try {
+                processor.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Nothing makes room any more; let waiting connections go on to see the shutdown
+        resumeWaiting();
+        ServerMetrics.REGISTRY.removeGauge("ingest_queue_depth");
+    }
+
+    public static Policy defaultPolicy() {
+        return Policy.valueOf(System.getProperty("rms.ingest.policy", "DROP_OLDEST"));
+    }
+
+    public static int defaultCapacity() {
+        return Integer.getInteger("rms.ingest.capacity", 1 << 16);
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int depth() {
+        synchronized (lock) {
+            return policy == Policy.COALESCE_LATEST
+                    ? departures.size() + summaries.size() + metrics.size() + samples.size()
+                    : filling.size();
+        }
+    }
+
+    // ---- producer side, called from the transports' I/O threads ----
+
+    @Override
+    public void addOrUpdateClient(SystemInfo info) {
+        synchronized (lock) {
+            if (policy == Policy.COALESCE_LATEST) {
+                if (samples.put(info.getHostname(), info) != null) {
+                    ServerMetrics.INGEST_COALESCED.increment();
+                }
+            } else if (admit()) {
+                filling.add(info);
+            }
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void addSummary(IntervalSummary summary) {
+        synchronized (lock) {
+            if (policy == Policy.COALESCE_LATEST) {
+                summaries.put(summary.getHostname(), summary);
+            } else if (admit()) {
+                filling.add(new Event(Event.SUMMARY, summary.getHostname(), summary, 0));
+            }
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void addMetrics(String hostname, long timeMillis, MetricValues values) {
+        synchronized (lock) {
+            Event event = new Event(Event.METRICS, hostname, values, timeMillis);
+            if (policy == Policy.COALESCE_LATEST) {
+                metrics.put(hostname, event);
+            } else if (admit()) {
+                filling.add(event);
+            }
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void removeClient(String hostname) {
+        synchronized (lock) {
+            if (policy == Policy.COALESCE_LATEST) {
+                // Anything queued for this host later comes from a new session and must follow the removal
+                IntervalSummary summary = summaries.remove(hostname);
+                if (summary != null) {
+                    departures.add(new Event(Event.SUMMARY, hostname, summary, 0));
+                }
+                Event snapshot = metrics.remove(hostname);
+                if (snapshot != null) {
+                    departures.add(snapshot);
+                }
+                SystemInfo sample = samples.remove(hostname);
+                if (sample != null) {
+                    departures.add(sample);
+                }
+                departures.add(new Event(Event.REMOVE, hostname, null, 0));
+            } else {
+                filling.add(new Event(Event.REMOVE, hostname, null, 0));
+            }
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public boolean hasRoom(Runnable resume) {
+        if (policy != Policy.BLOCK) {
+            return true;
+        }
+        synchronized (lock) {
+            if (filling.size() < capacity || !isRunning) {
+                return true;
+            }
+            waiting.add(resume);
+            return false;
+        }
+    }
+
+    @Override
+    public void log(String message) {
+        target.log(message);
+    }
+
+    // Makes room in a queue-based stage; false if the event has to be dropped. Holds the lock.
+    private boolean admit() {
+        if (filling.size() < capacity || policy == Policy.BLOCK) {
+            // BLOCK callers asked hasRoom first; what they already decoded is taken
+            return true;
+        }
+        for (Iterator<Object> it = filling.iterator(); it.hasNext(); ) {
+            Object oldest = it.next();
+            if (!(oldest instanceof Event) || ((Event) oldest).kind != Event.REMOVE) {
+                it.remove();
+                ServerMetrics.INGEST_DROPPED.increment();
+                return true;
+            }
+        }
+        // Only disconnects are queued; let it grow rather than lose one
+        return true;
+    }
+
+    // ---- processor thread ----
+
+    private void processLoop() {
+        while (true) {
+            ArrayDeque<Object> batch;
+            boolean resume;
+            synchronized (lock) {
+                while (isEmpty() && isRunning) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (isEmpty()) {
+                    return;
+                }
+                batch = swap();
+                resume = !waiting.isEmpty();
+            }
+            if (resume) {
+                resumeWaiting();
+            }
+            for (Object item : batch) {
+                try {
+                    process(item);
+                } catch (RuntimeException e) {
+                    target.log("Error processing sample: " + e.getMessage());
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void resumeWaiting() {
+        List<Runnable> ready;
+        synchronized (lock) {
+            ready = new ArrayList<>(waiting);
+            waiting.clear();
+        }
+        for (Runnable resume : ready) {
+            resume.run();
+        }
+    }
+
+    private boolean isEmpty() {
+        return policy == Policy.COALESCE_LATEST
+                ? departures.isEmpty() && summaries.isEmpty() && metrics.isEmpty() && samples.isEmpty()
+                : filling.isEmpty();
+    }
+
+    // Takes everything waiting; departures go first, since whatever is still waiting arrived after them
+    private ArrayDeque<Object> swap() {
+        if (policy != Policy.COALESCE_LATEST) {
+            ArrayDeque<Object> batch = filling;
+            filling = draining;
+            draining = batch;
+            return batch;
+        }
+        coalesced.addAll(departures);
+        for (IntervalSummary summary : summaries.values()) {
+            coalesced.add(new Event(Event.SUMMARY, summary.getHostname(), summary, 0));
+        }
+        coalesced.addAll(metrics.values());
+        coalesced.addAll(samples.values());
+        departures.clear();
+        summaries.clear();
+        metrics.clear();
+        samples.clear();
+        return coalesced;
+    }
+
+    private void process(Object item) {
+        if (item instanceof SystemInfo) {
+            SystemInfo info = (SystemInfo) item;
+            if (info.getReceivedNanos() != 0) {
+                ServerMetrics.INGEST_WAIT.record(EpochClock.nanos() - info.getReceivedNanos());
+            }
+            target.addOrUpdateClient(info);
+            return;
+        }
+        Event event = (Event) item;
+        switch (event.kind) {
+            case Event.SUMMARY:
+                target.addSummary((IntervalSummary) event.payload);
+                break;
+            case Event.METRICS:
+                target.addMetrics(event.hostname, event.timeMillis, (MetricValues) event.payload);
+                break;
+            default:
+                target.removeClient(event.hostname);
+                break;
+        }
+    }
+
+    private static final class Event {
+        static final int SUMMARY = 1;
+        static final int METRICS = 2;
+        static final int REMOVE = 3;
+
+        final int kind;
+        final String hostname;
+        final Object payload;
+        final long timeMillis;
+
+        Event(int kind, String hostname, Object payload, long timeMillis) {
+            this.kind = kind;
+            this.hostname = hostname;
+            this.payload = payload;
+            this.timeMillis = timeMillis;
+        }
+    }
+}
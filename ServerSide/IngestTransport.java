@@ -0,0 +1,43 @@
+package ServerSide;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+
+/**
+ * Accepts client connections and feeds decoded samples into an {@link IngestSink},
+ * recording connections and host sessions in a {@link SessionRegistry}.
+ *
+ * Selected with the {@code rms.transport} system property:
+ * {@code nio} (default) runs a Selector reactor on {@code rms.ioThreads} threads,
+ * {@code virtual} runs one virtual thread per connection and
+ * {@code threads} keeps the old cached platform thread pool.
+ */
+public interface IngestTransport {
+    // Binds the listening socket and returns; connections are served in the background.
+    void start(int port) throws IOException;
+
+    // Closes every connection and returns once their disconnects have reached the sink.
+    void stop();
+
+    String describe();
+
+    static IngestTransport create(IngestSink sink) {
+        return create(sink, new SessionRegistry());
+    }
+
+    static IngestTransport create(IngestSink sink, SessionRegistry sessions) {
+        String mode = System.getProperty("rms.transport", "nio");
+        switch (mode) {
+            case "nio":
+                int ioThreads = Integer.getInteger("rms.ioThreads",
+                        Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)));
+                return new NioIngestTransport(sink, sessions, ioThreads);
+            case "virtual":
+                return new BlockingIngestTransport(sink, sessions, Executors.newVirtualThreadPerTaskExecutor(), "virtual threads");
+            case "threads":
+                return new BlockingIngestTransport(sink, sessions, Executors.newCachedThreadPool(), "thread per client");
+            default:
+                throw new IllegalArgumentException("Unknown rms.transport: " + mode);
+        }
+    }
+}
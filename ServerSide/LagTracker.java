@@ -0,0 +1,192 @@
+package ServerSide;
+
+import shared.EpochClock;
+import shared.SystemInfo;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Per-host freshness of the data the server holds and shows.
+ *
+ * Every sample carries its capture time and the time the server decoded it.
+ * Their difference mixes network and queueing delay with the host's clock
+ * skew, so the skew is estimated as the smallest difference seen over the
+ * last one to two windows of {@code rms.lag.windowSamples} samples (default
+ * 120); what exceeds it is lag. The estimate follows a clock that is stepped
+ * within two windows. Sequence numbers that skip ahead count as lost samples,
+ * ones that go back as duplicates.
+ *
+ * A host's sequence state outlives its connection for
+ * {@code rms.lag.retainSec} (default 3600), so samples a reconnecting host
+ * sends again because their ACK was lost are still recognised as duplicates,
+ * and samples missed while it was away count as lost once it is back.
+ * Its {@code host_samples_lost_total} series lasts as long.
+ * A host that restarts its numbering at lower sequence numbers but newer
+ * capture times starts a fresh sequence.
+ */
+public class LagTracker {
+    private final int windowSamples = Integer.getInteger("rms.lag.windowSamples", 120);
+    private final long retainNanos = Long.getLong("rms.lag.retainSec", 3600) * 1_000_000_000L;
+    private final Map<String, HostLag> hosts = new ConcurrentHashMap<>();
+    // Disconnected hosts in the order they left, so expiry only ever looks at the head
+    private final Queue<Departure> departed = new ConcurrentLinkedQueue<>();
+
+    // Called on the ingest path for every sample; false if it is one already received, resent
+    public boolean onReceive(SystemInfo info) {
+        expireDeparted(System.nanoTime());
+        HostLag lag = hosts.computeIfAbsent(info.getHostname(), HostLag::new);
+        long received = info.getReceivedNanos() != 0 ? info.getReceivedNanos() : EpochClock.nanos();
+        long receiveLag;
+        boolean duplicate;
+        synchronized (lag) {
+            lag.departedNanos = 0;
+            duplicate = info.getSeq() >= 0 && info.getSeq() < lag.expectedSeq && info.getTimeNanos() <= lag.lastCapture;
+            if (duplicate) {
+                lag.duplicates++;
+                ServerMetrics.SAMPLES_DUPLICATE.increment();
+                return false;
+            }
+            receiveLag = lag.receive(info.getSeq(), info.getTimeNanos(), received, windowSamples);
+        }
+        ServerMetrics.RECEIVE_LAG.record(receiveLag);
+        return true;
+    }
+
+    // Called on the FX thread when the dashboard shows a sample
+    public void onApplied(SystemInfo info, long appliedNanos) {
+        HostLag lag = hosts.get(info.getHostname());
+        if (lag == null) return;
+        long applyLag;
+        synchronized (lag) {
+            applyLag = appliedNanos - info.getTimeNanos() - lag.clockOffset();
+            lag.applyLag = applyLag;
+        }
+        ServerMetrics.APPLY_LAG.record(applyLag);
+    }
+
+    public HostLag get(String hostname) {
+        return hosts.get(hostname);
+    }
+
+    // The host's sequence state stays until it has been gone for rms.lag.retainSec
+    public void onDisconnect(String hostname) {
+        HostLag lag = hosts.get(hostname);
+        if (lag != null) {
+            long now = System.nanoTime();
+            synchronized (lag) {
+                lag.departedNanos = now;
+            }
+            departed.add(new Departure(lag, now));
+            expireDeparted(now);
+        }
+    }
+
+    // Age of the stalest connected host's latest sample, for the max-age gauge
+    public double maxAgeSeconds() {
+        long now = EpochClock.nanos();
+        long max = 0;
+        for (HostLag lag : hosts.values()) {
+            if (!lag.isDeparted()) {
+                max = Math.max(max, lag.getAgeNanos(now));
+            }
+        }
+        return max / 1e9;
+    }
+
+    private void expireDeparted(long now) {
+        Departure departure;
+        while ((departure = departed.peek()) != null && now - departure.nanos >= retainNanos) {
+            if (!departed.remove(departure)) continue;
+            HostLag lag = departure.lag;
+            boolean idle;
+            synchronized (lag) {
+                // Not if it came back, or left again later and is queued once more for that
+                idle = lag.departedNanos == departure.nanos;
+            }
+            if (idle && hosts.remove(lag.hostname, lag)) {
+                ServerMetrics.HOST_SAMPLES_LOST.remove(lag.hostname);
+            }
+        }
+    }
+
+    private static final class Departure {
+        final HostLag lag;
+        final long nanos;
+
+        Departure(HostLag lag, long nanos) {
+            this.lag = lag;
+            this.nanos = nanos;
+        }
+    }
+
+    public static final class HostLag {
+        private final String hostname;
+        private long expectedSeq = -1;
+        private long lost;
+        private long duplicates;
+        private long windowMin = Long.MAX_VALUE;
+        private long previousWindowMin = Long.MAX_VALUE;
+        private int windowCount;
+        private long lastCapture;
+        private long lastTransit;
+        private long applyLag = -1;
+        // System.nanoTime() of the disconnect, 0 while connected
+        private long departedNanos;
+
+        HostLag(String hostname) {
+            this.hostname = hostname;
+        }
+
+        // Returns the offset-corrected receive lag of this sample
+        long receive(long seq, long capture, long received, int windowSamples) {
+            if (seq >= 0) {
+                if (expectedSeq >= 0 && seq > expectedSeq) {
+                    lost += seq - expectedSeq;
+                    ServerMetrics.SAMPLES_LOST.add(seq - expectedSeq);
+                    ServerMetrics.HOST_SAMPLES_LOST.get(hostname).add(seq - expectedSeq);
+                } else if (expectedSeq >= 0 && seq < expectedSeq) {
+                    // Older seq with a newer capture time: the host restarted its numbering
+                    expectedSeq = seq;
+                }
+                expectedSeq = Math.max(expectedSeq, seq + 1);
+            }
+
+            long transit = received - capture;
+            windowMin = Math.min(windowMin, transit);
+            if (++windowCount >= windowSamples) {
+                previousWindowMin = windowMin;
+                windowMin = Long.MAX_VALUE;
+                windowCount = 0;
+            }
+            if (capture >= lastCapture) {
+                lastCapture = capture;
+                lastTransit = transit;
+            }
+            return transit - clockOffset();
+        }
+
+        private long clockOffset() {
+            long offset = Math.min(windowMin, previousWindowMin);
+            return offset == Long.MAX_VALUE ? 0 : offset;
+        }
+
+        // Host clock minus server clock, plus the smallest delivery delay seen
+        public synchronized long getClockOffsetNanos() { return clockOffset(); }
+        // Delay of the newest sample beyond the fastest delivery seen
+        public synchronized long getReceiveLagNanos() { return lastTransit - clockOffset(); }
+        // Capture to dashboard for the last sample shown, or -1
+        public synchronized long getApplyLagNanos() { return applyLag; }
+        public synchronized long getLost() { return lost; }
+        public synchronized long getDuplicates() { return duplicates; }
+        public synchronized long getLastSeq() { return expectedSeq - 1; }
+        public synchronized boolean isDeparted() { return departedNanos != 0; }
+
+        // How old the newest sample is at the given server time
+        public synchronized long getAgeNanos(long nowNanos) {
+            return lastCapture == 0 ? 0 : Math.max(0, nowNanos - lastCapture - clockOffset());
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package ServerSide;
+
+import shared.SystemInfo;
+
+// Per-sample values the server can chart, alert on and query.
+public enum Metric {
+    CPU("cpu", "CPU") {
+        @Override
+        public double valueOf(SystemInfo info) {
+            return info.getCpuUsage();
+        }
+    },
+    MEMORY("memory", "Memory") {
+        @Override
+        public double valueOf(SystemInfo info) {
+            return info.getMemoryUsagePercentage();
+        }
+    };
+
+    private final String key;
+    private final String label;
+
+    Metric(String key, String label) {
+        this.key = key;
+        this.label = label;
+    }
+
+    public abstract double valueOf(SystemInfo info);
+
+    public String getKey() { return key; }
+    public String getLabel() { return label; }
+
+    public static Metric fromKey(String key) {
+        for (Metric metric : values()) {
+            if (metric.key.equalsIgnoreCase(key)) {
+                return metric;
+            }
+        }
+        throw new IllegalArgumentException("Unknown metric: " + key);
+    }
+}
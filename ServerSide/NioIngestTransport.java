@@ -0,0 +1,434 @@
+package ServerSide;
+
+import shared.SamplingControl;
+import shared.SystemInfo;
+import shared.SystemInfoCodec;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Selector based reactor: one acceptor thread hands connections round-robin to a fixed set of I/O threads.
+public class NioIngestTransport implements IngestTransport {
+    // Largest WELCOME, ACK or CONTROL frame; SessionRegistry keeps collector lists short enough
+    private static final int MAX_REPLY = 32 + SessionRegistry.MAX_COLLECTORS_LENGTH;
+    private static final long ACCEPT_RETRY_MS = 100;
+
+    private final IngestSink sink;
+    private final SessionRegistry sessions;
+    private final Reactor[] reactors;
+    private final Thread[] ioThreads;
+    private final AtomicInteger nextReactor = new AtomicInteger();
+    private ServerSocketChannel serverChannel;
+    private volatile boolean isRunning = false;
+
+    public NioIngestTransport(IngestSink sink, SessionRegistry sessions, int ioThreads) {
+        this.sink = sink;
+        this.sessions = sessions;
+        this.reactors = new Reactor[ioThreads];
+        this.ioThreads = new Thread[ioThreads];
+    }
+
+    @Override
+    public void start(int port) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        isRunning = true;
+
+        for (int i = 0; i < reactors.length; i++) {
+            reactors[i] = new Reactor(Selector.open());
+            ioThreads[i] = new Thread(reactors[i], "ingest-io-" + i);
+            ioThreads[i].setDaemon(true);
+            ioThreads[i].start();
+        }
+
+        Thread acceptor = new Thread(this::acceptLoop, "ingest-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    // Only stopping ends the loop; a failure with one connection must not stop the server accepting others
+    private void acceptLoop() {
+        while (isRunning) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                if (!isRunning) break;
+                // E.g. out of file descriptors; back off instead of spinning until it clears
+                sink.log("Server error: " + e.getMessage());
+                try {
+                    Thread.sleep(ACCEPT_RETRY_MS);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+                continue;
+            }
+            long accepted = System.nanoTime();
+            ServerMetrics.CONNECTIONS_ACCEPTED.increment();
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+            } catch (IOException e) {
+                sink.log("Error setting up connection: " + e.getMessage());
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // Nothing to release
+                }
+                continue;
+            }
+            Reactor reactor = reactors[Math.floorMod(nextReactor.getAndIncrement(), reactors.length)];
+            reactor.register(new Connection(channel, accepted, reactor));
+        }
+    }
+
+    @Override
+    public void stop() {
+        isRunning = false;
+        try {
+            if (serverChannel != null && serverChannel.isOpen()) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            sink.log("Error stopping server: " + e.getMessage());
+        }
+        for (Reactor reactor : reactors) {
+            if (reactor != null) {
+                reactor.shutdown();
+            }
+        }
+        // The I/O threads deliver the disconnects of the connections they close; wait for them
+        for (Thread thread : ioThreads) {
+            if (thread != null) {
+                try {
+                    thread.join(5000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public String describe() {
+        return "NIO, " + reactors.length + " I/O threads";
+    }
+
+    private final class Reactor implements Runnable {
+        private final Selector selector;
+        private final Queue<Connection> pending = new ConcurrentLinkedQueue<>();
+        private final Queue<Connection> controlled = new ConcurrentLinkedQueue<>();
+        private final Queue<Connection> resumed = new ConcurrentLinkedQueue<>();
+
+        Reactor(Selector selector) {
+            this.selector = selector;
+        }
+
+        void register(Connection connection) {
+            pending.add(connection);
+            selector.wakeup();
+        }
+
+        // Called from other threads when a connection has CONTROL frames waiting
+        void control(Connection connection) {
+            controlled.add(connection);
+            selector.wakeup();
+        }
+
+        // Called by the sink once a connection it held back may deliver again
+        void resume(Connection connection) {
+            resumed.add(connection);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (isRunning) {
+                    selector.select();
+                    registerPending();
+                    writeControls();
+                    resumeReads();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isValid() && key.isWritable()) {
+                            connection.onWritable(key);
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            connection.onReadable(key);
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                if (isRunning) {
+                    sink.log("I/O thread error: " + e.getMessage());
+                }
+            } finally {
+                closeAll();
+            }
+        }
+
+        private void registerPending() {
+            Connection connection;
+            while ((connection = pending.poll()) != null) {
+                try {
+                    connection.channel.register(selector, SelectionKey.OP_READ, connection);
+                    ServerMetrics.ACCEPT.record(System.nanoTime() - connection.acceptedNanos);
+                    sink.log("New connection from: " + connection.session.describe());
+                } catch (IOException e) {
+                    connection.close(null);
+                }
+            }
+        }
+
+        private void writeControls() {
+            Connection connection;
+            while ((connection = controlled.poll()) != null) {
+                SelectionKey key = connection.channel.keyFor(selector);
+                if (key != null && key.isValid()) {
+                    connection.writeControls(key);
+                }
+            }
+        }
+
+        private void resumeReads() {
+            Connection connection;
+            while ((connection = resumed.poll()) != null) {
+                SelectionKey key = connection.channel.keyFor(selector);
+                if (key != null && key.isValid()) {
+                    connection.onResumed(key);
+                }
+            }
+        }
+
+        void shutdown() {
+            selector.wakeup();
+        }
+
+        private void closeAll() {
+            for (SelectionKey key : selector.keys()) {
+                ((Connection) key.attachment()).close(key);
+            }
+            Connection connection;
+            while ((connection = pending.poll()) != null) {
+                connection.close(null);
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+                // Nothing left to release
+            }
+        }
+    }
+
+    // Per-connection read state; only touched by the owning reactor thread, except the controls queue.
+    private final class Connection {
+        private final SocketChannel channel;
+        private final long acceptedNanos;
+        private final SessionRegistry.Connection session;
+        private final Queue<PendingControl> controls = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer buffer = ByteBuffer.allocate(SystemInfoCodec.LENGTH_SIZE + SystemInfoCodec.MAX_FRAME_SIZE);
+        private final ByteBuffer outbound = ByteBuffer.allocate(4 * MAX_REPLY);
+        private final SystemInfoCodec codec = new SystemInfoCodec();
+        private final Runnable resume;
+        private boolean closed;
+        // While the sink has no room: reading is off and the buffer keeps what was not delivered yet
+        private long pausedNanos;
+
+        Connection(SocketChannel channel, long acceptedNanos, Reactor reactor) {
+            this.channel = channel;
+            this.acceptedNanos = acceptedNanos;
+            this.resume = () -> reactor.resume(this);
+            InetSocketAddress remote;
+            try {
+                remote = (InetSocketAddress) channel.getRemoteAddress();
+            } catch (IOException e) {
+                remote = null;
+            }
+            this.session = sessions.open("nio", remote);
+            this.session.setControlWriter((sessionId, control) -> {
+                controls.add(new PendingControl(sessionId, control));
+                reactor.control(this);
+            });
+        }
+
+        void onReadable(SelectionKey key) {
+            try {
+                int read = channel.read(buffer);
+                if (read < 0) {
+                    close(key);
+                    return;
+                }
+                ServerMetrics.BYTES_RECEIVED.add(read);
+                deliver(key);
+            } catch (IOException | RuntimeException e) {
+                sink.log("Error with client " + session.describe() + ": " + e.getMessage());
+                close(key);
+            }
+        }
+
+        // The sink has room again: deliver what is buffered, then read on
+        void onResumed(SelectionKey key) {
+            ServerMetrics.INGEST_BLOCKED.record(System.nanoTime() - pausedNanos);
+            pausedNanos = 0;
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            try {
+                deliver(key);
+            } catch (IOException | RuntimeException e) {
+                sink.log("Error with client " + session.describe() + ": " + e.getMessage());
+                close(key);
+            }
+        }
+
+        private void deliver(SelectionKey key) throws IOException {
+            buffer.flip();
+            drainFrames(key);
+            buffer.compact();
+            flushOutbound(key);
+        }
+
+        private void drainFrames(SelectionKey key) throws IOException {
+            int limit = buffer.limit();
+            while (buffer.remaining() >= SystemInfoCodec.LENGTH_SIZE) {
+                if (!sink.hasRoom(resume)) {
+                    // Hold back only this connection; TCP flow control slows its client down
+                    pausedNanos = System.nanoTime();
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                    break;
+                }
+                int start = buffer.position();
+                int length = SystemInfoCodec.peekLength(buffer);
+                SystemInfoCodec.checkLength(length);
+                int end = start + SystemInfoCodec.LENGTH_SIZE + length;
+                if (end > limit) {
+                    break;
+                }
+                buffer.position(start + SystemInfoCodec.LENGTH_SIZE).limit(end);
+                long decodeStart = System.nanoTime();
+                byte type = codec.decode(buffer);
+                ServerMetrics.DECODE.record(System.nanoTime() - decodeStart);
+                ServerMetrics.FRAMES_RECEIVED.increment();
+                buffer.limit(limit).position(end);
+
+                if (type == SystemInfoCodec.HELLO) {
+                    codec.renameLastSession(sessions.register(session, codec.lastSessionId(), codec.lastHostname(),
+                            codec.lastSessionRelayed()).getKey());
+                    reserveOutbound(key);
+                    codec.encodeWelcome(codec.lastSessionId(), outbound);
+                } else if (type == SystemInfoCodec.BATCH) {
+                    int count = codec.samples().size();
+                    ServerMetrics.SAMPLES_RECEIVED.add(count);
+                    ServerMetrics.HOST_SAMPLES.get(codec.samples().get(0).getHostname()).add(count);
+                    for (SystemInfo info : codec.samples()) {
+                        sink.addOrUpdateClient(info);
+                    }
+                    reserveOutbound(key);
+                    codec.encodeAck(codec.lastSessionId(), codec.lastSeq(), outbound);
+                } else if (type == SystemInfoCodec.SUMMARY) {
+                    sink.addSummary(codec.lastSummary());
+                } else if (type == SystemInfoCodec.METRICS && codec.lastMetrics() != null) {
+                    sink.addMetrics(codec.lastHostname(), codec.lastMetricsTime(), codec.lastMetrics());
+                } else if (type == SystemInfoCodec.BYE) {
+                    if (sessions.close(session.session(codec.lastSessionId()))) {
+                        ServerMetrics.HOST_SAMPLES.remove(codec.lastHostname());
+                        sink.removeClient(codec.lastHostname());
+                    }
+                }
+            }
+        }
+
+        void writeControls(SelectionKey key) {
+            try {
+                PendingControl pending;
+                while ((pending = controls.poll()) != null) {
+                    reserveOutbound(key);
+                    codec.encodeControl(pending.sessionId, pending.control, outbound);
+                }
+                flushOutbound(key);
+            } catch (IOException e) {
+                sink.log("Error with client " + session.describe() + ": " + e.getMessage());
+                close(key);
+            }
+        }
+
+        void onWritable(SelectionKey key) {
+            try {
+                flushOutbound(key);
+            } catch (IOException e) {
+                sink.log("Error with client " + session.describe() + ": " + e.getMessage());
+                close(key);
+            }
+        }
+
+        // Makes room for one reply; a client that stops reading its replies is dropped
+        private void reserveOutbound(SelectionKey key) throws IOException {
+            if (outbound.remaining() < MAX_REPLY) {
+                flushOutbound(key);
+                if (outbound.remaining() < MAX_REPLY) {
+                    throw new IOException("Client is not reading replies");
+                }
+            }
+        }
+
+        // Writes what the socket accepts now and waits for OP_WRITE for the rest
+        private void flushOutbound(SelectionKey key) throws IOException {
+            if (outbound.position() == 0) {
+                return;
+            }
+            outbound.flip();
+            channel.write(outbound);
+            boolean pending = outbound.hasRemaining();
+            outbound.compact();
+            if (pending) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            } else if ((key.interestOps() & SelectionKey.OP_WRITE) != 0) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            }
+        }
+
+        void close(SelectionKey key) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            ServerMetrics.CONNECTIONS_CLOSED.increment();
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Already gone
+            }
+            for (SessionRegistry.Session owned : sessions.close(session)) {
+                ServerMetrics.HOST_SAMPLES.remove(owned.getKey());
+                sink.removeClient(owned.getKey());
+            }
+        }
+    }
+
+    private static final class PendingControl {
+        final int sessionId;
+        final SamplingControl control;
+
+        PendingControl(int sessionId, SamplingControl control) {
+            this.sessionId = sessionId;
+            this.control = control;
+        }
+    }
+}
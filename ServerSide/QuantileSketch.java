@@ -0,0 +1,87 @@
+package ServerSide;
+
+import java.util.Arrays;
+
+/**
+ * DDSketch-style quantile sketch for percentages (0..100) with 1% relative
+ * accuracy. Values map to logarithmically spaced buckets, so sketches with
+ * the same layout can be added together and subtracted again exactly, which
+ * is what sliding windows and "latest value per host" aggregates need.
+ * Values below {@link #MIN_VALUE} share one bucket and are reported as 0.
+ * Not thread-safe.
+ */
+public class QuantileSketch {
+    public static final double RELATIVE_ACCURACY = 0.01;
+    public static final double MIN_VALUE = 0.1;
+    private static final double MAX_VALUE = 100;
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    public static final int BUCKETS = 2 + (int) Math.ceil(Math.log(MAX_VALUE / MIN_VALUE) / LOG_GAMMA);
+
+    private final int[] counts = new int[BUCKETS];
+    private long total;
+
+    public static int bucketOf(double value) {
+        if (!(value >= MIN_VALUE)) {
+            return 0;
+        }
+        int bucket = 1 + (int) Math.ceil(Math.log(Math.min(value, MAX_VALUE) / MIN_VALUE) / LOG_GAMMA);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    public void add(int bucket) {
+        counts[bucket]++;
+        total++;
+    }
+
+    public void remove(int bucket) {
+        counts[bucket]--;
+        total--;
+    }
+
+    public void addAll(QuantileSketch other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+    }
+
+    public void removeAll(QuantileSketch other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] -= other.counts[i];
+        }
+        total -= other.total;
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+        total = 0;
+    }
+
+    public long count() {
+        return total;
+    }
+
+    // Value at quantile q (0..1), or NaN when empty; one pass over a fixed number of buckets
+    public double quantile(double q) {
+        if (total == 0) {
+            return Double.NaN;
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return valueOf(i);
+            }
+        }
+        return MAX_VALUE;
+    }
+
+    private static double valueOf(int bucket) {
+        if (bucket == 0) {
+            return 0;
+        }
+        return Math.min(MAX_VALUE, MIN_VALUE * 2 * Math.pow(GAMMA, bucket - 1) / (GAMMA + 1));
+    }
+}
@@ -0,0 +1,478 @@
+package ServerSide;
+
+import com.sun.net.httpserver.HttpExchange;
+import shared.IntervalSummary;
+import shared.EpochClock;
+import shared.CompressedSeries;
+import shared.Lttb;
+import shared.MetricValues;
+import shared.SamplingControl;
+import shared.SystemInfo;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JSON API on the admin HTTP server:
+ * <pre>
+ *   GET /api/hosts                      latest sample and session of every connected host
+ *   GET /api/fleet                      fleet and group percentiles
+ *   GET /api/series?host=H&amp;metric=cpu|memory[&amp;from=ms][&amp;to=ms]
+ *                  [&amp;points=N | &amp;bucketMs=W][&amp;mode=avg|lttb]
+ *   POST /api/control?host=H[&amp;intervalMs=N][&amp;paused=true][&amp;collectors=a,b] | ?host=H&amp;reset=true
+ * </pre>
+ * Series come from the history store, or from the compressed in-memory
+ * history when the store is unavailable, and are downsampled before they leave the server.
+ * The default {@code avg} mode aggregates fixed-width buckets (width
+ * {@code bucketMs}, or the range divided by {@code points}) into
+ * {@code [time, avg, min, max, count]} rows while the history is being
+ * scanned, so rows are streamed as they complete. {@code lttb} keeps the
+ * shape of the raw series with {@code [time, value]} rows and has to see the
+ * whole range first, up to {@code rms.api.maxRawPoints} samples.
+ *
+ * {@code /api/control} pins a host's sampling settings in the
+ * {@link SamplingPolicy} until it is reset, across reconnects. Hosts behind a
+ * relay show {@code "relayed":true} and no sampling settings, since nothing
+ * the server sends reaches them.
+ */
+public class QueryApi {
+    private static final String JSON = "application/json; charset=utf-8";
+
+    private final ServerEngine engine;
+    private final int defaultPoints = Integer.getInteger("rms.api.defaultPoints", 500);
+    private final int maxPoints = Integer.getInteger("rms.api.maxPoints", 10_000);
+    private final int maxRawPoints = Integer.getInteger("rms.api.maxRawPoints", 2_000_000);
+
+    public QueryApi(ServerEngine engine) {
+        this.engine = engine;
+    }
+
+    public void register(AdminHttpServer http) {
+        http.handle("/api/hosts", exchange -> serve(exchange, "GET", this::hosts));
+        http.handle("/api/fleet", exchange -> serve(exchange, "GET", this::fleet));
+        http.handle("/api/series", exchange -> serve(exchange, "GET", this::series));
+        http.handle("/api/control", exchange -> serve(exchange, "POST", this::control));
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange, Map<String, String> params) throws IOException;
+    }
+
+    private static final class BadRequest extends RuntimeException {
+        BadRequest(String message) {
+            super(message);
+        }
+    }
+
+    private void serve(HttpExchange exchange, String method, Handler handler) throws IOException {
+        try {
+            if (!method.equals(exchange.getRequestMethod())) {
+                AdminHttpServer.respond(exchange, 405, JSON, error("Only " + method + " is supported"));
+                return;
+            }
+            handler.handle(exchange, parseQuery(exchange.getRequestURI().getRawQuery()));
+        } catch (BadRequest e) {
+            AdminHttpServer.respond(exchange, 400, JSON, error(e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void hosts(HttpExchange exchange, Map<String, String> params) throws IOException {
+        try (Writer out = stream(exchange)) {
+            out.write('[');
+            boolean first = true;
+            for (SystemInfo info : engine.getHosts()) {
+                if (!first) out.write(',');
+                first = false;
+                out.write("{\"hostname\":");
+                quote(info.getHostname(), out);
+                out.write(",\"os\":");
+                quote(info.getOs(), out);
+                out.write(",\"status\":");
+                quote(info.getStatus(), out);
+                out.write(",\"cpuCores\":" + info.getCpuCores()
+                        + ",\"cpuUsage\":" + number(info.getCpuUsage())
+                        + ",\"usedMemory\":" + info.getUsedMemory()
+                        + ",\"totalMemory\":" + info.getTotalMemory()
+                        + ",\"memoryUsage\":" + number(info.getMemoryUsagePercentage())
+                        + ",\"timestamp\":" + info.getTimeMillis());
+                IntervalSummary summary = engine.getSummary(info.getHostname());
+                if (summary != null) {
+                    out.write(",\"relayInterval\":{\"samples\":" + summary.getCount()
+                            + ",\"cpuMin\":" + number(summary.getCpuMin())
+                            + ",\"cpuAvg\":" + number(summary.getCpuAvg())
+                            + ",\"cpuMax\":" + number(summary.getCpuMax())
+                            + ",\"usedMemoryMin\":" + summary.getUsedMemoryMin()
+                            + ",\"usedMemoryMax\":" + summary.getUsedMemoryMax() + "}");
+                }
+                SessionRegistry.Session session = engine.getSessions().byKey(info.getHostname());
+                if (session != null) {
+                    SessionRegistry.Connection connection = session.getConnection();
+                    String resolved = connection.getResolvedName();
+                    out.write(",\"session\":{\"id\":" + session.getId()
+                            + ",\"connection\":" + connection.getId()
+                            + ",\"transport\":");
+                    quote(connection.getTransport(), out);
+                    out.write(",\"address\":");
+                    quote(connection.getAddress(), out);
+                    out.write(",\"port\":" + connection.getPort() + ",\"resolvedName\":");
+                    if (resolved == null) {
+                        out.write("null");
+                    } else {
+                        quote(resolved, out);
+                    }
+                    out.write(",\"openedMillis\":" + session.getOpenedMillis()
+                            + ",\"relayed\":" + session.isRelayed() + ",\"sampling\":");
+                    if (session.isRelayed()) {
+                        out.write("null");
+                    } else {
+                        sampling(session.getControl(), out);
+                    }
+                    out.write('}');
+                }
+                LagTracker.HostLag lag = engine.getLag().get(info.getHostname());
+                if (lag != null) {
+                    long applyLag = lag.getApplyLagNanos();
+                    out.write(",\"lag\":{\"lastSeq\":" + lag.getLastSeq()
+                            + ",\"clockOffsetMs\":" + number(lag.getClockOffsetNanos() / 1e6)
+                            + ",\"receiveLagMs\":" + number(lag.getReceiveLagNanos() / 1e6)
+                            + ",\"applyLagMs\":" + (applyLag < 0 ? "null" : number(applyLag / 1e6))
+                            + ",\"ageMs\":" + number(lag.getAgeNanos(EpochClock.nanos()) / 1e6)
+                            + ",\"lost\":" + lag.getLost()
+                            + ",\"duplicates\":" + lag.getDuplicates() + "}");
+                }
+                MetricValues metrics = engine.getMetrics(info.getHostname());
+                if (metrics.size() > 0) {
+                    out.write(",\"metrics\":{");
+                    for (int i = 0; i < metrics.size(); i++) {
+                        if (i > 0) out.write(',');
+                        quote(metrics.name(i), out);
+                        out.write(':' + number(metrics.value(i)));
+                    }
+                    out.write('}');
+                }
+                out.write('}');
+            }
+            out.write(']');
+        }
+    }
+
+    private void control(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String host = params.get("host");
+        if (host == null || host.isEmpty()) {
+            throw new BadRequest("host is required");
+        }
+        SamplingPolicy sampling = engine.getSampling();
+        if (Boolean.parseBoolean(params.get("reset"))) {
+            sampling.clearOverride(host);
+        } else {
+            String collectors = params.getOrDefault("collectors", "");
+            if (collectors.getBytes(StandardCharsets.UTF_8).length > SessionRegistry.MAX_COLLECTORS_LENGTH) {
+                throw new BadRequest("collectors is longer than " + SessionRegistry.MAX_COLLECTORS_LENGTH + " bytes");
+            }
+            long interval = longParam(params, "intervalMs", 0);
+            if (interval < 0 || interval > Integer.MAX_VALUE) {
+                throw new BadRequest("intervalMs out of range");
+            }
+            sampling.override(host, new SamplingControl((int) interval, Boolean.parseBoolean(params.get("paused")),
+                    collectors));
+        }
+        SessionRegistry.Session session = engine.getSessions().byKey(host);
+        try (Writer out = stream(exchange)) {
+            out.write("{\"host\":");
+            quote(host, out);
+            out.write(",\"override\":");
+            SamplingControl override = sampling.getOverride(host);
+            if (override == null) {
+                out.write("null");
+            } else {
+                sampling(override, out);
+            }
+            // What the connected host was last told; null while it is not connected or behind a relay
+            out.write(",\"sampling\":");
+            if (session == null || session.isRelayed()) {
+                out.write("null");
+            } else {
+                sampling(session.getControl(), out);
+            }
+            out.write('}');
+        }
+    }
+
+    private static void sampling(SamplingControl control, Writer out) throws IOException {
+        out.write("{\"intervalMs\":" + control.getIntervalMillis() + ",\"paused\":" + control.isPaused()
+                + ",\"collectors\":");
+        quote(control.getCollectors(), out);
+        out.write('}');
+    }
+
+    private void fleet(HttpExchange exchange, Map<String, String> params) throws IOException {
+        try (Writer out = stream(exchange)) {
+            out.write("{\"windowSeconds\":" + engine.getFleet().getWindowSeconds() + ",\"groups\":[");
+            boolean first = true;
+            for (FleetAggregator.Summary row : engine.getFleet().summarize(System.currentTimeMillis())) {
+                if (!first) out.write(',');
+                first = false;
+                out.write("{\"name\":");
+                quote(row.getName(), out);
+                out.write(",\"hosts\":" + row.getHosts()
+                        + ",\"cpu\":{\"p50\":" + number(row.getCpuP50()) + ",\"p95\":" + number(row.getCpuP95())
+                        + ",\"p99\":" + number(row.getCpuP99()) + "}"
+                        + ",\"memory\":{\"p50\":" + number(row.getMemoryP50()) + ",\"p95\":" + number(row.getMemoryP95())
+                        + ",\"p99\":" + number(row.getMemoryP99()) + "}"
+                        + ",\"window\":{\"cpuP95\":" + number(row.getCpuWindowP95())
+                        + ",\"cpuP99\":" + number(row.getCpuWindowP99())
+                        + ",\"memoryP95\":" + number(row.getMemoryWindowP95())
+                        + ",\"memoryP99\":" + number(row.getMemoryWindowP99()) + "}}");
+            }
+            out.write("]}");
+        }
+    }
+
+    private void series(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String host = params.get("host");
+        if (host == null || host.isEmpty()) {
+            throw new BadRequest("host is required");
+        }
+        Metric metric;
+        try {
+            metric = Metric.fromKey(params.getOrDefault("metric", "cpu"));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequest(e.getMessage());
+        }
+        long to = longParam(params, "to", System.currentTimeMillis());
+        long from = longParam(params, "from", to - 3_600_000);
+        if (from > to) {
+            throw new BadRequest("from is after to");
+        }
+        int points = (int) Math.min(maxPoints, Math.max(1, longParam(params, "points", defaultPoints)));
+        String mode = params.getOrDefault("mode", "avg");
+
+        if ("lttb".equals(mode)) {
+            seriesLttb(exchange, host, metric, from, to, points);
+        } else if ("avg".equals(mode)) {
+            long bucketMillis = longParam(params, "bucketMs", 0);
+            if (bucketMillis <= 0) {
+                bucketMillis = Math.max(1, (to - from + points) / points);
+            } else if ((to - from) / bucketMillis >= maxPoints) {
+                throw new BadRequest("bucketMs too small for this range; at most " + maxPoints + " buckets");
+            }
+            seriesBuckets(exchange, host, metric, from, to, bucketMillis);
+        } else {
+            throw new BadRequest("Unknown mode: " + mode);
+        }
+    }
+
+    private void seriesBuckets(HttpExchange exchange, String host, Metric metric, long from, long to,
+                               long bucketMillis) throws IOException {
+        try (Writer out = stream(exchange)) {
+            out.write("{\"host\":");
+            quote(host, out);
+            out.write(",\"metric\":\"" + metric.getKey() + "\",\"from\":" + from + ",\"to\":" + to
+                    + ",\"bucketMs\":" + bucketMillis + ",\"columns\":[\"time\",\"avg\",\"min\",\"max\",\"count\"],\"points\":[");
+            BucketWriter buckets = new BucketWriter(out, from, bucketMillis);
+            visit(host, metric, from, to, buckets);
+            buckets.finish();
+            out.write("]}");
+        }
+    }
+
+    private void seriesLttb(HttpExchange exchange, String host, Metric metric, long from, long to,
+                            int points) throws IOException {
+        RawCollector raw = new RawCollector();
+        try {
+            visit(host, metric, from, to, raw);
+        } catch (IllegalStateException e) {
+            throw new BadRequest("More than " + maxRawPoints + " samples in range; use mode=avg");
+        }
+        long[] outTimes = new long[Math.min(points, Math.max(1, raw.count))];
+        double[] outValues = new double[outTimes.length];
+        int count = Lttb.downsample(raw.times, raw.values, 0, raw.count, points, outTimes, outValues);
+
+        try (Writer out = stream(exchange)) {
+            out.write("{\"host\":");
+            quote(host, out);
+            out.write(",\"metric\":\"" + metric.getKey() + "\",\"from\":" + from + ",\"to\":" + to
+                    + ",\"columns\":[\"time\",\"value\"],\"points\":[");
+            for (int i = 0; i < count; i++) {
+                if (i > 0) out.write(',');
+                out.write("[" + outTimes[i] + "," + number(outValues[i]) + "]");
+            }
+            out.write("]}");
+        }
+    }
+
+    private interface PointVisitor {
+        void accept(long timeMillis, double value);
+    }
+
+    // Feeds one host's metric in time order from the store, or from the in-memory history without one
+    private void visit(String host, Metric metric, long from, long to, PointVisitor visitor) {
+        HistoryStore store = engine.getStore();
+        if (store != null) {
+            store.scan(host, from, to, (time, cpu, used, total) -> visitor.accept(time,
+                    metric == Metric.CPU ? cpu : total > 0 ? used * 100.0 / total : 0));
+            return;
+        }
+        HostHistory history = engine.findHistory(host);
+        if (history == null) {
+            return;
+        }
+        CompressedSeries series = metric == Metric.CPU ? history.getCpu() : history.getMemory();
+        CompressedSeries.Cursor points = series.cursor(from, to);
+        while (points.next()) {
+            visitor.accept(points.time(), points.value());
+        }
+    }
+
+    // Writes one row per completed bucket while the scan is still running
+    private static final class BucketWriter implements PointVisitor {
+        private final Writer out;
+        private final long from;
+        private final long width;
+        private long bucket = Long.MIN_VALUE;
+        private double sum;
+        private double min;
+        private double max;
+        private int count;
+        private boolean wroteRow;
+
+        BucketWriter(Writer out, long from, long width) {
+            this.out = out;
+            this.from = from;
+            this.width = width;
+        }
+
+        @Override
+        public void accept(long timeMillis, double value) {
+            long index = Math.floorDiv(timeMillis - from, width);
+            // Samples that arrive slightly out of order stay in the open bucket
+            if (index > bucket) {
+                flush();
+                bucket = index;
+                sum = 0;
+                min = Double.POSITIVE_INFINITY;
+                max = Double.NEGATIVE_INFINITY;
+                count = 0;
+            }
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            count++;
+        }
+
+        void finish() {
+            flush();
+        }
+
+        private void flush() {
+            if (count == 0) return;
+            try {
+                if (wroteRow) out.write(',');
+                wroteRow = true;
+                out.write("[" + (from + bucket * width) + "," + number(sum / count) + "," + number(min)
+                        + "," + number(max) + "," + count + "]");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private final class RawCollector implements PointVisitor {
+        long[] times = new long[1024];
+        double[] values = new double[1024];
+        int count;
+
+        @Override
+        public void accept(long timeMillis, double value) {
+            if (count == times.length) {
+                if (count >= maxRawPoints) {
+                    throw new IllegalStateException("too many samples");
+                }
+                int grown = Math.min(maxRawPoints, count * 2);
+                times = Arrays.copyOf(times, grown);
+                values = Arrays.copyOf(values, grown);
+            }
+            times[count] = timeMillis;
+            values[count] = value;
+            count++;
+        }
+    }
+
+    // Chunked response: rows go out as they are written
+    private static Writer stream(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        exchange.sendResponseHeaders(200, 0);
+        return new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 16 * 1024);
+    }
+
+    private static long longParam(Map<String, String> params, String name, long fallback) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            return fallback;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new BadRequest(name + " must be a number");
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static String number(double value) {
+        return Double.isFinite(value) ? Double.toString(Math.round(value * 1000) / 1000.0) : "null";
+    }
+
+    private static String error(String message) {
+        StringBuilder out = new StringBuilder("{\"error\":");
+        try {
+            quote(message, out);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+        }
+        return out.append('}').toString();
+    }
+
+    private static void quote(String value, Appendable out) throws IOException {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,66 @@
+package ServerSide;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a {@link RelayNode}. Usage: {@code RelayMain listenPort parentHost parentPort}.
+ * The log goes to {@code rms.log.file} (default {@code relay-<listenPort>.log})
+ * and a status line is printed every {@code rms.statusSec} seconds. Setting
+ * {@code rms.http.port} serves {@code /metrics}.
+ */
+public class RelayMain {
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 3) {
+            System.err.println("Usage: RelayMain listenPort parentHost parentPort");
+            System.exit(2);
+        }
+        int port = Integer.parseInt(args[0]);
+        if (System.getProperty("rms.log.file") == null) {
+            System.setProperty("rms.log.file", "relay-" + port + ".log");
+        }
+
+        RelayNode relay = new RelayNode(args[1], Integer.parseInt(args[2]));
+        try {
+            relay.start(port);
+        } catch (IOException e) {
+            System.err.println("Relay error: " + e.getMessage());
+            relay.stop();
+            System.exit(1);
+        }
+        System.out.println("Relaying port " + port + " to " + args[1] + ":" + args[2]);
+
+        AdminHttpServer http = null;
+        Integer httpPort = Integer.getInteger("rms.http.port");
+        if (httpPort != null && httpPort >= 0) {
+            try {
+                http = AdminHttpServer.start(httpPort);
+                http.handle("/metrics", exchange -> AdminHttpServer.respond(exchange, 200,
+                        "text/plain; version=0.0.4; charset=utf-8", ServerMetrics.REGISTRY.toPrometheusText()));
+            } catch (IOException e) {
+                System.err.println("Admin HTTP server unavailable: " + e.getMessage());
+            }
+        }
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        AdminHttpServer startedHttp = http;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (startedHttp != null) {
+                startedHttp.stop();
+            }
+            relay.stop();
+            stopped.countDown();
+        }, "relay-shutdown"));
+
+        long statusMillis = Long.getLong("rms.statusSec", 10) * 1000;
+        while (!stopped.await(statusMillis, TimeUnit.MILLISECONDS)) {
+            System.out.println("hosts=" + relay.getHostCount()
+                    + " parent=" + (relay.isConnected() ? "up" : "down")
+                    + " forwarded=" + relay.getForwardedSamples()
+                    + " coalesced=" + relay.getCoalescedSamples()
+                    + " dropped=" + relay.getDroppedSamples()
+                    + " upstreamBytes=" + relay.getUpstreamBytes());
+        }
+    }
+}
@@ -0,0 +1,536 @@
+package ServerSide;
+
+import shared.AppLog;
+import shared.IntervalSummary;
+import shared.MetricValues;
+import shared.SystemInfo;
+import shared.SystemInfoCodec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Site-level collector: accepts the normal client protocol on its own port,
+ * keeps per-host state locally and forwards everything upstream over one
+ * connection, with one protocol session per host.
+ *
+ * Every {@code rms.relay.flushMs} (default 1000) the forwarder sends, per host,
+ * the latest sample plus a SUMMARY of the samples it stood for. With
+ * {@code rms.relay.mode=raw} it forwards every sample instead, keeping up to
+ * {@code rms.relay.maxBuffered} per host (default 600) until the parent
+ * acknowledges them; whatever was unacknowledged when the connection broke is
+ * sent again after the reconnect. Reconnects use the client's backoff settings
+ * ({@code rms.reconnect.minMs}, {@code rms.reconnect.maxMs}) and announce every
+ * known host again, marked as relayed so the parent leaves their sampling alone. Relays can be chained; summaries from a child relay are
+ * folded into this relay's own. Named metrics are forwarded as their latest
+ * snapshot.
+ */
+public class RelayNode implements IngestSink {
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+
+    private final String upstreamHost;
+    private final int upstreamPort;
+    private final boolean raw = "raw".equals(System.getProperty("rms.relay.mode", "latest"));
+    private final int maxBuffered = Integer.getInteger("rms.relay.maxBuffered", 600);
+    private final long flushMillis = Long.getLong("rms.relay.flushMs", 1000);
+    private final long minBackoffMillis = Long.getLong("rms.reconnect.minMs", 500);
+    private final long maxBackoffMillis = Long.getLong("rms.reconnect.maxMs", 30_000);
+
+    private final AppLog appLog = new AppLog();
+    private final Map<String, HostState> hosts = new ConcurrentHashMap<>();
+
+    private final LongAdder forwardedSamples = ServerMetrics.REGISTRY.counter("relay_forwarded_samples_total",
+            "Samples sent to the parent server");
+    private final LongAdder coalescedSamples = ServerMetrics.REGISTRY.counter("relay_coalesced_samples_total",
+            "Samples folded into a summary instead of being forwarded");
+    private final LongAdder droppedSamples = ServerMetrics.REGISTRY.counter("relay_dropped_samples_total",
+            "Raw samples discarded because a host's relay buffer was full");
+    private final LongAdder upstreamBytes = ServerMetrics.REGISTRY.counter("relay_upstream_bytes_total",
+            "Bytes written to the parent server");
+
+    private volatile boolean isRunning = false;
+    private volatile boolean connected = false;
+    private volatile Socket socket;
+    private IngestTransport transport;
+    private Thread forwarder;
+
+    // Forwarder thread only
+    private final ByteBuffer frame = ByteBuffer.allocate(SystemInfoCodec.METRICS_BUFFER_SIZE);
+    private final long[] times = new long[SystemInfoCodec.MAX_BATCH];
+    private final double[] cpu = new double[SystemInfoCodec.MAX_BATCH];
+    private final long[] used = new long[SystemInfoCodec.MAX_BATCH];
+    private final Queue<HostState> awaitingWelcome = new ArrayDeque<>();
+    private DataOutputStream out;
+    private Queue<Integer> welcomes;
+    // Open sessions of the current connection by id, for the upstream reader's ACKs
+    private Map<Integer, HostState> sessions;
+
+    public RelayNode(String upstreamHost, int upstreamPort) {
+        this.upstreamHost = upstreamHost;
+        this.upstreamPort = upstreamPort;
+        ServerMetrics.REGISTRY.gauge("relay_hosts", "Hosts known to this relay", hosts::size);
+        ServerMetrics.REGISTRY.gauge("relay_upstream_connected", "1 while the parent connection is up",
+                () -> connected ? 1 : 0);
+    }
+
+    public void start(int port) throws IOException {
+        transport = IngestTransport.create(this);
+        transport.start(port);
+        log("Relaying port " + port + " to " + upstreamHost + ":" + upstreamPort
+                + " (" + transport.describe() + ", " + (raw ? "raw" : "latest + summary") + " mode)");
+        isRunning = true;
+        forwarder = new Thread(this::forwardLoop, "relay-forwarder");
+        forwarder.setDaemon(true);
+        forwarder.start();
+    }
+
+    public void stop() {
+        isRunning = false;
+        if (transport != null) {
+            transport.stop();
+        }
+        if (forwarder != null) {
+            forwarder.interrupt();
+            try {
+                forwarder.join(CONNECT_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        closeSocket();
+        appLog.close();
+    }
+
+    // ---- ingest side, called from the transport's threads ----
+
+    @Override
+    public void addOrUpdateClient(SystemInfo info) {
+        while (true) {
+            HostState state = hosts.computeIfAbsent(info.getHostname(), HostState::new);
+            synchronized (state) {
+                if (!state.removed) {
+                    state.add(info, raw ? maxBuffered : 0);
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void addSummary(IntervalSummary summary) {
+        HostState state = hosts.get(summary.getHostname());
+        if (state != null) {
+            synchronized (state) {
+                state.merge(summary);
+            }
+        }
+    }
+
+    @Override
+    public void addMetrics(String hostname, long timeMillis, MetricValues metrics) {
+        HostState state = hosts.get(hostname);
+        if (state != null) {
+            synchronized (state) {
+                state.metrics = metrics;
+                state.metricsTime = timeMillis;
+            }
+        }
+    }
+
+    @Override
+    public void removeClient(String hostname) {
+        HostState state = hosts.get(hostname);
+        if (state != null) {
+            synchronized (state) {
+                state.departed = true;
+            }
+        }
+    }
+
+    @Override
+    public void log(String message) {
+        appLog.log("relay", message);
+    }
+
+    public int getHostCount() { return hosts.size(); }
+    public boolean isConnected() { return connected; }
+    public long getForwardedSamples() { return forwardedSamples.sum(); }
+    public long getCoalescedSamples() { return coalescedSamples.sum(); }
+    public long getDroppedSamples() { return droppedSamples.sum(); }
+    public long getUpstreamBytes() { return upstreamBytes.sum(); }
+
+    // ---- forwarder ----
+
+    private void forwardLoop() {
+        long backoff = minBackoffMillis;
+        while (isRunning) {
+            boolean handshakeDone = false;
+            try {
+                connect();
+                handshakeDone = true;
+                connected = true;
+                log("Connected to parent at " + upstreamHost + ":" + upstreamPort + ", announcing "
+                        + hosts.size() + " hosts");
+                while (isRunning) {
+                    long cycleStart = System.nanoTime();
+                    flushCycle();
+                    long sleep = flushMillis - (System.nanoTime() - cycleStart) / 1_000_000;
+                    if (sleep > 0) {
+                        Thread.sleep(sleep);
+                    }
+                }
+            } catch (IOException e) {
+                if (isRunning) {
+                    log((handshakeDone ? "Parent connection lost: " : "Failed to connect to parent: ")
+                            + e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+            connected = false;
+            closeSocket();
+            resetSessions();
+            if (!isRunning) break;
+
+            if (handshakeDone) {
+                backoff = minBackoffMillis;
+            }
+            long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+            backoff = Math.min(maxBackoffMillis, backoff * 2);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    private void connect() throws IOException {
+        Socket connection = new Socket();
+        socket = connection;
+        connection.connect(new InetSocketAddress(upstreamHost, upstreamPort), CONNECT_TIMEOUT_MS);
+        connection.setTcpNoDelay(true);
+        out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream(), 64 * 1024));
+        welcomes = new ConcurrentLinkedQueue<>();
+        sessions = new ConcurrentHashMap<>();
+        startUpstreamReader(connection, new DataInputStream(new BufferedInputStream(connection.getInputStream())),
+                welcomes, sessions);
+    }
+
+    // WELCOMEs come back in HELLO order; the forwarder pairs them up on its next cycle
+    private void startUpstreamReader(Socket connection, DataInputStream in, Queue<Integer> welcomes,
+                                     Map<Integer, HostState> sessions) {
+        Thread reader = new Thread(() -> {
+            SystemInfoCodec codec = new SystemInfoCodec();
+            try {
+                while (!connection.isClosed()) {
+                    byte type = codec.readFrame(in);
+                    if (type == SystemInfoCodec.WELCOME) {
+                        welcomes.add(codec.getSessionId());
+                    } else if (type == SystemInfoCodec.ACK) {
+                        HostState state = sessions.get(codec.ackSessionId());
+                        if (state != null) {
+                            synchronized (state) {
+                                state.acknowledge(codec.lastSeq());
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // The forwarder notices on its next write; closing makes sure it does
+                try {
+                    connection.close();
+                } catch (IOException ignored) {
+                    // Already closed
+                }
+            }
+        }, "relay-upstream-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void flushCycle() throws IOException {
+        Integer id;
+        while ((id = welcomes.poll()) != null) {
+            HostState state = awaitingWelcome.poll();
+            if (state == null) {
+                throw new IOException("Unexpected WELCOME from parent");
+            }
+            state.codec.setSessionId(id);
+            state.session = HostState.OPEN;
+            sessions.put(id, state);
+        }
+
+        for (HostState state : hosts.values()) {
+            if (state.session == HostState.PENDING) {
+                continue;
+            }
+            boolean departed;
+            synchronized (state) {
+                departed = state.departed && state.isEmpty();
+                if (departed) {
+                    state.removed = true;
+                    hosts.remove(state.hostname, state);
+                }
+            }
+            if (departed) {
+                if (state.session == HostState.OPEN) {
+                    sessions.remove(state.codec.getSessionId());
+                    state.codec.encodeBye(frame.clear());
+                    write();
+                }
+            } else if (state.session == HostState.NONE) {
+                SystemInfo identity;
+                synchronized (state) {
+                    identity = state.latest;
+                }
+                state.codec = new SystemInfoCodec();
+                state.codec.encodeHello(identity, true, frame.clear());
+                write();
+                state.session = HostState.PENDING;
+                awaitingWelcome.add(state);
+            } else {
+                if (raw) {
+                    forwardRaw(state);
+                } else {
+                    forwardLatest(state);
+                }
+                forwardMetrics(state);
+            }
+        }
+        out.flush();
+    }
+
+    private void forwardRaw(HostState state) throws IOException {
+        while (true) {
+            int count;
+            long firstSeq;
+            synchronized (state) {
+                firstSeq = state.sendSeq();
+                count = state.nextUnsent(times, cpu, used, SystemInfoCodec.MAX_BATCH);
+            }
+            if (count == 0) return;
+            state.codec.encodeBatch(firstSeq, count, times, cpu, used, frame.clear());
+            write();
+            forwardedSamples.add(count);
+        }
+    }
+
+    private void forwardLatest(HostState state) throws IOException {
+        SystemInfo latest;
+        IntervalSummary summary = null;
+        synchronized (state) {
+            if (state.count == 0) return;
+            latest = state.latest;
+            if (state.count > 1) {
+                summary = state.summary();
+            }
+            state.resetInterval();
+        }
+        state.codec.encodeSample(latest, state.nextSeq++, frame.clear());
+        write();
+        forwardedSamples.increment();
+        if (summary != null) {
+            state.codec.encodeSummary(summary, frame.clear());
+            write();
+            coalescedSamples.add(summary.getCount() - 1);
+        }
+    }
+
+    private void forwardMetrics(HostState state) throws IOException {
+        MetricValues metrics;
+        long time;
+        synchronized (state) {
+            metrics = state.metrics;
+            time = state.metricsTime;
+        }
+        if (metrics != null && metrics != state.sentMetrics) {
+            state.codec.encodeMetrics(time, metrics, frame.clear());
+            write();
+            state.sentMetrics = metrics;
+        }
+    }
+
+    private void write() throws IOException {
+        out.write(frame.array(), 0, frame.position());
+        upstreamBytes.add(frame.position());
+    }
+
+    // A new parent connection knows none of our sessions and has to see every unacknowledged sample
+    private void resetSessions() {
+        awaitingWelcome.clear();
+        for (HostState state : hosts.values()) {
+            state.session = HostState.NONE;
+            state.codec = null;
+            state.sentMetrics = null;
+            synchronized (state) {
+                state.sent = 0;
+            }
+        }
+    }
+
+    private void closeSocket() {
+        Socket current = socket;
+        socket = null;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                log("Error disconnecting from parent: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * What the relay knows about one host. Sample fields are guarded by the
+     * instance lock; the session fields belong to the forwarder thread.
+     * Raw samples are numbered for the parent when they arrive, so a sample
+     * sent again after a reconnect keeps its sequence number.
+     */
+    private final class HostState {
+        static final int NONE = 0;
+        static final int PENDING = 1;
+        static final int OPEN = 2;
+
+        final String hostname;
+        SystemInfo latest;
+        MetricValues metrics;
+        long metricsTime;
+        boolean departed;
+        boolean removed;
+
+        // Interval statistics since the last flush
+        int count;
+        double cpuMin;
+        double cpuSum;
+        double cpuMax;
+        long usedMin;
+        long usedMax;
+
+        // Raw mode: samples the parent has not acknowledged, oldest first; the
+        // first `sent` of them went out on the current connection
+        long[] rawTimes;
+        double[] rawCpu;
+        long[] rawUsed;
+        int head;
+        int size;
+        int sent;
+        long headSeq;
+
+        int session = NONE;
+        SystemInfoCodec codec;
+        long nextSeq;
+        MetricValues sentMetrics;
+
+        HostState(String hostname) {
+            this.hostname = hostname;
+        }
+
+        void add(SystemInfo info, int capacity) {
+            latest = info;
+            departed = false;
+            double cpuUsage = info.getCpuUsage();
+            long usedMemory = info.getUsedMemory();
+            if (count == 0) {
+                cpuMin = cpuMax = cpuUsage;
+                usedMin = usedMax = usedMemory;
+                cpuSum = 0;
+            } else {
+                cpuMin = Math.min(cpuMin, cpuUsage);
+                cpuMax = Math.max(cpuMax, cpuUsage);
+                usedMin = Math.min(usedMin, usedMemory);
+                usedMax = Math.max(usedMax, usedMemory);
+            }
+            cpuSum += cpuUsage;
+            count++;
+
+            if (capacity > 0) {
+                if (rawTimes == null) {
+                    rawTimes = new long[capacity];
+                    rawCpu = new double[capacity];
+                    rawUsed = new long[capacity];
+                }
+                if (size == capacity) {
+                    head = (head + 1) % capacity;
+                    size--;
+                    headSeq++;
+                    sent = Math.max(0, sent - 1);
+                    droppedSamples.increment();
+                }
+                int tail = (head + size) % capacity;
+                rawTimes[tail] = info.getTimeNanos();
+                rawCpu[tail] = cpuUsage;
+                rawUsed[tail] = usedMemory;
+                size++;
+            }
+        }
+
+        // Folds a child relay's summary in; its latest sample arrives separately through add()
+        void merge(IntervalSummary summary) {
+            if (summary.getCount() < 2 || count == 0) return;
+            cpuMin = Math.min(cpuMin, summary.getCpuMin());
+            cpuMax = Math.max(cpuMax, summary.getCpuMax());
+            usedMin = Math.min(usedMin, summary.getUsedMemoryMin());
+            usedMax = Math.max(usedMax, summary.getUsedMemoryMax());
+            // The child's summary already covers the sample add() counted
+            double latestCpu = latest.getCpuUsage();
+            cpuSum += summary.getCpuAvg() * summary.getCount() - latestCpu;
+            count += summary.getCount() - 1;
+        }
+
+        boolean isEmpty() {
+            return raw ? size == 0 : count == 0;
+        }
+
+        long sendSeq() {
+            return headSeq + sent;
+        }
+
+        // Copies up to max samples that have not been sent on this connection
+        int nextUnsent(long[] t, double[] c, long[] u, int max) {
+            int n = Math.min(size - sent, max);
+            for (int i = 0; i < n; i++) {
+                int index = (head + sent + i) % rawTimes.length;
+                t[i] = rawTimes[index];
+                c[i] = rawCpu[index];
+                u[i] = rawUsed[index];
+            }
+            sent += n;
+            if (sent == size) {
+                resetInterval();
+            }
+            return n;
+        }
+
+        // Releases every sample up to and including seq
+        void acknowledge(long seq) {
+            int n = (int) Math.min(seq + 1 - headSeq, size);
+            if (n <= 0) return;
+            head = n == size ? 0 : (head + n) % rawTimes.length;
+            size -= n;
+            sent = Math.max(0, sent - n);
+            headSeq += n;
+        }
+
+        IntervalSummary summary() {
+            return new IntervalSummary(hostname, count, cpuMin, cpuSum / count, cpuMax, usedMin, usedMax);
+        }
+
+        void resetInterval() {
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package ServerSide;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reverse DNS names for client addresses, resolved off the accept and I/O
+ * threads. Lookups run on {@code rms.dns.threads} daemon threads (default 2,
+ * 0 disables them) behind a queue of {@code rms.dns.queue} addresses (default
+ * 1024); when the queue is full the lookup is skipped and the address stands
+ * in for the name. Concurrent requests for one address share a lookup.
+ *
+ * Names are kept for {@code rms.dns.ttlSec} seconds (default 300), failed
+ * lookups for {@code rms.dns.negativeTtlSec} (default 60), and at most
+ * {@code rms.dns.maxEntries} addresses (default 10000) are cached; beyond that
+ * the least recently used address makes room, so a lookup never scans the cache.
+ */
+public class ReverseDnsCache {
+    private final long ttlNanos = Long.getLong("rms.dns.ttlSec", 300) * 1_000_000_000L;
+    private final long negativeTtlNanos = Long.getLong("rms.dns.negativeTtlSec", 60) * 1_000_000_000L;
+    private final int maxEntries = Integer.getInteger("rms.dns.maxEntries", 10_000);
+    // Access-ordered; guarded by itself
+    private final LruMap entries = new LruMap(maxEntries);
+    private final ThreadPoolExecutor resolvers;
+
+    public ReverseDnsCache() {
+        int threads = Integer.getInteger("rms.dns.threads", 2);
+        if (threads <= 0) {
+            resolvers = null;
+            return;
+        }
+        AtomicInteger count = new AtomicInteger();
+        resolvers = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Integer.getInteger("rms.dns.queue", 1024)), task -> {
+                    Thread thread = new Thread(task, "dns-resolver-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        resolvers.allowCoreThreadTimeOut(true);
+    }
+
+    // Completes with the host name, or the textual address when there is none
+    public CompletableFuture<String> resolve(InetAddress address) {
+        long now = System.nanoTime();
+        Entry fresh;
+        synchronized (entries) {
+            Entry entry = entries.get(address);
+            if (entry != null && (!entry.name.isDone() || now - entry.expiresNanos < 0)) {
+                ServerMetrics.DNS_CACHE_HITS.increment();
+                return entry.name;
+            }
+            if (resolvers == null) {
+                return CompletableFuture.completedFuture(address.getHostAddress());
+            }
+            // Replaces an expired entry; a new one may push out the least recently used
+            fresh = new Entry();
+            entries.put(address, fresh);
+        }
+        try {
+            resolvers.execute(() -> lookup(address, fresh));
+        } catch (RejectedExecutionException e) {
+            ServerMetrics.DNS_SKIPPED.increment();
+            synchronized (entries) {
+                entries.remove(address, fresh);
+            }
+            fresh.name.complete(address.getHostAddress());
+        }
+        return fresh.name;
+    }
+
+    // Cached name without starting a lookup, or null
+    public String cached(InetAddress address) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(address);
+        }
+        return entry == null ? null : entry.name.getNow(null);
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public void shutdown() {
+        if (resolvers != null) {
+            resolvers.shutdownNow();
+        }
+    }
+
+    private void lookup(InetAddress address, Entry entry) {
+        long start = System.nanoTime();
+        String name;
+        boolean found;
+        try {
+            // A copy without the name the address may carry, so the lookup really happens
+            String resolved = InetAddress.getByAddress(address.getAddress()).getHostName();
+            found = !resolved.equals(address.getHostAddress());
+            name = resolved;
+        } catch (UnknownHostException e) {
+            found = false;
+            name = address.getHostAddress();
+        }
+        long end = System.nanoTime();
+        ServerMetrics.DNS_LOOKUP.record(end - start);
+        entry.expiresNanos = end + (found ? ttlNanos : negativeTtlNanos);
+        entry.name.complete(name);
+    }
+
+    private static final class Entry {
+        final CompletableFuture<String> name = new CompletableFuture<>();
+        volatile long expiresNanos;
+    }
+
+    private static final class LruMap extends LinkedHashMap<InetAddress, Entry> {
+        private final int maxEntries;
+
+        LruMap(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<InetAddress, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package ServerSide;
+
+import shared.SystemInfo;
+
+/**
+ * Raised when a percentage metric stays above its own rolling percentile
+ * (for example the p95 of the host's last {@code windowSamples} samples) by
+ * more than {@code margin} points for {@code forMillis}; cleared once it is
+ * back at or below that percentile.
+ *
+ * Each host keeps a ring of the window's samples as 1% buckets plus a
+ * 101-slot histogram, so a sample costs one increment, one decrement and a
+ * scan of at most 101 counters, however long the window is.
+ */
+public class RollingPercentileRule implements AlertRule {
+    private static final int BUCKETS = 101;
+
+    private final Metric metric;
+    private final double percentile;
+    private final double margin;
+    private final int windowSamples;
+    private final int minSamples;
+    private final long forMillis;
+
+    public RollingPercentileRule(Metric metric, double percentile, double margin,
+                                 int windowSamples, int minSamples, long forMillis) {
+        this.metric = metric;
+        this.percentile = percentile;
+        this.margin = margin;
+        this.windowSamples = windowSamples;
+        this.minSamples = minSamples;
+        this.forMillis = forMillis;
+    }
+
+    @Override
+    public String getName() {
+        return String.format("%s above rolling p%.0f", metric.getLabel(), percentile * 100);
+    }
+
+    @Override
+    public State newState() {
+        return new State() {
+            private final byte[] window = new byte[windowSamples];
+            private final int[] histogram = new int[BUCKETS];
+            private int head;
+            private int size;
+            private long aboveSince = -1;
+            private boolean active;
+            private double last;
+            private int threshold;
+
+            @Override
+            public boolean onSample(long timeMillis, SystemInfo info) {
+                last = metric.valueOf(info);
+                // Compare against the percentile of the samples before this one
+                threshold = size >= minSamples ? quantileBucket() : BUCKETS;
+
+                if (last > threshold + margin) {
+                    if (aboveSince < 0) aboveSince = timeMillis;
+                } else {
+                    aboveSince = -1;
+                }
+                if (active) {
+                    active = last > threshold;
+                } else {
+                    active = aboveSince >= 0 && timeMillis - aboveSince >= forMillis;
+                }
+
+                record((int) Math.max(0, Math.min(100, Math.round(last))));
+                return active;
+            }
+
+            @Override
+            public boolean onTick(long timeMillis) {
+                return active;
+            }
+
+            @Override
+            public String describe() {
+                return String.format("%s at %.1f%%, p%.0f is %d%%", metric.getLabel(), last, percentile * 100, threshold);
+            }
+
+            private void record(int bucket) {
+                if (size == window.length) {
+                    histogram[window[head]]--;
+                } else {
+                    size++;
+                }
+                window[head] = (byte) bucket;
+                histogram[bucket]++;
+                head = (head + 1) % window.length;
+            }
+
+            private int quantileBucket() {
+                int rank = (int) Math.ceil(percentile * size);
+                int seen = 0;
+                for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                    seen += histogram[bucket];
+                    if (seen >= rank) {
+                        return bucket;
+                    }
+                }
+                return BUCKETS - 1;
+            }
+        };
+    }
+}
@@ -0,0 +1,270 @@
+package ServerSide;
+
+import shared.CompressedSeries;
+import shared.SamplingControl;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides how often each connected host samples and tells it over the
+ * control channel. Every {@code rms.control.evalMs} (default 2000):
+ * <ul>
+ *   <li>a host with an operator override (see {@link #override}) gets exactly that;</li>
+ *   <li>a host with an active alert or open in a detail view samples every
+ *       {@code rms.control.fastMs} (default 500);</li>
+ *   <li>while the server is under load, a host that is idle (CPU below
+ *       {@code rms.control.idleCpu}, default 5%) or stable (CPU and memory
+ *       within {@code rms.control.stablePercent} points, default 5, over
+ *       the last {@code rms.control.stableSec}, default 60) samples every
+ *       {@code rms.control.slowMs} (default 5000, at most half the stale alert
+ *       timeout so slowed hosts never look stale);</li>
+ *   <li>every other host keeps its own interval.</li>
+ * </ul>
+ * The server counts as under load when the ingest queue is
+ * {@code rms.control.loadQueueFraction} full (default 0.5), when samples were
+ * dropped or coalesced since the last check, or when more than
+ * {@code rms.control.maxSamplesPerSec} arrive (default 0, no limit). Slowing
+ * hosts down lowers the very rate and queue depth that triggered it, so once
+ * under load the server only counts as recovered when both are below a
+ * quarter of their limits and nothing was lost for
+ * {@code rms.control.cooldownSec} (default 60). {@code rms.control.adaptive=false}
+ * leaves only the overrides.
+ *
+ * A CONTROL frame goes out only when a host's settings change. Hosts behind a
+ * relay keep the rate the relay gives them.
+ */
+public class SamplingPolicy {
+    private final ServerEngine engine;
+    private final boolean adaptive = Boolean.parseBoolean(System.getProperty("rms.control.adaptive", "true"));
+    private final long evalMillis = Long.getLong("rms.control.evalMs", 2000);
+    private final int fastMillis = Integer.getInteger("rms.control.fastMs", 500);
+    private final int slowMillis = (int) Math.min(Long.getLong("rms.control.slowMs", 5000),
+            Long.getLong("rms.alert.staleSec", 10) * 1000 / 2);
+    private final double loadQueueFraction = Double.parseDouble(System.getProperty("rms.control.loadQueueFraction", "0.5"));
+    private final long maxSamplesPerSec = Long.getLong("rms.control.maxSamplesPerSec", 0);
+    private final long cooldownMillis = Long.getLong("rms.control.cooldownSec", 60) * 1000;
+    private final double idleCpu = Double.parseDouble(System.getProperty("rms.control.idleCpu", "5"));
+    private final double stablePercent = Double.parseDouble(System.getProperty("rms.control.stablePercent", "5"));
+    private final long stableMillis = Long.getLong("rms.control.stableSec", 60) * 1000;
+
+    private final Map<String, SamplingControl> overrides = new ConcurrentHashMap<>();
+    private final Set<String> watched = ConcurrentHashMap.newKeySet();
+    // Raised alert keys per host, from the alert thread
+    private final Map<String, Set<String>> alerting = new ConcurrentHashMap<>();
+
+    // Policy thread only
+    private long lastCheckMillis;
+    private long lastSamples;
+    private long lastLost;
+    private long lastPressureMillis;
+
+    private volatile boolean overloaded;
+    private volatile int slowed;
+    private volatile int boosted;
+    private volatile boolean isRunning = false;
+    private Thread thread;
+
+    public SamplingPolicy(ServerEngine engine) {
+        this.engine = engine;
+    }
+
+    public synchronized void start() {
+        if (isRunning) return;
+        isRunning = true;
+        ServerMetrics.REGISTRY.gauge("sampling_overloaded", "1 while the sampling policy slows down quiet hosts",
+                () -> overloaded ? 1 : 0);
+        ServerMetrics.REGISTRY.gauge("sampling_slowed_hosts", "Hosts told to sample less often than they would",
+                () -> slowed);
+        ServerMetrics.REGISTRY.gauge("sampling_boosted_hosts", "Hosts told to sample faster because of alerts or a detail view",
+                () -> boosted);
+        lastCheckMillis = System.currentTimeMillis();
+        lastSamples = ServerMetrics.SAMPLES_RECEIVED.sum();
+        lastLost = lostSamples();
+        thread = new Thread(this::run, "sampling-policy");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        isRunning = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+        ServerMetrics.REGISTRY.removeGauge("sampling_overloaded");
+        ServerMetrics.REGISTRY.removeGauge("sampling_slowed_hosts");
+        ServerMetrics.REGISTRY.removeGauge("sampling_boosted_hosts");
+    }
+
+    // Pins a host's settings until clearOverride; applied now if the host is connected
+    public void override(String hostname, SamplingControl control) {
+        overrides.put(hostname, control);
+        apply(hostname);
+    }
+
+    public void clearOverride(String hostname) {
+        if (overrides.remove(hostname) != null) {
+            apply(hostname);
+        }
+    }
+
+    public SamplingControl getOverride(String hostname) {
+        return overrides.get(hostname);
+    }
+
+    // A dashboard shows this host in detail; it samples fast until unwatch
+    public void watch(String hostname) {
+        watched.add(hostname);
+        apply(hostname);
+    }
+
+    public void unwatch(String hostname) {
+        if (watched.remove(hostname)) {
+            apply(hostname);
+        }
+    }
+
+    public void onAlerts(Iterable<AlertEvent> events) {
+        for (AlertEvent event : events) {
+            if (event.isRaised()) {
+                alerting.computeIfAbsent(event.getHostname(), host -> ConcurrentHashMap.newKeySet()).add(event.key());
+            } else {
+                alerting.computeIfPresent(event.getHostname(), (host, keys) -> {
+                    keys.remove(event.key());
+                    return keys.isEmpty() ? null : keys;
+                });
+            }
+        }
+    }
+
+    public void onHostRemoved(String hostname) {
+        alerting.remove(hostname);
+    }
+
+    public boolean isOverloaded() {
+        return overloaded;
+    }
+
+    private void run() {
+        while (isRunning) {
+            try {
+                Thread.sleep(evalMillis);
+            } catch (InterruptedException e) {
+                break;
+            }
+            try {
+                evaluate();
+            } catch (RuntimeException e) {
+                engine.log("Sampling policy error: " + e.getMessage());
+            }
+        }
+    }
+
+    private void evaluate() {
+        long now = System.currentTimeMillis();
+        boolean wasOverloaded = overloaded;
+        if (underPressure(now, overloaded ? 0.25 : 1)) {
+            lastPressureMillis = now;
+            overloaded = adaptive;
+        } else if (now - lastPressureMillis >= cooldownMillis) {
+            overloaded = false;
+        }
+        if (overloaded != wasOverloaded) {
+            engine.log(overloaded ? "Server under load: slowing down quiet hosts" : "Load is back to normal: restoring sampling rates");
+        }
+
+        int slowedNow = 0;
+        int boostedNow = 0;
+        for (SessionRegistry.Session session : engine.getSessions().getSessions()) {
+            if (!session.isActive() || session.isRelayed()) continue;
+            SamplingControl desired = desired(session.getKey());
+            if (!desired.equals(session.getControl())) {
+                session.control(desired);
+            }
+            if (overrides.containsKey(session.getKey())) continue;
+            if (desired.getIntervalMillis() == slowMillis) slowedNow++;
+            if (desired.getIntervalMillis() == fastMillis) boostedNow++;
+        }
+        slowed = slowedNow;
+        boosted = boostedNow;
+    }
+
+    // Sends the host its settings now instead of at the next evaluation
+    private void apply(String hostname) {
+        SessionRegistry.Session session = engine.getSessions().byKey(hostname);
+        if (session != null) {
+            SamplingControl desired = desired(hostname);
+            if (!desired.equals(session.getControl())) {
+                session.control(desired);
+            }
+        }
+    }
+
+    private SamplingControl desired(String hostname) {
+        SamplingControl override = overrides.get(hostname);
+        if (override != null) {
+            return override;
+        }
+        if (!adaptive) {
+            return SamplingControl.DEFAULT;
+        }
+        if (alerting.containsKey(hostname) || watched.contains(hostname)) {
+            return new SamplingControl(fastMillis, false, "");
+        }
+        if (overloaded && isQuiet(hostname)) {
+            return new SamplingControl(slowMillis, false, "");
+        }
+        return SamplingControl.DEFAULT;
+    }
+
+    // Queue and rate limits are scaled by margin; losing samples always counts
+    private boolean underPressure(long now, double margin) {
+        long samples = ServerMetrics.SAMPLES_RECEIVED.sum();
+        long lost = lostSamples();
+        double perSecond = (samples - lastSamples) * 1000.0 / Math.max(1, now - lastCheckMillis);
+        boolean losing = lost > lastLost;
+        lastSamples = samples;
+        lastLost = lost;
+        lastCheckMillis = now;
+
+        IngestStage stage = engine.getStage();
+        boolean queueFull = stage != null && stage.depth() >= margin * loadQueueFraction * stage.getCapacity();
+        return queueFull || losing || (maxSamplesPerSec > 0 && perSecond > margin * maxSamplesPerSec);
+    }
+
+    // Idle, or flat for the whole stable window
+    private boolean isQuiet(String hostname) {
+        HostHistory history = engine.findHistory(hostname);
+        if (history == null || history.getCpu().size() == 0) {
+            return false;
+        }
+        if (history.getCpu().latest() < idleCpu) {
+            return true;
+        }
+        return isFlat(history.getCpu()) && isFlat(history.getMemory());
+    }
+
+    private boolean isFlat(CompressedSeries series) {
+        long latest = series.latestTime();
+        CompressedSeries.Cursor points = series.cursor(latest - stableMillis, latest);
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        long first = Long.MAX_VALUE;
+        while (points.next()) {
+            first = Math.min(first, points.time());
+            min = Math.min(min, points.value());
+            max = Math.max(max, points.value());
+            if (max - min > stablePercent) {
+                return false;
+            }
+        }
+        // A host that only just connected has not shown it is stable yet
+        return latest - first >= stableMillis * 3 / 4;
+    }
+
+    private static long lostSamples() {
+        return ServerMetrics.INGEST_DROPPED.sum() + ServerMetrics.INGEST_COALESCED.sum();
+    }
+}
@@ -0,0 +1,328 @@
+package ServerSide;
+
+import shared.AppLog;
+import shared.EpochClock;
+import shared.HistoryBudget;
+import shared.IntervalSummary;
+import shared.MetricValues;
+import shared.SystemInfo;
+
+import javax.management.JMException;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Headless server core: owns the ingest transport and the {@link IngestStage}
+ * behind it, the per-host state and history, the on-disk store and the alert
+ * engine. Nothing here touches JavaFX; a dashboard is just another
+ * {@link Listener}.
+ *
+ * With {@code rms.capture.file} set, what the transport delivers is also
+ * recorded by an {@link IngestRecorder}; with {@code rms.replay.file} set, a
+ * {@link CaptureReplay} feeds that capture into the ingest stage as well.
+ * While ingestion runs, a {@link SamplingPolicy} adjusts how often each
+ * directly connected host samples.
+ *
+ * Listeners are called on the ingest processor and alert threads and must
+ * hand work off rather than block.
+ */
+public class ServerEngine implements IngestSink {
+    public interface Listener {
+        default void onSample(SystemInfo info) {}
+
+        default void onHostRemoved(String hostname) {}
+
+        default void onAlerts(List<AlertEvent> events) {}
+    }
+
+    private final AppLog appLog = new AppLog();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, SystemInfo> latest = new ConcurrentHashMap<>();
+    private final Map<String, IntervalSummary> summaries = new ConcurrentHashMap<>();
+    private final Map<String, MetricValues> metrics = new ConcurrentHashMap<>();
+    private final LagTracker lag = new LagTracker();
+    private final Map<String, HostHistory> histories = new ConcurrentHashMap<>();
+    private final HistoryBudget historyBudget = HistoryBudget.fromProperties();
+    private final AlertEngine alerts;
+    private final FleetAggregator fleet = new FleetAggregator();
+    private final SessionRegistry sessions = new SessionRegistry();
+    private final SamplingPolicy sampling;
+    private HistoryStore store;
+    private AdminHttpServer http;
+    private IngestTransport transport;
+    private IngestStage stage;
+    private IngestStage.Policy ingestPolicy = IngestStage.defaultPolicy();
+    private IngestRecorder recorder;
+    private CaptureReplay replay;
+    private int port;
+
+    public ServerEngine() {
+        alerts = new AlertEngine(AlertEngine.defaultRules(), this::publishAlerts, this::log);
+        sampling = new SamplingPolicy(this);
+    }
+
+    // Opens the history store, starts alerting and the admin HTTP server; ingestion starts with start(port)
+    public void open() {
+        try {
+            store = HistoryStore.open(this::log);
+        } catch (IOException e) {
+            log("History store unavailable: " + e.getMessage());
+        }
+        alerts.start();
+        exposeMetrics();
+        startHttp();
+    }
+
+    private void exposeMetrics() {
+        HistoryStore openedStore = store;
+        ServerMetrics.REGISTRY.gauge("hosts_connected", "Hosts with a live session", latest::size);
+        ServerMetrics.REGISTRY.gauge("sessions_active", "Host sessions opened by HELLO and not yet closed",
+                sessions::sessionCount);
+        ServerMetrics.REGISTRY.gauge("dns_cache_entries", "Client addresses with a cached reverse DNS name",
+                sessions.getDns()::size);
+        ServerMetrics.REGISTRY.gauge("host_max_age_seconds", "Age of the stalest host's latest sample",
+                lag::maxAgeSeconds);
+        ServerMetrics.REGISTRY.gauge("history_memory_bytes", "Compressed in-memory history, all hosts",
+                historyBudget::getUsedBytes);
+        ServerMetrics.REGISTRY.gauge("history_evicted_chunks", "History chunks dropped to stay within rms.history.memoryMB",
+                historyBudget::getEvictedChunks);
+        ServerMetrics.REGISTRY.gauge("alert_dropped_samples", "Samples the alert engine could not keep up with",
+                alerts::getDroppedSamples);
+        if (openedStore != null) {
+            ServerMetrics.REGISTRY.gauge("store_dropped_samples", "Samples the history store could not keep up with",
+                    openedStore::getDroppedSamples);
+        }
+        try {
+            ServerMetrics.REGISTRY.registerMBean("RemoteMonitoring:type=Server");
+        } catch (JMException e) {
+            log("JMX registration failed: " + e.getMessage());
+        }
+    }
+
+    // Serves /metrics and the /api query endpoints
+    private void startHttp() {
+        int httpPort = Integer.getInteger("rms.http.port", 5080);
+        if (httpPort < 0) return;
+        try {
+            http = AdminHttpServer.start(httpPort);
+            http.handle("/metrics", exchange -> AdminHttpServer.respond(exchange, 200,
+                    "text/plain; version=0.0.4; charset=utf-8", ServerMetrics.REGISTRY.toPrometheusText()));
+            new QueryApi(this).register(http);
+            log("HTTP API at http://" + http.getAddress().getHostString() + ":" + http.getAddress().getPort()
+                    + " (/metrics, /api/hosts, /api/fleet, /api/series, /api/control)");
+        } catch (IOException e) {
+            log("Admin HTTP server unavailable: " + e.getMessage());
+        }
+    }
+
+    // Overflow policy for the ingest stage of the next start(); rms.ingest.policy by default
+    public synchronized void setIngestPolicy(IngestStage.Policy policy) {
+        ingestPolicy = policy;
+    }
+
+    public synchronized void start(int port) throws IOException {
+        if (transport != null) return;
+        String replayFile = System.getProperty("rms.replay.file");
+        double replaySpeed = replayFile == null ? 0 : CaptureReplay.parseSpeed(System.getProperty("rms.replay.speed", "1"));
+        IngestStage createdStage = new IngestStage(this, ingestPolicy, IngestStage.defaultCapacity());
+        createdStage.start();
+        IngestSink sink = createdStage;
+        String captureFile = System.getProperty("rms.capture.file");
+        if (captureFile != null) {
+            try {
+                recorder = IngestRecorder.start(createdStage, Paths.get(captureFile), this::log);
+                sink = recorder;
+                log("Capturing ingest to " + captureFile);
+            } catch (IOException e) {
+                log("Capture unavailable: " + e.getMessage());
+            }
+        }
+        IngestTransport created = IngestTransport.create(sink, sessions);
+        try {
+            created.start(port);
+        } catch (IOException e) {
+            stopRecording();
+            createdStage.stop();
+            throw e;
+        }
+        stage = createdStage;
+        transport = created;
+        this.port = port;
+        log("Server started on port " + port + " (" + created.describe() + ", overflow " + createdStage.getPolicy() + ")");
+        sampling.start();
+
+        if (replayFile != null) {
+            // Its own log source, so the replayed disconnects cannot rate-limit the final report away
+            replay = CaptureReplay.start(Paths.get(replayFile), replaySpeed, createdStage,
+                    message -> appLog.log("replay", message));
+            log("Replaying " + replay.describe());
+        }
+    }
+
+    public synchronized void stop() {
+        if (transport == null) return;
+        sampling.stop();
+        if (replay != null) {
+            replay.stop();
+            replay = null;
+        }
+        transport.stop();
+        transport = null;
+        stopRecording();
+        stage.stop();
+        log("Server stopped");
+    }
+
+    private void stopRecording() {
+        if (recorder != null) {
+            recorder.stop();
+            recorder = null;
+        }
+    }
+
+    public void close() {
+        stop();
+        if (http != null) {
+            http.stop();
+        }
+        alerts.stop();
+        sessions.getDns().shutdown();
+        if (store != null) {
+            store.close();
+        }
+        appLog.close();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void addOrUpdateClient(SystemInfo info) {
+        long start = System.nanoTime();
+        if (!lag.onReceive(info)) {
+            // Resent after a reconnect and already recorded
+            return;
+        }
+        long captured = captureMillis(info);
+        latest.put(info.getHostname(), info);
+        history(info.getHostname()).record(captured, info);
+        fleet.record(captured, info);
+        if (store != null) {
+            store.append(captured, info);
+        }
+        alerts.submit(captured, info);
+        for (Listener listener : listeners) {
+            listener.onSample(info);
+        }
+        ServerMetrics.REGISTRY_UPDATE.record(System.nanoTime() - start);
+    }
+
+    // When the host took the sample, so a backlog sent after a reconnect keeps its spacing. Never later
+    // than its arrival, so a host clock running ahead cannot write into the future.
+    private static long captureMillis(SystemInfo info) {
+        long received = info.getReceivedNanos() != 0 ? info.getReceivedNanos() : EpochClock.nanos();
+        return Math.floorDiv(Math.min(info.getTimeNanos(), received), 1_000_000);
+    }
+
+    @Override
+    public void removeClient(String hostname) {
+        latest.remove(hostname);
+        summaries.remove(hostname);
+        lag.onDisconnect(hostname);
+        metrics.remove(hostname);
+        fleet.remove(hostname);
+        alerts.remove(hostname);
+        sampling.onHostRemoved(hostname);
+        for (Listener listener : listeners) {
+            listener.onHostRemoved(hostname);
+        }
+        log("Client disconnected: " + hostname);
+    }
+
+    // Hosts behind a relay: what happened between the forwarded samples
+    @Override
+    public void addSummary(IntervalSummary summary) {
+        summaries.put(summary.getHostname(), summary);
+    }
+
+    public IntervalSummary getSummary(String hostname) {
+        return summaries.get(hostname);
+    }
+
+    @Override
+    public void addMetrics(String hostname, long timeMillis, MetricValues values) {
+        metrics.put(hostname, values);
+    }
+
+    public MetricValues getMetrics(String hostname) {
+        return metrics.getOrDefault(hostname, MetricValues.EMPTY);
+    }
+
+    @Override
+    public void log(String message) {
+        appLog.log("server", message);
+    }
+
+    private void publishAlerts(List<AlertEvent> events) {
+        for (AlertEvent event : events) {
+            log(event.toString());
+        }
+        sampling.onAlerts(events);
+        for (Listener listener : listeners) {
+            listener.onAlerts(events);
+        }
+    }
+
+    // History survives disconnects so a returning host keeps its charts
+    public HostHistory history(String hostname) {
+        return histories.computeIfAbsent(hostname, host -> new HostHistory(historyBudget));
+    }
+
+    // Unlike history(), never creates state for an unknown host
+    public HostHistory findHistory(String hostname) {
+        return histories.get(hostname);
+    }
+
+    public Collection<SystemInfo> getHosts() {
+        return new ArrayList<>(latest.values());
+    }
+
+    public synchronized boolean isRunning() {
+        return transport != null;
+    }
+
+    public synchronized int getPort() {
+        return port;
+    }
+
+    public synchronized String describe() {
+        return transport == null ? "stopped" : transport.describe();
+    }
+
+    public FleetAggregator getFleet() { return fleet; }
+    public LagTracker getLag() { return lag; }
+    public HistoryBudget getHistoryBudget() { return historyBudget; }
+
+    public SessionRegistry getSessions() { return sessions; }
+    public SamplingPolicy getSampling() { return sampling; }
+
+    // Running replay, or null
+    public synchronized CaptureReplay getReplay() { return replay; }
+    public IngestStage getStage() { return stage; }
+
+    public AdminHttpServer getHttp() { return http; }
+    public AppLog getLog() { return appLog; }
+    public HistoryStore getStore() { return store; }
+    public AlertEngine getAlerts() { return alerts; }
+}
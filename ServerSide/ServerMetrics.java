@@ -0,0 +1,98 @@
+package ServerSide;
+
+import shared.LatencyHistogram;
+import shared.MetricsRegistry;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Server self-metrics, shared by every transport, the engine and the UI.
+ * Timers take nanoseconds. Exposed on {@code /metrics} of the admin HTTP
+ * server and as the {@code RemoteMonitoring:type=Server} MBean.
+ */
+public final class ServerMetrics {
+    public static final MetricsRegistry REGISTRY = new MetricsRegistry("rms");
+
+    public static final LongAdder CONNECTIONS_ACCEPTED =
+            REGISTRY.counter("connections_accepted_total", "Client connections accepted");
+    public static final LongAdder CONNECTIONS_CLOSED =
+            REGISTRY.counter("connections_closed_total", "Client connections closed");
+    public static final LatencyHistogram ACCEPT =
+            REGISTRY.timer("accept_seconds", "Time from accept() to the connection being served");
+
+    public static final LongAdder BYTES_RECEIVED =
+            REGISTRY.counter("received_bytes_total", "Bytes read from client connections");
+    public static final LongAdder FRAMES_RECEIVED =
+            REGISTRY.counter("received_frames_total", "Protocol frames decoded");
+    public static final LatencyHistogram DECODE =
+            REGISTRY.timer("decode_seconds", "Time to decode one frame");
+    public static final LongAdder SAMPLES_RECEIVED =
+            REGISTRY.counter("received_samples_total", "Samples received from all hosts");
+    public static final MetricsRegistry.CounterFamily HOST_SAMPLES =
+            REGISTRY.counterFamily("host_samples_total", "Samples received per connected host", "host");
+
+    public static final LongAdder CONTROLS_SENT =
+            REGISTRY.counter("controls_sent_total", "CONTROL frames sent to change how a host samples");
+    public static final LongAdder SESSIONS_SUPERSEDED =
+            REGISTRY.counter("sessions_superseded_total", "Sessions replaced by a new HELLO for the same host from the same address");
+    public static final LatencyHistogram DNS_LOOKUP =
+            REGISTRY.timer("dns_lookup_seconds", "Reverse DNS lookups of client addresses");
+    public static final LongAdder DNS_CACHE_HITS =
+            REGISTRY.counter("dns_cache_hits_total", "Client addresses whose name was cached or already being looked up");
+    public static final LongAdder DNS_SKIPPED =
+            REGISTRY.counter("dns_skipped_total", "Reverse DNS lookups skipped because the resolver queue was full");
+
+    public static final LatencyHistogram RECEIVE_LAG =
+            REGISTRY.timer("sample_receive_lag_seconds", "Capture to server receive beyond the fastest delivery seen per host");
+    public static final LatencyHistogram APPLY_LAG =
+            REGISTRY.timer("sample_apply_lag_seconds", "Capture to the dashboard showing the sample, corrected for clock offset");
+    public static final LongAdder SAMPLES_LOST =
+            REGISTRY.counter("samples_lost_total", "Samples missing from a host's sequence numbers");
+    public static final LongAdder SAMPLES_DUPLICATE =
+            REGISTRY.counter("samples_duplicate_total", "Samples received again with an old sequence number");
+    public static final MetricsRegistry.CounterFamily HOST_SAMPLES_LOST =
+            REGISTRY.counterFamily("host_samples_lost_total",
+                    "Samples missing from the sequence per host, kept for rms.lag.retainSec after it leaves", "host");
+
+    public static final LongAdder INGEST_DROPPED =
+            REGISTRY.counter("ingest_dropped_samples_total", "Events discarded because the ingest queue was full");
+    public static final LongAdder INGEST_COALESCED =
+            REGISTRY.counter("ingest_coalesced_samples_total", "Samples replaced by a newer one from the same host before processing");
+    public static final LatencyHistogram INGEST_BLOCKED =
+            REGISTRY.timer("ingest_blocked_seconds", "Time a connection waited for room in the ingest queue");
+    public static final LatencyHistogram INGEST_WAIT =
+            REGISTRY.timer("ingest_queue_seconds", "Time from decoding a sample to processing it");
+    public static final LongAdder CAPTURE_DROPPED =
+            REGISTRY.counter("capture_dropped_events_total", "Ingest events left out of the capture file because its writer fell behind");
+    public static final LongAdder REPLAY_EVENTS =
+            REGISTRY.counter("replay_events_total", "Events delivered from a capture file");
+
+    public static final LatencyHistogram REGISTRY_UPDATE =
+            REGISTRY.timer("registry_update_seconds", "Time to apply one sample to host state, history, store and alerts");
+    public static final LatencyHistogram STORE_COMMIT =
+            REGISTRY.timer("store_commit_seconds", "Time for the history writer to append and publish one batch");
+    public static final LatencyHistogram ALERT_PASS =
+            REGISTRY.timer("alert_pass_seconds", "Time for one alert evaluation pass");
+
+    public static final LatencyHistogram UI_APPLY =
+            REGISTRY.timer("ui_apply_seconds", "Time the FX thread spends applying one coalesced batch");
+    public static final LongAdder UI_COALESCED =
+            REGISTRY.counter("ui_coalesced_samples_total", "Samples replaced by a newer one before the UI showed them");
+    public static final AtomicLong FX_TASKS_PENDING = new AtomicLong();
+
+    static {
+        REGISTRY.gauge("connections_open", "Client connections currently open",
+                () -> CONNECTIONS_ACCEPTED.sum() - CONNECTIONS_CLOSED.sum());
+        REGISTRY.gauge("fx_tasks_pending", "Tasks posted with Platform.runLater that have not run yet",
+                FX_TASKS_PENDING::get);
+        REGISTRY.gauge("jvm_threads", "Live JVM platform threads",
+                () -> ManagementFactory.getThreadMXBean().getThreadCount());
+        REGISTRY.gauge("jvm_heap_used_bytes", "Used heap",
+                () -> ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+    }
+
+    private ServerMetrics() {
+    }
+}
@@ -1,27 +1,32 @@
-package ServerController;
+package ServerSide;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.scene.chart.LineChart;
 import javafx.scene.chart.NumberAxis;
-import javafx.scene.chart.XYChart;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.HBox;
-import javafx.scene.layout.VBox;
+import javafx.scene.layout.StackPane;
+import javafx.util.Duration;
+import shared.EpochClock;
+import shared.LogEntry;
+import shared.LogView;
+import shared.SeriesRenderer;
 import shared.SystemInfo;
 
-import java.io.*;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.io.IOException;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.function.ToDoubleFunction;
 
-public class ServerController {
+public class ServerController implements ServerEngine.Listener {
     @FXML private TableView<SystemInfo> clientsTable;
     @FXML private TableColumn<SystemInfo, String> hostnameColumn;
     @FXML private TableColumn<SystemInfo, String> osColumn;
@@ -30,27 +35,65 @@ public class ServerController {
 
     @FXML private Label serverStatusLabel;
     @FXML private Label connectedClientsLabel;
-    @FXML private TextArea logArea;
-    @FXML private VBox chartsContainer;
+    @FXML private ListView<LogEntry> logList;
+    @FXML private ListView<AlertEvent> alertsList;
+    @FXML private TableView<FleetAggregator.Summary> fleetTable;
+    @FXML private StackPane overviewPane;
+    @FXML private ComboBox<HostOverview.Order> overviewSort;
+    @FXML private Label selectedHostLabel;
+    @FXML private HBox chartsContainer;
 
-    private ServerSocket serverSocket;
-    private ExecutorService threadPool;
+    private ServerEngine engine;
+    private LogView logView;
     private ObservableList<SystemInfo> clientsData;
-    private Map<String, XYChart.Series<Number, Number>> cpuSeriesMap;
-    private Map<String, XYChart.Series<Number, Number>> memorySeriesMap;
-    private int timeCounter = 0;
-    private boolean isRunning = false;
+    private Map<String, Integer> rowIndex;
+    private UpdateCoalescer coalescer;
+    private ObservableList<AlertEvent> activeAlerts;
+    private Timeline fleetTimer;
+    private HostOverview overview;
+    private String selectedHost;
+    private SeriesRenderer cpuSeries;
+    private SeriesRenderer memorySeries;
+    private final long startMillis = System.currentTimeMillis();
     private int port = 5000;
 
     public void initialize() {
         setupTable();
         clientsData = FXCollections.observableArrayList();
         clientsTable.setItems(clientsData);
+        rowIndex = new HashMap<>();
 
-        cpuSeriesMap = new HashMap<>();
-        memorySeriesMap = new HashMap<>();
+        activeAlerts = FXCollections.observableArrayList();
+        alertsList.setItems(activeAlerts);
 
-        threadPool = Executors.newCachedThreadPool();
+        overview = new HostOverview(host -> engine == null ? null : engine.findHistory(host));
+        overview.setOnSelect(this::showCharts);
+        overviewPane.getChildren().add(overview);
+        overviewSort.getItems().setAll(HostOverview.Order.values());
+        overviewSort.setValue(HostOverview.Order.NAME);
+        overviewSort.setOnAction(e -> overview.setOrder(overviewSort.getValue()));
+
+        setupFleetTable();
+        fleetTimer = new Timeline(new KeyFrame(Duration.millis(Long.getLong("rms.fleet.refreshMs", 1000)),
+                e -> refreshFleet()));
+        fleetTimer.setCycleCount(Animation.INDEFINITE);
+        fleetTimer.play();
+
+        coalescer = new UpdateCoalescer(this::applyUpdate, this::applyRemoval, () -> {
+            connectedClientsLabel.setText("Connected: " + clientsData.size());
+            overview.paint();
+        });
+        coalescer.start();
+    }
+
+    // Subscribes the dashboard to an engine; the engine keeps running without it
+    public void attach(ServerEngine engine) {
+        this.engine = engine;
+        logView = new LogView(engine.getLog(), logList);
+        for (SystemInfo info : engine.getHosts()) {
+            coalescer.update(info);
+        }
+        engine.addListener(this);
     }
 
     private void setupTable() {
@@ -61,112 +104,177 @@ public class ServerController {
                 new javafx.beans.property.SimpleStringProperty(
                         cellData.getValue().getTimestamp().format(DateTimeFormatter.ofPattern("HH:mm:ss"))
                 ));
+
+        // How old the row was when it was drawn, and how many samples never arrived
+        TableColumn<SystemInfo, String> lagColumn = new TableColumn<>("Lag");
+        lagColumn.setCellValueFactory(cellData -> {
+            LagTracker.HostLag lag = hostLag(cellData.getValue());
+            long applyLag = lag == null ? -1 : lag.getApplyLagNanos();
+            return new javafx.beans.property.SimpleStringProperty(
+                    applyLag < 0 ? "-" : String.format("%.1f s", applyLag / 1e9));
+        });
+        TableColumn<SystemInfo, String> lostColumn = new TableColumn<>("Lost");
+        lostColumn.setCellValueFactory(cellData -> {
+            LagTracker.HostLag lag = hostLag(cellData.getValue());
+            return new javafx.beans.property.SimpleStringProperty(lag == null ? "-" : String.valueOf(lag.getLost()));
+        });
+        clientsTable.getColumns().add(lagColumn);
+        clientsTable.getColumns().add(lostColumn);
     }
 
-    @FXML
-    private void startServer() {
-        if (isRunning) return;
-
-        threadPool.execute(() -> {
-            try {
-                serverSocket = new ServerSocket(port);
-                isRunning = true;
-                Platform.runLater(() -> {
-                    serverStatusLabel.setText("Running on port " + port);
-                    serverStatusLabel.setStyle("-fx-text-fill: green;");
-                    log("Server started on port " + port);
-                });
-
-                while (isRunning) {
-                    Socket clientSocket = serverSocket.accept();
-                    threadPool.execute(new ClientHandler(clientSocket, this));
-                }
-            } catch (IOException e) {
-                Platform.runLater(() -> {
-                    log("Server error: " + e.getMessage());
-                    serverStatusLabel.setText("Stopped");
-                    serverStatusLabel.setStyle("-fx-text-fill: red;");
-                });
-            }
+    private LagTracker.HostLag hostLag(SystemInfo info) {
+        return engine == null ? null : engine.getLag().get(info.getHostname());
+    }
+
+    private void setupFleetTable() {
+        TableColumn<FleetAggregator.Summary, String> group = new TableColumn<>("Group");
+        group.setCellValueFactory(new PropertyValueFactory<>("name"));
+        group.setPrefWidth(140);
+        TableColumn<FleetAggregator.Summary, Integer> hosts = new TableColumn<>("Hosts");
+        hosts.setCellValueFactory(new PropertyValueFactory<>("hosts"));
+
+        fleetTable.getColumns().add(group);
+        fleetTable.getColumns().add(hosts);
+        fleetTable.getColumns().add(percentColumn("CPU p50", FleetAggregator.Summary::getCpuP50));
+        fleetTable.getColumns().add(percentColumn("CPU p95", FleetAggregator.Summary::getCpuP95));
+        fleetTable.getColumns().add(percentColumn("CPU p99", FleetAggregator.Summary::getCpuP99));
+        fleetTable.getColumns().add(percentColumn("Mem p50", FleetAggregator.Summary::getMemoryP50));
+        fleetTable.getColumns().add(percentColumn("Mem p95", FleetAggregator.Summary::getMemoryP95));
+        fleetTable.getColumns().add(percentColumn("Mem p99", FleetAggregator.Summary::getMemoryP99));
+        fleetTable.getColumns().add(percentColumn("CPU p95 (window)", FleetAggregator.Summary::getCpuWindowP95));
+        fleetTable.getColumns().add(percentColumn("Mem p95 (window)", FleetAggregator.Summary::getMemoryWindowP95));
+    }
+
+    private TableColumn<FleetAggregator.Summary, String> percentColumn(String title,
+                                                                      ToDoubleFunction<FleetAggregator.Summary> value) {
+        TableColumn<FleetAggregator.Summary, String> column = new TableColumn<>(title);
+        column.setCellValueFactory(cellData -> {
+            double percent = value.applyAsDouble(cellData.getValue());
+            return new javafx.beans.property.SimpleStringProperty(
+                    Double.isNaN(percent) ? "-" : String.format("%.1f%%", percent));
         });
+        return column;
+    }
+
+    // Queries are a fixed number of sketch scans, so this stays cheap at any fleet size
+    private void refreshFleet() {
+        if (engine == null) return;
+        fleetTable.getItems().setAll(engine.getFleet().summarize(System.currentTimeMillis()));
     }
 
     @FXML
-    private void stopServer() {
-        isRunning = false;
+    private void startServer() {
+        if (engine.isRunning()) return;
+
         try {
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                serverSocket.close();
-            }
-        } catch (IOException e) {
-            log("Error stopping server: " + e.getMessage());
-        }
-        Platform.runLater(() -> {
+            engine.start(port);
+            serverStatusLabel.setText("Running on port " + port);
+            serverStatusLabel.setStyle("-fx-text-fill: green;");
+        } catch (IOException | IllegalArgumentException e) {
+            engine.log("Server error: " + e.getMessage());
             serverStatusLabel.setText("Stopped");
             serverStatusLabel.setStyle("-fx-text-fill: red;");
-            log("Server stopped");
-        });
+        }
     }
 
-    public void addOrUpdateClient(SystemInfo info) {
-        Platform.runLater(() -> {
-            // Remove existing entry for this host
-            clientsData.removeIf(client -> client.getHostname().equals(info.getHostname()));
-            clientsData.add(info);
-            updateCharts(info);
-            connectedClientsLabel.setText("Connected: " + clientsData.size());
-            log("Updated info from " + info.getHostname());
-        });
+    @FXML
+    private void stopServer() {
+        engine.stop();
+        serverStatusLabel.setText("Stopped");
+        serverStatusLabel.setStyle("-fx-text-fill: red;");
     }
 
-    private void updateCharts(SystemInfo info) {
-        String hostname = info.getHostname();
+    @Override
+    public void onSample(SystemInfo info) {
+        coalescer.update(info);
+    }
 
-        if (!cpuSeriesMap.containsKey(hostname)) {
-            createChartForClient(hostname);
-        }
+    @Override
+    public void onHostRemoved(String hostname) {
+        coalescer.remove(hostname);
+    }
 
-        // Update CPU chart
-        XYChart.Series<Number, Number> cpuSeries = cpuSeriesMap.get(hostname);
-        cpuSeries.getData().add(new XYChart.Data<>(timeCounter, info.getCpuUsage()));
+    @Override
+    public void onAlerts(List<AlertEvent> events) {
+        runOnFx(() -> applyAlerts(events));
+    }
 
-        // Update Memory chart
-        XYChart.Series<Number, Number> memorySeries = memorySeriesMap.get(hostname);
-        memorySeries.getData().add(new XYChart.Data<>(timeCounter, info.getMemoryUsagePercentage()));
+    // Called by the coalescer on the FX thread with the latest sample of a host
+    private void applyUpdate(SystemInfo info) {
+        engine.getLag().onApplied(info, EpochClock.nanos());
+        Integer row = rowIndex.get(info.getHostname());
+        if (row == null) {
+            rowIndex.put(info.getHostname(), clientsData.size());
+            clientsData.add(info);
+        } else {
+            clientsData.set(row, info);
+        }
+        overview.update(info);
+        if (info.getHostname().equals(selectedHost)) {
+            cpuSeries.render();
+            memorySeries.render();
+        }
+    }
 
-        // Limit data points to last 50
-        if (cpuSeries.getData().size() > 50) {
-            cpuSeries.getData().remove(0);
-            memorySeries.getData().remove(0);
+    // Swaps the last row into the removed slot so no other row index changes
+    private void applyRemoval(String hostname) {
+        Integer row = rowIndex.remove(hostname);
+        if (row != null) {
+            int last = clientsData.size() - 1;
+            if (row != last) {
+                SystemInfo moved = clientsData.get(last);
+                clientsData.set(row, moved);
+                rowIndex.put(moved.getHostname(), row);
+            }
+            clientsData.remove(last);
         }
+        overview.remove(hostname);
+    }
 
-        timeCounter++;
+    // Called on the FX thread with every transition from one evaluation pass
+    private void applyAlerts(List<AlertEvent> events) {
+        for (AlertEvent event : events) {
+            if (event.isRaised()) {
+                activeAlerts.add(event);
+            } else {
+                activeAlerts.removeIf(active -> active.key().equals(event.key()));
+            }
+        }
     }
 
-    private void createChartForClient(String hostname) {
-        // Create CPU chart
-        LineChart<Number, Number> cpuChart = createChart("CPU Usage (%)", hostname + " - CPU Usage");
-        XYChart.Series<Number, Number> cpuSeries = new XYChart.Series<>();
-        cpuSeries.setName("CPU");
-        cpuChart.getData().add(cpuSeries);
-        cpuSeriesMap.put(hostname, cpuSeries);
+    // Detailed charts exist for the selected host only; they stay after it disconnects
+    private void showCharts(String hostname) {
+        HostHistory history = engine.findHistory(hostname);
+        if (history == null || hostname.equals(selectedHost)) return;
+        // The host on screen samples fast while it is shown
+        if (selectedHost != null) {
+            engine.getSampling().unwatch(selectedHost);
+        }
+        engine.getSampling().watch(hostname);
+        selectedHost = hostname;
+        selectedHostLabel.setText("Performance Charts - " + hostname);
 
-        // Create Memory chart
+        LineChart<Number, Number> cpuChart = createChart("CPU Usage (%)", hostname + " - CPU Usage");
+        cpuSeries = new SeriesRenderer(history.getCpu(), cpuChart, "CPU", startMillis);
         LineChart<Number, Number> memoryChart = createChart("Memory Usage (%)", hostname + " - Memory Usage");
-        XYChart.Series<Number, Number> memorySeries = new XYChart.Series<>();
-        memorySeries.setName("Memory");
-        memoryChart.getData().add(memorySeries);
-        memorySeriesMap.put(hostname, memorySeries);
+        memorySeries = new SeriesRenderer(history.getMemory(), memoryChart, "Memory", startMillis);
+        chartsContainer.getChildren().setAll(cpuChart, memoryChart);
+        cpuSeries.render();
+        memorySeries.render();
+    }
 
-        // Add charts to container
-        HBox chartBox = new HBox(10, cpuChart, memoryChart);
-        chartBox.setStyle("-fx-padding: 10;");
-        Platform.runLater(() -> chartsContainer.getChildren().add(chartBox));
+    // Platform.runLater that keeps the pending-task gauge up to date
+    private void runOnFx(Runnable task) {
+        ServerMetrics.FX_TASKS_PENDING.incrementAndGet();
+        Platform.runLater(() -> {
+            ServerMetrics.FX_TASKS_PENDING.decrementAndGet();
+            task.run();
+        });
     }
 
     private LineChart<Number, Number> createChart(String yLabel, String title) {
         NumberAxis xAxis = new NumberAxis();
-        xAxis.setLabel("Time");
+        xAxis.setLabel("Time (seconds)");
         xAxis.setAnimated(false);
 
         NumberAxis yAxis = new NumberAxis(0, 100, 10);
@@ -176,31 +284,25 @@ public class ServerController {
         LineChart<Number, Number> chart = new LineChart<>(xAxis, yAxis);
         chart.setTitle(title);
         chart.setAnimated(false);
+        chart.setCreateSymbols(false);
         chart.setPrefWidth(400);
         chart.setPrefHeight(250);
 
         return chart;
     }
 
-    public void log(String message) {
-        Platform.runLater(() -> {
-            logArea.appendText(java.time.LocalTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) +
-                    " - " + message + "\n");
-        });
-    }
-
-    public void removeClient(String hostname) {
-        Platform.runLater(() -> {
-            clientsData.removeIf(client -> client.getHostname().equals(hostname));
-            connectedClientsLabel.setText("Connected: " + clientsData.size());
-            log("Client disconnected: " + hostname);
-        });
-    }
-
-    public void shutdownServer() {
-        stopServer();
-        if (threadPool != null) {
-            threadPool.shutdown();
+    // Detaches the dashboard; the caller decides whether the engine keeps running
+    public void detach() {
+        if (engine != null) {
+            engine.removeListener(this);
+            if (selectedHost != null) {
+                engine.getSampling().unwatch(selectedHost);
+            }
+        }
+        coalescer.stop();
+        fleetTimer.stop();
+        if (logView != null) {
+            logView.stop();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,260 @@
+package ServerSide;
+
+import shared.SamplingControl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client connections and the host sessions opened on them, with ids that are
+ * unique for the life of the server.
+ *
+ * A session is keyed by the hostname its HELLO announced. If a live session
+ * from another address already holds that name, the newcomer is keyed
+ * {@code hostname@address} instead, so two machines with the same name stay
+ * apart. A HELLO from the same address (a host or relay that reconnected
+ * before its old connection timed out) takes the key over, and the old
+ * session becomes {@link State#SUPERSEDED}: when its connection finally
+ * closes it no longer removes the host. Should the newer session end first,
+ * the key goes back to the superseded one while its connection is open.
+ *
+ * Sessions also carry the sampling settings last sent to their host; the
+ * transport a connection came in on supplies the {@link ControlWriter} that
+ * delivers them. Sessions a relay forwards are never sent any, as the relay
+ * would not pass them on.
+ *
+ * Only connection setup, HELLO, BYE and disconnects come here, never
+ * individual samples. Reverse DNS goes through a {@link ReverseDnsCache} and
+ * never delays a connection.
+ */
+public class SessionRegistry {
+    public enum State { ACTIVE, SUPERSEDED, CLOSED }
+
+    // Longest collector list a CONTROL frame may carry, in UTF-8 bytes
+    public static final int MAX_COLLECTORS_LENGTH = 256;
+
+    // Sends a CONTROL frame on one connection; may be called from any thread and must not block
+    public interface ControlWriter {
+        void send(int codecSessionId, SamplingControl control);
+    }
+
+    private final AtomicLong nextConnectionId = new AtomicLong();
+    private final AtomicLong nextSessionId = new AtomicLong();
+    private final Map<Long, Connection> connections = new ConcurrentHashMap<>();
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Session> byKey = new ConcurrentHashMap<>();
+    private final ReverseDnsCache dns;
+
+    public SessionRegistry() {
+        this(new ReverseDnsCache());
+    }
+
+    public SessionRegistry(ReverseDnsCache dns) {
+        this.dns = dns;
+    }
+
+    // Called once per accepted connection, before anything is read from it
+    public Connection open(String transport, InetSocketAddress remote) {
+        Connection connection = new Connection(nextConnectionId.incrementAndGet(), transport, remote);
+        connections.put(connection.id, connection);
+        InetAddress address = remote == null ? null : remote.getAddress();
+        if (address != null) {
+            dns.resolve(address).thenAccept(name -> connection.resolvedName = name);
+        }
+        return connection;
+    }
+
+    // Called for every HELLO with the id the codec gave it, which may be one a BYE freed earlier
+    public synchronized Session register(Connection connection, int codecId, String hostname, boolean relayed) {
+        String key = hostname;
+        Session holder = byKey.get(key);
+        if (holder != null && holder.isActive() && !holder.connection.address.equals(connection.address)) {
+            key = hostname + "@" + connection.address;
+            holder = byKey.get(key);
+        }
+        if (holder != null && holder.isActive()) {
+            holder.state = State.SUPERSEDED;
+            ServerMetrics.SESSIONS_SUPERSEDED.increment();
+            // Only sessions that are still open are worth handing the key back to
+            while (holder.previous != null && holder.previous.state == State.CLOSED) {
+                holder.previous = holder.previous.previous;
+            }
+        } else {
+            holder = null;
+        }
+        Session session = new Session(nextSessionId.incrementAndGet(), codecId, key, hostname, relayed, connection,
+                holder);
+        byKey.put(key, session);
+        sessions.put(session.id, session);
+        if (codecId <= connection.sessions.size()) {
+            // The closed session that had this id is forgotten
+            connection.sessions.set(codecId - 1, session);
+        } else {
+            connection.sessions.add(session);
+        }
+        return session;
+    }
+
+    // Ends one session; true if it still held its key and the host should be removed
+    public synchronized boolean close(Session session) {
+        if (session.state == State.CLOSED) {
+            return false;
+        }
+        session.state = State.CLOSED;
+        sessions.remove(session.id);
+        if (byKey.get(session.key) != session) {
+            return false;
+        }
+        Session previous = session.previous;
+        while (previous != null && previous.state == State.CLOSED) {
+            previous = previous.previous;
+        }
+        if (previous == null) {
+            byKey.remove(session.key);
+            return true;
+        }
+        previous.state = State.ACTIVE;
+        byKey.put(session.key, previous);
+        return false;
+    }
+
+    // Ends the connection and its sessions; returns the sessions whose hosts should be removed
+    public synchronized List<Session> close(Connection connection) {
+        connections.remove(connection.id);
+        List<Session> owned = new ArrayList<>();
+        for (Session session : connection.sessions) {
+            if (close(session)) {
+                owned.add(session);
+            }
+        }
+        return owned;
+    }
+
+    public Session find(long id) {
+        return sessions.get(id);
+    }
+
+    // Live session that currently holds a host key, or null
+    public Session byKey(String key) {
+        return byKey.get(key);
+    }
+
+    public Collection<Session> getSessions() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    public int connectionCount() {
+        return connections.size();
+    }
+
+    public int sessionCount() {
+        return sessions.size();
+    }
+
+    public ReverseDnsCache getDns() {
+        return dns;
+    }
+
+    public static final class Connection {
+        private final long id;
+        private final String transport;
+        private final String address;
+        private final int port;
+        private final long openedMillis = System.currentTimeMillis();
+        // Indexed by codec session id - 1, updated under the registry lock
+        private final List<Session> sessions = new ArrayList<>();
+        private volatile String resolvedName;
+        private volatile ControlWriter controlWriter;
+
+        Connection(long id, String transport, InetSocketAddress remote) {
+            this.id = id;
+            this.transport = transport;
+            this.address = remote == null ? "unknown" : remote.getHostString();
+            this.port = remote == null ? 0 : remote.getPort();
+        }
+
+        // Set by the transport before the first HELLO is read
+        public void setControlWriter(ControlWriter controlWriter) {
+            this.controlWriter = controlWriter;
+        }
+
+        // Session that currently has this codec session id on the connection
+        public Session session(int codecSessionId) {
+            return sessions.get(codecSessionId - 1);
+        }
+
+        public long getId() { return id; }
+        public String getTransport() { return transport; }
+        public String getAddress() { return address; }
+        public int getPort() { return port; }
+        public long getOpenedMillis() { return openedMillis; }
+        // Reverse DNS name once the lookup finished, otherwise null
+        public String getResolvedName() { return resolvedName; }
+
+        // Name for log lines: resolved if known, else the address
+        public String describe() {
+            String name = resolvedName;
+            return name == null || name.equals(address) ? address + ":" + port : name + " (" + address + ":" + port + ")";
+        }
+    }
+
+    public static final class Session {
+        private final long id;
+        private final int codecId;
+        private final String key;
+        private final String hostname;
+        private final boolean relayed;
+        private final Connection connection;
+        private final long openedMillis = System.currentTimeMillis();
+        private volatile State state = State.ACTIVE;
+        private volatile SamplingControl control = SamplingControl.DEFAULT;
+        // The session this one superseded; guarded by the registry lock
+        private Session previous;
+
+        Session(long id, int codecId, String key, String hostname, boolean relayed, Connection connection,
+                Session previous) {
+            this.id = id;
+            this.codecId = codecId;
+            this.key = key;
+            this.hostname = hostname;
+            this.relayed = relayed;
+            this.connection = connection;
+            this.previous = previous;
+        }
+
+        public long getId() { return id; }
+        // Name the server files this host under; the announced hostname unless that was taken
+        public String getKey() { return key; }
+        public String getHostname() { return hostname; }
+        public Connection getConnection() { return connection; }
+        public long getOpenedMillis() { return openedMillis; }
+        public State getState() { return state; }
+        public boolean isActive() { return state == State.ACTIVE; }
+        // Forwarded by a relay, which samples at its own pace and ignores CONTROL
+        public boolean isRelayed() { return relayed; }
+        // Sampling settings last sent to the host; DEFAULT until the server sends any
+        public SamplingControl getControl() { return control; }
+
+        // Sends new sampling settings to the host; false if the session is no longer active or relayed
+        public boolean control(SamplingControl newControl) {
+            if (newControl.getCollectors().getBytes(StandardCharsets.UTF_8).length > MAX_COLLECTORS_LENGTH) {
+                throw new IllegalArgumentException("Collector list longer than " + MAX_COLLECTORS_LENGTH + " bytes");
+            }
+            ControlWriter writer = connection.controlWriter;
+            if (writer == null || !isActive() || relayed) {
+                return false;
+            }
+            control = newControl;
+            writer.send(codecId, newControl);
+            ServerMetrics.CONTROLS_SENT.increment();
+            return true;
+        }
+    }
+}
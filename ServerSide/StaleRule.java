@@ -0,0 +1,43 @@
+package ServerSide;
+
+import shared.SystemInfo;
+
+// Raised when a connected host has sent nothing for timeoutMillis; cleared by its next sample.
+// Goes by when samples arrive, not when they were taken, so a replayed backlog is not stale.
+public class StaleRule implements AlertRule {
+    private final long timeoutMillis;
+
+    public StaleRule(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public String getName() {
+        return String.format("No sample for %ds", timeoutMillis / 1000);
+    }
+
+    @Override
+    public State newState() {
+        return new State() {
+            private long lastSeen;
+            private long silentFor;
+
+            @Override
+            public boolean onSample(long timeMillis, SystemInfo info) {
+                lastSeen = info.getReceivedNanos() != 0 ? info.getReceivedNanos() / 1_000_000 : timeMillis;
+                return false;
+            }
+
+            @Override
+            public boolean onTick(long timeMillis) {
+                silentFor = timeMillis - lastSeen;
+                return silentFor > timeoutMillis;
+            }
+
+            @Override
+            public String describe() {
+                return "silent for " + silentFor / 1000 + "s";
+            }
+        };
+    }
+}
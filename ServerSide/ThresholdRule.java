@@ -0,0 +1,62 @@
+package ServerSide;
+
+import shared.SystemInfo;
+
+/**
+ * Raised when a metric stays above {@code raiseAbove} for {@code forMillis},
+ * cleared once it drops below {@code clearBelow}. The gap between the two
+ * thresholds keeps a value hovering around the limit from flapping.
+ */
+public class ThresholdRule implements AlertRule {
+    private final Metric metric;
+    private final double raiseAbove;
+    private final double clearBelow;
+    private final long forMillis;
+
+    public ThresholdRule(Metric metric, double raiseAbove, double clearBelow, long forMillis) {
+        this.metric = metric;
+        this.raiseAbove = raiseAbove;
+        this.clearBelow = clearBelow;
+        this.forMillis = forMillis;
+    }
+
+    @Override
+    public String getName() {
+        return String.format("%s > %.0f%% for %ds", metric.getLabel(), raiseAbove, forMillis / 1000);
+    }
+
+    @Override
+    public State newState() {
+        return new State() {
+            private long aboveSince = -1;
+            private boolean active;
+            private double last;
+
+            @Override
+            public boolean onSample(long timeMillis, SystemInfo info) {
+                last = metric.valueOf(info);
+                if (last > raiseAbove) {
+                    if (aboveSince < 0) aboveSince = timeMillis;
+                } else {
+                    aboveSince = -1;
+                }
+                if (active) {
+                    active = last >= clearBelow;
+                } else {
+                    active = aboveSince >= 0 && timeMillis - aboveSince >= forMillis;
+                }
+                return active;
+            }
+
+            @Override
+            public boolean onTick(long timeMillis) {
+                return active;
+            }
+
+            @Override
+            public String describe() {
+                return String.format("%s at %.1f%%", metric.getLabel(), last);
+            }
+        };
+    }
+}
@@ -0,0 +1,99 @@
+package ServerSide;
+
+import javafx.animation.AnimationTimer;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.util.Duration;
+import shared.SystemInfo;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Keeps only the latest sample per host between UI pulses and applies the
+ * batch on the FX thread, either every frame or every {@code rms.ui.intervalMs}
+ * milliseconds when that property is set.
+ */
+public class UpdateCoalescer {
+    private final Map<String, SystemInfo> pendingUpdates = new ConcurrentHashMap<>();
+    private final Set<String> pendingRemovals = ConcurrentHashMap.newKeySet();
+    private final Consumer<SystemInfo> onUpdate;
+    private final Consumer<String> onRemove;
+    private final Runnable afterBatch;
+    private AnimationTimer frameTimer;
+    private Timeline intervalTimer;
+
+    public UpdateCoalescer(Consumer<SystemInfo> onUpdate, Consumer<String> onRemove, Runnable afterBatch) {
+        this.onUpdate = onUpdate;
+        this.onRemove = onRemove;
+        this.afterBatch = afterBatch;
+    }
+
+    // Safe to call from any thread
+    public void update(SystemInfo info) {
+        pendingRemovals.remove(info.getHostname());
+        if (pendingUpdates.put(info.getHostname(), info) != null) {
+            ServerMetrics.UI_COALESCED.increment();
+        }
+    }
+
+    // Safe to call from any thread
+    public void remove(String hostname) {
+        pendingUpdates.remove(hostname);
+        pendingRemovals.add(hostname);
+    }
+
+    public void start() {
+        ServerMetrics.REGISTRY.gauge("ui_pending_updates", "Host updates and removals waiting for the next UI pulse",
+                () -> pendingUpdates.size() + pendingRemovals.size());
+        long intervalMs = Long.getLong("rms.ui.intervalMs", 0);
+        if (intervalMs > 0) {
+            intervalTimer = new Timeline(new KeyFrame(Duration.millis(intervalMs), e -> drain()));
+            intervalTimer.setCycleCount(Animation.INDEFINITE);
+            intervalTimer.play();
+        } else {
+            frameTimer = new AnimationTimer() {
+                @Override
+                public void handle(long now) {
+                    drain();
+                }
+            };
+            frameTimer.start();
+        }
+    }
+
+    public void stop() {
+        if (frameTimer != null) frameTimer.stop();
+        if (intervalTimer != null) intervalTimer.stop();
+        ServerMetrics.REGISTRY.removeGauge("ui_pending_updates");
+    }
+
+    // FX thread only
+    private void drain() {
+        if (pendingUpdates.isEmpty() && pendingRemovals.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+
+        Iterator<String> removals = pendingRemovals.iterator();
+        while (removals.hasNext()) {
+            String hostname = removals.next();
+            removals.remove();
+            onRemove.accept(hostname);
+        }
+
+        Iterator<SystemInfo> updates = pendingUpdates.values().iterator();
+        while (updates.hasNext()) {
+            SystemInfo info = updates.next();
+            updates.remove();
+            onUpdate.accept(info);
+        }
+
+        afterBatch.run();
+        ServerMetrics.UI_APPLY.record(System.nanoTime() - start);
+    }
+}
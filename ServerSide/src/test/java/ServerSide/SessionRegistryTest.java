@@ -0,0 +1,32 @@
+package ServerSide;
+
+import org.junit.jupiter.api.Test;
+import shared.SystemInfoCodec;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionRegistryTest {
+    private final SessionRegistry registry = new SessionRegistry();
+
+    // Codec ids freed by BYE come back, so a relay connection never piles up departed sessions
+    @Test
+    void reusedCodecIdsReplaceClosedSessions() {
+        SessionRegistry.Connection relay = registry.open("test", InetSocketAddress.createUnresolved("relay", 5000));
+        SessionRegistry.Session longLived = registry.register(relay, 1, "long-lived", true);
+        for (int i = 0; i < SystemInfoCodec.MAX_SESSIONS + 10; i++) {
+            SessionRegistry.Session session = registry.register(relay, 2, "host-" + i, true);
+            assertSame(session, relay.session(2));
+            assertTrue(registry.close(session));
+        }
+        assertSame(longLived, relay.session(1));
+        assertEquals(1, registry.sessionCount());
+
+        List<SessionRegistry.Session> owned = registry.close(relay);
+        assertEquals(List.of(longLived), owned);
+    }
+}
@@ -0,0 +1,35 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs the suite and writes JMH's JSON results, including the GC profiler's
+ * allocation rate, so runs can be compared by a script.
+ *
+ * Usage: {@code java -jar benchmarks/target/benchmarks.jar [regex]} after
+ * {@code mvn package}. Settings: {@code rms.bench.out} (default
+ * {@code bench-results.json}), {@code rms.bench.forks} (default 1),
+ * {@code rms.bench.seconds} per iteration (default 5).
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException {
+        int seconds = Integer.getInteger("rms.bench.seconds", 5);
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : "benchmarks\\..*")
+                .forks(Integer.getInteger("rms.bench.forks", 1))
+                .warmupIterations(3)
+                .warmupTime(TimeValue.seconds(seconds))
+                .measurementIterations(5)
+                .measurementTime(TimeValue.seconds(seconds))
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(System.getProperty("rms.bench.out", "bench-results.json"));
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,88 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import shared.SystemInfo;
+import shared.SystemInfoCodec;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Encode and decode throughput of BATCH frames; run with -prof gc for allocation rate.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CodecBenchmark {
+    @Param({"1", "16", "128"})
+    public int batchSize;
+
+    private final SystemInfoCodec sender = new SystemInfoCodec();
+    private final SystemInfoCodec receiver = new SystemInfoCodec();
+    private final ByteBuffer frame = ByteBuffer.allocate(SystemInfoCodec.LENGTH_SIZE + SystemInfoCodec.MAX_FRAME_SIZE);
+    private final ByteBuffer encoded = ByteBuffer.allocate(SystemInfoCodec.LENGTH_SIZE + SystemInfoCodec.MAX_FRAME_SIZE);
+    private long[] times;
+    private double[] cpu;
+    private long[] used;
+    private long seq;
+
+    @Setup
+    public void setup() throws ProtocolException {
+        SystemInfo identity = new SystemInfo("bench-host", "Linux", 8, 0, 16L << 30, 0, "Connected");
+        handshake(identity);
+
+        Random random = new Random(42);
+        times = new long[batchSize];
+        cpu = new double[batchSize];
+        used = new long[batchSize];
+        long time = System.currentTimeMillis() * 1_000_000;
+        for (int i = 0; i < batchSize; i++) {
+            times[i] = time + i * 1_000_000_000L;
+            cpu[i] = random.nextDouble() * 100;
+            used[i] = (4L << 30) + random.nextInt(1 << 28);
+        }
+
+        // A fixed frame for the decode benchmark, decoded once so the session's deltas line up
+        sender.encodeBatch(0, batchSize, times, cpu, used, encoded);
+        encoded.flip();
+    }
+
+    private void handshake(SystemInfo identity) throws ProtocolException {
+        frame.clear();
+        sender.encodeHello(identity, frame);
+        receiver.decode(body(frame));
+
+        frame.clear();
+        receiver.encodeWelcome(receiver.lastSessionId(), frame);
+        sender.decode(body(frame));
+    }
+
+    private static ByteBuffer body(ByteBuffer frame) {
+        frame.flip();
+        frame.position(SystemInfoCodec.LENGTH_SIZE);
+        return frame;
+    }
+
+    @Benchmark
+    public int encodeBatch() {
+        frame.clear();
+        sender.encodeBatch(seq, batchSize, times, cpu, used, frame);
+        seq += batchSize;
+        return frame.position();
+    }
+
+    @Benchmark
+    public void decodeBatch(Blackhole blackhole) throws ProtocolException {
+        encoded.position(SystemInfoCodec.LENGTH_SIZE);
+        receiver.decode(encoded);
+        blackhole.consume(receiver.samples());
+    }
+}
@@ -0,0 +1,57 @@
+package benchmarks;
+
+import ServerSide.ServerEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import shared.SystemInfo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Cost of ServerEngine.addOrUpdateClient (history, store, alerts, listeners) by number of known hosts.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EngineBenchmark {
+    @Param({"1", "100", "1000", "10000"})
+    public int hosts;
+
+    private ServerEngine engine;
+    private SystemInfo[] samples;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Path dir = Files.createTempDirectory("rms-bench-store");
+        System.setProperty("rms.store.dir", dir.toString());
+        engine = new ServerEngine();
+        engine.open();
+
+        samples = new SystemInfo[hosts];
+        for (int i = 0; i < hosts; i++) {
+            samples[i] = new SystemInfo("host-" + i, "Linux", 8, i % 100, 16L << 30, 8L << 30, "Connected");
+            engine.addOrUpdateClient(samples[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public void addOrUpdateClient() {
+        engine.addOrUpdateClient(samples[next]);
+        next = next + 1 == samples.length ? 0 : next + 1;
+    }
+}
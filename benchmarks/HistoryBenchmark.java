@@ -0,0 +1,75 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import shared.CompressedSeries;
+import shared.HistoryBudget;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compressed per-host history: appending one sample, decoding a full
+ * retention window, and downsampling it for a chart without copying it out.
+ * Samples arrive once a second with a few milliseconds of jitter; the value
+ * is a bounded random walk like a busy host's CPU.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HistoryBenchmark {
+    @Param({"3600", "86400"})
+    public int retainedPoints;
+
+    private final Random random = new Random(42);
+    private CompressedSeries series;
+    private long[] outTimes;
+    private double[] outValues;
+    private long time;
+    private double value = 50;
+
+    @Setup
+    public void setup() {
+        series = new HistoryBudget(1L << 30, Long.MAX_VALUE / 2, 1024, 5).newSeries();
+        time = System.currentTimeMillis() - retainedPoints * 1000L;
+        for (int i = 0; i < retainedPoints; i++) {
+            append();
+        }
+        outTimes = new long[400];
+        outValues = new double[400];
+        System.out.printf("%n%d points in %d bytes (%.2f bytes/point)%n", series.size(), series.memoryBytes(),
+                (double) series.memoryBytes() / series.size());
+    }
+
+    private void append() {
+        time += 1000 + random.nextInt(9) - 4;
+        value = Math.max(0, Math.min(100, value + random.nextGaussian() * 3));
+        series.add(time, value);
+    }
+
+    @Benchmark
+    public void add() {
+        append();
+    }
+
+    @Benchmark
+    public double scan() {
+        CompressedSeries.Cursor points = series.cursor(Long.MIN_VALUE, Long.MAX_VALUE);
+        double sum = 0;
+        while (points.next()) {
+            sum += points.value();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int downsample() {
+        return series.downsample(Long.MIN_VALUE, Long.MAX_VALUE, outValues.length, outTimes, outValues);
+    }
+}
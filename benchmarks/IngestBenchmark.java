@@ -0,0 +1,150 @@
+package benchmarks;
+
+import ServerSide.IngestSink;
+import ServerSide.IngestTransport;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import shared.SystemInfo;
+import shared.SystemInfoCodec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Samples per second through a real transport over loopback: every operation
+ * sends one full BATCH on each of {@code connections} sockets and waits for
+ * all the ACKs, so one connection measures the per-connection round trip and
+ * many connections measure the server's fan-in. The sink only counts, so
+ * the figure is the cost of the transport and {@code ClientHandler} alone.
+ * The score counts rounds; the {@code samples} counter is samples per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class IngestBenchmark {
+    @Param({"threads", "virtual", "nio"})
+    public String transport;
+
+    @Param({"1", "64", "1024"})
+    public int connections;
+
+    private final LongAdder received = new LongAdder();
+    private IngestTransport server;
+    private Connection[] clients;
+    private final long[] times = new long[SystemInfoCodec.MAX_BATCH];
+    private final double[] cpu = new double[SystemInfoCodec.MAX_BATCH];
+    private final long[] used = new long[SystemInfoCodec.MAX_BATCH];
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        System.setProperty("rms.transport", transport);
+        server = IngestTransport.create(new IngestSink() {
+            @Override
+            public void addOrUpdateClient(SystemInfo info) {
+                received.increment();
+            }
+
+            @Override
+            public void removeClient(String hostname) {
+            }
+
+            @Override
+            public void log(String message) {
+            }
+        });
+        int port = Integer.getInteger("rms.bench.port", 5100);
+        server.start(port);
+
+        clients = new Connection[connections];
+        for (int i = 0; i < connections; i++) {
+            clients[i] = new Connection("bench-" + i, port);
+        }
+        long time = System.currentTimeMillis() * 1_000_000;
+        for (int i = 0; i < times.length; i++) {
+            times[i] = time + i * 1_000_000L;
+            cpu[i] = i % 100;
+            used[i] = (4L << 30) + i * 4096L;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (Connection client : clients) {
+            client.close();
+        }
+        server.stop();
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long samples;
+    }
+
+    @Benchmark
+    public long sendBatches(Counters counters) throws IOException {
+        for (Connection client : clients) {
+            client.send(times, cpu, used);
+        }
+        long acked = 0;
+        for (Connection client : clients) {
+            acked += client.awaitAck();
+        }
+        counters.samples += (long) clients.length * times.length;
+        return acked;
+    }
+
+    private static final class Connection {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private final SystemInfoCodec codec = new SystemInfoCodec();
+        private long nextSeq;
+
+        Connection(String hostname, int port) throws IOException {
+            socket = new Socket("localhost", port);
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            codec.writeHello(new SystemInfo(hostname, "Linux", 8, 0, 16L << 30, 0, "Connected"), out);
+            out.flush();
+            codec.readWelcome(in);
+        }
+
+        void send(long[] times, double[] cpu, long[] used) throws IOException {
+            codec.writeBatch(nextSeq, times.length, times, cpu, used, out);
+            nextSeq += times.length;
+            out.flush();
+        }
+
+        long awaitAck() throws IOException {
+            while (codec.readFrame(in) != SystemInfoCodec.ACK) {
+                // Only ACKs are expected after the handshake
+            }
+            return codec.lastSeq();
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package benchmarks;
+
+import ServerSide.HostOverview;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import shared.SystemInfo;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FX-thread cost of the host overview at 60 pulses a second. {@code pulse}
+ * applies the samples one pulse brings when every host reports once a second
+ * and repaints their tiles; {@code resort} is the once-a-second reorder by
+ * CPU with a full repaint of the viewport. The overview is never shown, which
+ * JavaFX allows off the FX thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OverviewBenchmark {
+    @Param({"200", "2000"})
+    public int hosts;
+
+    private HostOverview overview;
+    private SystemInfo[] samples;
+    private int next;
+
+    @Setup
+    public void setup() {
+        overview = new HostOverview(hostname -> null);
+        overview.resize(1600, 900);
+        overview.layout();
+        samples = new SystemInfo[hosts];
+        for (int i = 0; i < hosts; i++) {
+            samples[i] = new SystemInfo("host-" + i, "Linux", 8, i % 100, 16L << 30, 8L << 30, "Connected");
+            overview.update(samples[i]);
+        }
+        overview.paint();
+    }
+
+    @Benchmark
+    public void pulse() {
+        int perPulse = Math.max(1, hosts / 60);
+        for (int i = 0; i < perPulse; i++) {
+            overview.update(samples[next]);
+            next = next + 1 == samples.length ? 0 : next + 1;
+        }
+        overview.paint();
+    }
+
+    @Benchmark
+    public void resort() {
+        overview.setOrder(next++ % 2 == 0 ? HostOverview.Order.CPU : HostOverview.Order.MEMORY);
+    }
+}
@@ -0,0 +1,69 @@
+package benchmarks;
+
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.NumberAxis;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import shared.MetricRingBuffer;
+import shared.SeriesRenderer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chart update cost: one new sample followed by a redraw, over a full
+ * retention buffer. {@code downsample} isolates the LTTB pass from the
+ * series updates done by {@code render}. The chart is never shown, which
+ * JavaFX allows off the FX thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SeriesBenchmark {
+    @Param({"3600", "86400"})
+    public int retainedPoints;
+
+    @Param({"400", "1600"})
+    public int maxPoints;
+
+    private MetricRingBuffer buffer;
+    private SeriesRenderer renderer;
+    private long[] outTimes;
+    private double[] outValues;
+    private long time;
+
+    @Setup
+    public void setup() {
+        buffer = new MetricRingBuffer(retainedPoints);
+        time = System.currentTimeMillis();
+        for (int i = 0; i < retainedPoints; i++) {
+            buffer.add(time += 1000, 50 + 40 * Math.sin(i / 60.0));
+        }
+        outTimes = new long[maxPoints];
+        outValues = new double[maxPoints];
+
+        LineChart<Number, Number> chart = new LineChart<>(new NumberAxis(), new NumberAxis(0, 100, 10));
+        chart.setAnimated(false);
+        chart.setCreateSymbols(false);
+        // render() sizes the series from the x-axis width
+        chart.getXAxis().resize(maxPoints, 30);
+        renderer = new SeriesRenderer(buffer, chart, "bench", time - retainedPoints * 1000L);
+    }
+
+    @Benchmark
+    public int downsample() {
+        buffer.add(time += 1000, 50);
+        return buffer.downsample(maxPoints, outTimes, outValues);
+    }
+
+    @Benchmark
+    public void render() {
+        buffer.add(time += 1000, 50);
+        renderer.render();
+    }
+}
@@ -0,0 +1,59 @@
+package shared;
+
+import java.nio.file.Paths;
+
+/**
+ * Application log: rate limited per source, kept in a bounded {@link LogBuffer}
+ * and optionally copied to a rolling file.
+ *
+ * Settings: {@code rms.log.capacity} entries kept in memory (default 4096),
+ * {@code rms.log.ratePerSec} messages per source per second (default 20),
+ * {@code rms.log.file} to enable the file sink, with {@code rms.log.maxBytes}
+ * and {@code rms.log.files} controlling rollover.
+ */
+public class AppLog {
+    private final LogBuffer buffer;
+    private final LogRateLimiter limiter;
+    private final RollingFileSink fileSink;
+    private final LogRateLimiter.SummarySink summaries;
+
+    public AppLog() {
+        this.buffer = new LogBuffer(Integer.getInteger("rms.log.capacity", 4096));
+        this.limiter = new LogRateLimiter(Integer.getInteger("rms.log.ratePerSec", 20));
+        this.summaries = (source, count, time) ->
+                buffer.append(time, source, count + " similar messages suppressed");
+
+        String file = System.getProperty("rms.log.file");
+        if (file != null) {
+            fileSink = new RollingFileSink(buffer, Paths.get(file),
+                    Long.getLong("rms.log.maxBytes", 10L * 1024 * 1024),
+                    Integer.getInteger("rms.log.files", 5), this::flushSuppressed);
+            fileSink.start();
+        } else {
+            fileSink = null;
+        }
+    }
+
+    // Safe to call from any thread; never blocks on the UI or the disk
+    public void log(String source, String message) {
+        long now = System.currentTimeMillis();
+        if (limiter.admit(source, now, summaries)) {
+            buffer.append(now, source, message);
+        }
+    }
+
+    public void flushSuppressed() {
+        limiter.flushExpired(System.currentTimeMillis(), summaries);
+    }
+
+    public LogBuffer getBuffer() {
+        return buffer;
+    }
+
+    public void close() {
+        flushSuppressed();
+        if (fileSink != null) {
+            fileSink.close();
+        }
+    }
+}
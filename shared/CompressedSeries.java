@@ -0,0 +1,176 @@
+package shared;
+
+import java.util.ArrayDeque;
+
+/**
+ * Time series kept as a run of {@link GorillaChunk}s: the open chunk takes
+ * new points until it holds the budget's chunk size, then it is sealed and
+ * handed to the {@link HistoryBudget}, which evicts the oldest sealed chunks
+ * across all series.
+ *
+ * One writer thread and any number of readers. A {@link Cursor} takes a
+ * snapshot under the lock (the sealed chunks it needs and a copy of the open
+ * one) and decodes outside it.
+ */
+public class CompressedSeries implements TimeSeries {
+    private final HistoryBudget budget;
+    private final int chunkPoints;
+    private final double scale;
+    private final ArrayDeque<GorillaChunk> sealed = new ArrayDeque<>();
+    private GorillaChunk open;
+    private int sealedPoints;
+    private long sealedBytes;
+
+    CompressedSeries(HistoryBudget budget, int chunkPoints, int fractionBits) {
+        this.budget = budget;
+        this.chunkPoints = chunkPoints;
+        this.scale = fractionBits < 0 ? 0 : Math.scalb(1.0, fractionBits);
+    }
+
+    public void add(long timeMillis, double value) {
+        GorillaChunk full = null;
+        synchronized (this) {
+            if (open == null) {
+                open = new GorillaChunk();
+                budget.chunkAdded();
+                budget.adjust(open.capacityBytes());
+            }
+            int before = open.capacityBytes();
+            open.append(timeMillis, scale == 0 ? value : Math.rint(value * scale) / scale);
+            if (open.size() == chunkPoints) {
+                open.seal();
+                full = open;
+                open = null;
+                sealed.addLast(full);
+                sealedPoints += full.size();
+                sealedBytes += full.capacityBytes();
+            }
+            int after = full != null ? full.capacityBytes() : open.capacityBytes();
+            if (after != before) {
+                budget.adjust(after - before);
+            }
+        }
+        if (full != null) {
+            budget.sealed(this, full);
+        }
+    }
+
+    // Drops the chunk if it is still this series' oldest; called by the budget
+    synchronized boolean evict(GorillaChunk chunk) {
+        if (sealed.peekFirst() != chunk) {
+            return false;
+        }
+        sealed.pollFirst();
+        sealedPoints -= chunk.size();
+        sealedBytes -= chunk.capacityBytes();
+        budget.adjust(-chunk.capacityBytes());
+        return true;
+    }
+
+    public synchronized int size() {
+        return sealedPoints + (open == null ? 0 : open.size());
+    }
+
+    // Encoded bytes held, open chunk included
+    public synchronized long memoryBytes() {
+        return sealedBytes + (open == null ? 0 : open.capacityBytes());
+    }
+
+    public synchronized double latest() {
+        GorillaChunk newest = open != null ? open : sealed.peekLast();
+        return newest == null ? Double.NaN : newest.lastValue();
+    }
+
+    public synchronized long latestTime() {
+        GorillaChunk newest = open != null ? open : sealed.peekLast();
+        return newest == null ? Long.MIN_VALUE : newest.maxTime();
+    }
+
+    // Points with from <= time <= to, oldest chunk first
+    public synchronized Cursor cursor(long from, long to) {
+        int count = 0;
+        for (GorillaChunk chunk : sealed) {
+            if (overlaps(chunk, from, to)) count++;
+        }
+        boolean withOpen = open != null && open.size() > 0 && overlaps(open, from, to);
+        GorillaChunk[] chunks = new GorillaChunk[count + (withOpen ? 1 : 0)];
+        int i = 0;
+        for (GorillaChunk chunk : sealed) {
+            if (overlaps(chunk, from, to)) chunks[i++] = chunk;
+        }
+        if (withOpen) {
+            chunks[i] = open.snapshot();
+        }
+        return new Cursor(chunks, from, to);
+    }
+
+    @Override
+    public int downsampleRecent(long windowMillis, int maxPoints, long[] outTimes, double[] outValues) {
+        long newest = latestTime();
+        if (newest == Long.MIN_VALUE) {
+            return 0;
+        }
+        return downsample(newest - windowMillis, Long.MAX_VALUE, maxPoints, outTimes, outValues);
+    }
+
+    /**
+     * Largest-triangle-three-buckets over the points in {@code [from, to]},
+     * decoded twice (once to count them) instead of being copied out.
+     */
+    public int downsample(long from, long to, int maxPoints, long[] outTimes, double[] outValues) {
+        Cursor points = cursor(from, to);
+        int count = 0;
+        while (points.next()) {
+            count++;
+        }
+        points.rewind();
+        return Lttb.downsample(points, count, maxPoints, outTimes, outValues);
+    }
+
+    private static boolean overlaps(GorillaChunk chunk, long from, long to) {
+        return chunk.maxTime() >= from && chunk.minTime() <= to;
+    }
+
+    public static final class Cursor implements PointCursor {
+        private final GorillaChunk[] chunks;
+        private final long from;
+        private final long to;
+        private int chunk = -1;
+        private GorillaChunk.Reader reader;
+
+        private Cursor(GorillaChunk[] chunks, long from, long to) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean next() {
+            while (true) {
+                if (reader == null || !reader.next()) {
+                    if (++chunk >= chunks.length) {
+                        return false;
+                    }
+                    reader = chunks[chunk].reader();
+                    continue;
+                }
+                long time = reader.time();
+                if (time >= from && time <= to) {
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public long time() { return reader.time(); }
+
+        @Override
+        public double value() { return reader.value(); }
+
+        // Starts over from the first point of the same snapshot
+        public void rewind() {
+            chunk = -1;
+            reader = null;
+        }
+    }
+}
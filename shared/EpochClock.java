@@ -0,0 +1,33 @@
+package shared;
+
+import java.time.Instant;
+
+/**
+ * Wall-clock time in nanoseconds since the epoch without allocating: the
+ * monotonic {@link System#nanoTime()} plus an offset to the system clock,
+ * re-anchored whenever the two drift more than two milliseconds apart
+ * (for example after an NTP step).
+ */
+public final class EpochClock {
+    private static final long MAX_DRIFT_NANOS = 2_000_000;
+
+    private static volatile long offset = anchor();
+
+    private EpochClock() {
+    }
+
+    public static long nanos() {
+        long now = System.nanoTime() + offset;
+        long wall = System.currentTimeMillis() * 1_000_000;
+        if (Math.abs(now - wall) > MAX_DRIFT_NANOS) {
+            offset = wall - System.nanoTime();
+            return wall;
+        }
+        return now;
+    }
+
+    private static long anchor() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000_000 + now.getNano() - System.nanoTime();
+    }
+}
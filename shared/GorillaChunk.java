@@ -0,0 +1,204 @@
+package shared;
+
+import java.util.Arrays;
+
+/**
+ * One block of a compressed (timestamp, value) series in the Gorilla format
+ * (Pelkonen et al., 2015): the first point is stored raw, later timestamps as
+ * the delta of their delta and later values as the XOR with the previous
+ * value, of which only the meaningful bits are written, so values come back
+ * exactly. The smallest delta-of-delta class is narrowed to +-8 ms, the
+ * jitter of a host's sampling timer, since samples are recorded at their
+ * capture time. A regular series of slowly changing values takes one to two
+ * bytes per point; noisy full-precision values take more.
+ *
+ * Appended to by one writer until sealed; a sealed chunk never changes, so
+ * any number of {@link Reader}s can decode it without locking.
+ */
+final class GorillaChunk {
+    private static final int INITIAL_BYTES = 64;
+
+    private byte[] data = new byte[INITIAL_BYTES];
+    private int bitLength;
+    private int count;
+    private long minTime = Long.MAX_VALUE;
+    private long maxTime = Long.MIN_VALUE;
+    private double lastValue = Double.NaN;
+
+    private long previousTime;
+    private long previousDelta;
+    private long previousBits;
+    private int previousLeading = -1;
+    private int previousTrailing;
+
+    GorillaChunk() {
+    }
+
+    private GorillaChunk(byte[] data, int bitLength, int count, long minTime, long maxTime, double lastValue) {
+        this.data = data;
+        this.bitLength = bitLength;
+        this.count = count;
+        this.minTime = minTime;
+        this.maxTime = maxTime;
+        this.lastValue = lastValue;
+    }
+
+    void append(long time, double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        if (count == 0) {
+            write(time, 64);
+            write(bits, 64);
+        } else {
+            long delta = time - previousTime;
+            long deltaOfDelta = delta - previousDelta;
+            if (deltaOfDelta == 0) {
+                write(0, 1);
+            } else if (deltaOfDelta >= -7 && deltaOfDelta <= 8) {
+                write(0b10, 2);
+                write(deltaOfDelta + 7, 4);
+            } else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+                write(0b110, 3);
+                write(deltaOfDelta + 63, 7);
+            } else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+                write(0b1110, 4);
+                write(deltaOfDelta + 2047, 12);
+            } else {
+                write(0b1111, 4);
+                write(deltaOfDelta, 64);
+            }
+            previousDelta = delta;
+
+            long xor = bits ^ previousBits;
+            if (xor == 0) {
+                write(0, 1);
+            } else {
+                int leading = Math.min(31, Long.numberOfLeadingZeros(xor));
+                int trailing = Long.numberOfTrailingZeros(xor);
+                if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                    write(0b10, 2);
+                    write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                } else {
+                    int meaningful = 64 - leading - trailing;
+                    write(0b11, 2);
+                    write(leading, 5);
+                    write(meaningful - 1, 6);
+                    write(xor >>> trailing, meaningful);
+                    previousLeading = leading;
+                    previousTrailing = trailing;
+                }
+            }
+        }
+        previousTime = time;
+        previousBits = bits;
+        lastValue = value;
+        minTime = Math.min(minTime, time);
+        maxTime = Math.max(maxTime, time);
+        count++;
+    }
+
+    // Writes the low n bits of value, most significant first
+    private void write(long value, int n) {
+        while (n > 0) {
+            int index = bitLength >>> 3;
+            if (index == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            int free = 8 - (bitLength & 7);
+            int take = Math.min(free, n);
+            n -= take;
+            int bits = (int) (value >>> n) & ((1 << take) - 1);
+            data[index] |= (byte) (bits << (free - take));
+            bitLength += take;
+        }
+    }
+
+    // Trims the buffer to the bytes written; no appends after this
+    void seal() {
+        data = Arrays.copyOf(data, (bitLength + 7) >>> 3);
+    }
+
+    // Sealed copy of what has been written so far, for readers of the open chunk
+    GorillaChunk snapshot() {
+        return new GorillaChunk(Arrays.copyOf(data, (bitLength + 7) >>> 3), bitLength, count, minTime, maxTime,
+                lastValue);
+    }
+
+    int size() { return count; }
+    int capacityBytes() { return data.length; }
+    long minTime() { return minTime; }
+    long maxTime() { return maxTime; }
+    double lastValue() { return lastValue; }
+
+    Reader reader() {
+        return new Reader(data, count);
+    }
+
+    static final class Reader {
+        private final byte[] data;
+        private final int count;
+        private int index;
+        private int position;
+        private long time;
+        private long delta;
+        private long bits;
+        private int leading;
+        private int trailing;
+
+        Reader(byte[] data, int count) {
+            this.data = data;
+            this.count = count;
+        }
+
+        boolean next() {
+            if (index == count) {
+                return false;
+            }
+            if (index == 0) {
+                time = read(64);
+                bits = read(64);
+            } else {
+                long deltaOfDelta;
+                if (read(1) == 0) {
+                    deltaOfDelta = 0;
+                } else if (read(1) == 0) {
+                    deltaOfDelta = read(4) - 7;
+                } else if (read(1) == 0) {
+                    deltaOfDelta = read(7) - 63;
+                } else if (read(1) == 0) {
+                    deltaOfDelta = read(12) - 2047;
+                } else {
+                    deltaOfDelta = read(64);
+                }
+                delta += deltaOfDelta;
+                time += delta;
+
+                if (read(1) == 1) {
+                    if (read(1) == 1) {
+                        leading = (int) read(5);
+                        int meaningful = (int) read(6) + 1;
+                        trailing = 64 - leading - meaningful;
+                    }
+                    bits ^= read(64 - leading - trailing) << trailing;
+                }
+            }
+            index++;
+            return true;
+        }
+
+        long time() { return time; }
+        double value() { return Double.longBitsToDouble(bits); }
+
+        private long read(int n) {
+            long value = 0;
+            while (n > 0) {
+                int used = position & 7;
+                int take = Math.min(8 - used, n);
+                int b = ((data[position >>> 3] & 0xFF) >>> (8 - used - take)) & ((1 << take) - 1);
+                value = (value << take) | b;
+                position += take;
+                n -= take;
+            }
+            return value;
+        }
+    }
+}
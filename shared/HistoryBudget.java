@@ -0,0 +1,98 @@
+package shared;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory limit shared by every {@link CompressedSeries} it creates. Sealed
+ * chunks are queued in the order they filled up; whenever one is added, the
+ * oldest ones are evicted while the series together use more than
+ * {@code rms.history.memoryMB} (default 256) or they are older than
+ * {@code rms.history.seconds} (default 24 hours).
+ *
+ * Chunks hold {@code rms.history.chunkPoints} points (default 1024). Values
+ * are stored exactly by default ({@code rms.history.fractionBits=-1}). Setting
+ * it to n >= 0 is an opt-in trade of precision for memory: values are rounded
+ * to n binary digits after the point (5 gives steps of 1/32), which lets a
+ * noisy percentage compress to a couple of bytes, and everything reading the
+ * history (the dashboard, /api/series, the sampling policy) sees the rounded
+ * values.
+ */
+public class HistoryBudget {
+    // Chunk object, its array header and its queue entry
+    private static final int CHUNK_OVERHEAD_BYTES = 96;
+
+    private final long maxBytes;
+    private final long retentionMillis;
+    private final int chunkPoints;
+    private final int fractionBits;
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong evictedChunks = new AtomicLong();
+    private final AtomicLong expiredChunks = new AtomicLong();
+    private final Queue<Entry> sealed = new ConcurrentLinkedQueue<>();
+
+    public HistoryBudget(long maxBytes, long retentionMillis, int chunkPoints, int fractionBits) {
+        if (chunkPoints < 2) {
+            throw new IllegalArgumentException("chunkPoints must be at least 2");
+        }
+        this.maxBytes = maxBytes;
+        this.retentionMillis = retentionMillis;
+        this.chunkPoints = chunkPoints;
+        this.fractionBits = fractionBits;
+    }
+
+    public static HistoryBudget fromProperties() {
+        return new HistoryBudget(Long.getLong("rms.history.memoryMB", 256) << 20,
+                Long.getLong("rms.history.seconds", 24 * 60 * 60) * 1000,
+                Integer.getInteger("rms.history.chunkPoints", 1024),
+                Integer.getInteger("rms.history.fractionBits", -1));
+    }
+
+    public CompressedSeries newSeries() {
+        return new CompressedSeries(this, chunkPoints, fractionBits);
+    }
+
+    public long getUsedBytes() { return usedBytes.get(); }
+    public long getMaxBytes() { return maxBytes; }
+    public long getRetentionMillis() { return retentionMillis; }
+    // Chunks dropped to stay within the memory limit
+    public long getEvictedChunks() { return evictedChunks.get(); }
+    // Chunks dropped for being older than the retention
+    public long getExpiredChunks() { return expiredChunks.get(); }
+
+    void adjust(long bytes) {
+        usedBytes.addAndGet(bytes);
+    }
+
+    void chunkAdded() {
+        usedBytes.addAndGet(CHUNK_OVERHEAD_BYTES);
+    }
+
+    // Called by the series' writer after sealing a chunk, without holding the series lock
+    void sealed(CompressedSeries series, GorillaChunk chunk) {
+        sealed.add(new Entry(series, chunk));
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        Entry oldest;
+        while ((oldest = sealed.peek()) != null) {
+            boolean expired = oldest.chunk.maxTime() < cutoff;
+            if (!expired && usedBytes.get() <= maxBytes) {
+                break;
+            }
+            if (sealed.remove(oldest) && oldest.series.evict(oldest.chunk)) {
+                usedBytes.addAndGet(-CHUNK_OVERHEAD_BYTES);
+                (expired ? expiredChunks : evictedChunks).incrementAndGet();
+            }
+        }
+    }
+
+    private static final class Entry {
+        final CompressedSeries series;
+        final GorillaChunk chunk;
+
+        Entry(CompressedSeries series, GorillaChunk chunk) {
+            this.series = series;
+            this.chunk = chunk;
+        }
+    }
+}
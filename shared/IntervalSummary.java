@@ -0,0 +1,31 @@
+package shared;
+
+// CPU and memory statistics of one host over one relay flush interval.
+public class IntervalSummary {
+    private final String hostname;
+    private final int count;
+    private final double cpuMin;
+    private final double cpuAvg;
+    private final double cpuMax;
+    private final long usedMemoryMin;
+    private final long usedMemoryMax;
+
+    public IntervalSummary(String hostname, int count, double cpuMin, double cpuAvg, double cpuMax,
+                           long usedMemoryMin, long usedMemoryMax) {
+        this.hostname = hostname;
+        this.count = count;
+        this.cpuMin = cpuMin;
+        this.cpuAvg = cpuAvg;
+        this.cpuMax = cpuMax;
+        this.usedMemoryMin = usedMemoryMin;
+        this.usedMemoryMax = usedMemoryMax;
+    }
+
+    public String getHostname() { return hostname; }
+    public int getCount() { return count; }
+    public double getCpuMin() { return cpuMin; }
+    public double getCpuAvg() { return cpuAvg; }
+    public double getCpuMax() { return cpuMax; }
+    public long getUsedMemoryMin() { return usedMemoryMin; }
+    public long getUsedMemoryMax() { return usedMemoryMax; }
+}
@@ -0,0 +1,110 @@
+package shared;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Lock-free, fixed-size ring of log entries with any number of writers and
+ * independent readers.
+ *
+ * Writers claim a sequence number and fill the matching slot, seqlock style:
+ * the slot is marked busy with a CAS while its fields are written and its
+ * sequence is published last. Each reader keeps its own cursor; when it falls more than a ring's
+ * worth behind, the overwritten entries are skipped and reported as lost.
+ * Messages longer than {@link #MAX_MESSAGE_LENGTH} are truncated, so the ring
+ * never holds more than a bounded amount of text.
+ */
+public class LogBuffer {
+    public static final int MAX_MESSAGE_LENGTH = 512;
+
+    private static final long BUSY = -1;
+    private static final AtomicLongFieldUpdater<Slot> SEQUENCE =
+            AtomicLongFieldUpdater.newUpdater(Slot.class, "sequence");
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+
+    public LogBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new Slot[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    public void append(long timeMillis, String source, String message) {
+        if (message.length() > MAX_MESSAGE_LENGTH) {
+            message = message.substring(0, MAX_MESSAGE_LENGTH - 3) + "...";
+        }
+        long seq = next.getAndIncrement();
+        Slot slot = slots[(int) (seq & mask)];
+
+        // Writers only meet on a slot when one has lapped the ring
+        long current;
+        do {
+            current = slot.sequence;
+            if (current > seq) {
+                return;
+            }
+            if (current == BUSY) {
+                Thread.onSpinWait();
+            }
+        } while (current == BUSY || !SEQUENCE.compareAndSet(slot, current, BUSY));
+
+        slot.timeMillis = timeMillis;
+        slot.source = source;
+        slot.message = message;
+        slot.sequence = seq;
+    }
+
+    // Sequence number the next entry will get; a new reader starts here to see only new entries
+    public long nextSequence() {
+        return next.get();
+    }
+
+    /**
+     * Copies up to {@code max} entries starting at {@code cursor} into {@code out}
+     * and returns the cursor to continue from. Entries already overwritten are
+     * skipped; {@code lost[0]} is increased by their number if {@code lost} is given.
+     */
+    public long read(long cursor, int max, List<LogEntry> out, long[] lost) {
+        long end = next.get();
+        long oldest = Math.max(0, end - slots.length);
+        if (cursor < oldest) {
+            if (lost != null) lost[0] += oldest - cursor;
+            cursor = oldest;
+        }
+        int copied = 0;
+        while (cursor < end && copied < max) {
+            Slot slot = slots[(int) (cursor & mask)];
+            long before = slot.sequence;
+            long time = slot.timeMillis;
+            String source = slot.source;
+            String message = slot.message;
+            long after = slot.sequence;
+
+            if (before == BUSY || before < cursor) {
+                // Claimed but not yet published: retry from here next time
+                break;
+            }
+            if (before == cursor && after == cursor) {
+                out.add(new LogEntry(time, source, message));
+                copied++;
+            } else if (lost != null) {
+                lost[0]++;
+            }
+            cursor++;
+        }
+        return cursor;
+    }
+
+    private static final class Slot {
+        volatile long sequence = Long.MIN_VALUE;
+        long timeMillis;
+        String source;
+        String message;
+    }
+}
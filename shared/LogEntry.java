@@ -0,0 +1,30 @@
+package shared;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+// Immutable copy of one log line, taken out of the LogBuffer ring for display or writing.
+public final class LogEntry {
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final long timeMillis;
+    private final String source;
+    private final String message;
+
+    public LogEntry(long timeMillis, String source, String message) {
+        this.timeMillis = timeMillis;
+        this.source = source;
+        this.message = message;
+    }
+
+    public long getTimeMillis() { return timeMillis; }
+    public String getSource() { return source; }
+    public String getMessage() { return message; }
+
+    // Same "HH:mm:ss - message" form the log areas always used
+    public String format() {
+        return TIME_FORMAT.format(Instant.ofEpochMilli(timeMillis)) + " - " + message;
+    }
+}
@@ -0,0 +1,69 @@
+package shared;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lets through at most {@code limit} messages per source per second and counts
+ * the rest, so a noisy source produces one "N similar messages suppressed"
+ * line per second instead of flooding the log.
+ */
+public class LogRateLimiter {
+    public interface SummarySink {
+        void suppressed(String source, int count, long timeMillis);
+    }
+
+    private static final long WINDOW_MILLIS = 1000;
+
+    private final int limit;
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    public LogRateLimiter(int limit) {
+        this.limit = limit;
+    }
+
+    // True if the message may be logged; reports the previous window's suppressions first
+    public boolean admit(String source, long now, SummarySink summaries) {
+        Window window = windows.computeIfAbsent(source, key -> new Window());
+        int suppressed = 0;
+        boolean admitted;
+        synchronized (window) {
+            if (now - window.start >= WINDOW_MILLIS) {
+                suppressed = window.suppressed;
+                window.start = now;
+                window.count = 0;
+                window.suppressed = 0;
+            }
+            admitted = ++window.count <= limit;
+            if (!admitted) {
+                window.suppressed++;
+            }
+        }
+        if (suppressed > 0) {
+            summaries.suppressed(source, suppressed, now);
+        }
+        return admitted;
+    }
+
+    // Reports suppressions of windows that ended without a later message from the same source
+    public void flushExpired(long now, SummarySink summaries) {
+        for (Map.Entry<String, Window> entry : windows.entrySet()) {
+            Window window = entry.getValue();
+            int suppressed;
+            synchronized (window) {
+                if (window.suppressed == 0 || now - window.start < WINDOW_MILLIS) {
+                    continue;
+                }
+                suppressed = window.suppressed;
+                window.suppressed = 0;
+            }
+            summaries.suppressed(entry.getKey(), suppressed, now);
+        }
+    }
+
+    private static final class Window {
+        long start = Long.MIN_VALUE / 2;
+        int count;
+        int suppressed;
+    }
+}
@@ -0,0 +1,73 @@
+package shared;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.collections.ObservableList;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.util.Duration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shows an {@link AppLog} in a ListView, which only creates cells for the
+ * visible rows. New entries are pulled in one batch per refresh and the list
+ * is capped at {@code rms.log.viewRows} rows. FX thread only.
+ */
+public class LogView {
+    private final AppLog log;
+    private final ListView<LogEntry> listView;
+    private final int maxRows = Integer.getInteger("rms.log.viewRows", 2000);
+    private final List<LogEntry> batch = new ArrayList<>();
+    private final long[] lost = new long[1];
+    private final Timeline refreshTimer;
+    private long cursor;
+
+    public LogView(AppLog log, ListView<LogEntry> listView) {
+        this.log = log;
+        this.listView = listView;
+        this.cursor = log.getBuffer().nextSequence();
+
+        listView.setCellFactory(view -> new ListCell<LogEntry>() {
+            @Override
+            protected void updateItem(LogEntry entry, boolean empty) {
+                super.updateItem(entry, empty);
+                setText(empty || entry == null ? null : entry.format());
+            }
+        });
+
+        refreshTimer = new Timeline(new KeyFrame(Duration.millis(250), e -> refresh()));
+        refreshTimer.setCycleCount(Animation.INDEFINITE);
+        refreshTimer.play();
+    }
+
+    public void clear() {
+        listView.getItems().clear();
+    }
+
+    public void stop() {
+        refreshTimer.stop();
+    }
+
+    private void refresh() {
+        log.flushSuppressed();
+        batch.clear();
+        lost[0] = 0;
+        cursor = log.getBuffer().read(cursor, maxRows, batch, lost);
+        if (batch.isEmpty() && lost[0] == 0) {
+            return;
+        }
+        if (lost[0] > 0) {
+            batch.add(0, new LogEntry(System.currentTimeMillis(), "log", lost[0] + " log entries skipped"));
+        }
+
+        ObservableList<LogEntry> items = listView.getItems();
+        items.addAll(batch);
+        if (items.size() > maxRows) {
+            items.remove(0, items.size() - maxRows);
+        }
+        listView.scrollTo(items.size() - 1);
+    }
+}
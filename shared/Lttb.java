@@ -0,0 +1,208 @@
+package shared;
+
+/**
+ * Largest-triangle-three-buckets downsampling (Steinarsson, 2013) over a
+ * circular pair of arrays. Keeps the first and last point and, for every
+ * bucket in between, the point forming the largest triangle with the
+ * previously kept point and the average of the next bucket.
+ */
+public final class Lttb {
+    private Lttb() {
+    }
+
+    /**
+     * @param xs        circular timestamps
+     * @param ys        circular values, same capacity as {@code xs}
+     * @param first     physical index of the oldest point
+     * @param count     number of logical points starting at {@code first}
+     * @param threshold maximum number of points to emit
+     * @return number of points written to {@code outX}/{@code outY}
+     */
+    public static int downsample(long[] xs, double[] ys, int first, int count, int threshold,
+                                 long[] outX, double[] outY) {
+        int capacity = xs.length;
+        if (count == 0 || threshold <= 0) {
+            return 0;
+        }
+        if (threshold >= count) {
+            for (int i = 0; i < count; i++) {
+                int index = (first + i) % capacity;
+                outX[i] = xs[index];
+                outY[i] = ys[index];
+            }
+            return count;
+        }
+        if (threshold < 3) {
+            // Too few points for buckets: keep the endpoints
+            int lastIndex = (first + count - 1) % capacity;
+            outX[0] = xs[first];
+            outY[0] = ys[first];
+            if (threshold == 1) {
+                return 1;
+            }
+            outX[1] = xs[lastIndex];
+            outY[1] = ys[lastIndex];
+            return 2;
+        }
+
+        double every = (double) (count - 2) / (threshold - 2);
+        int a = 0;
+        int out = 0;
+        outX[out] = xs[first];
+        outY[out] = ys[first];
+        out++;
+
+        for (int i = 0; i < threshold - 2; i++) {
+            // Average of the next bucket
+            int avgStart = (int) Math.floor((i + 1) * every) + 1;
+            int avgEnd = Math.min((int) Math.floor((i + 2) * every) + 1, count);
+            double avgX = 0;
+            double avgY = 0;
+            for (int j = avgStart; j < avgEnd; j++) {
+                int index = (first + j) % capacity;
+                avgX += xs[index];
+                avgY += ys[index];
+            }
+            int avgLength = avgEnd - avgStart;
+            avgX /= avgLength;
+            avgY /= avgLength;
+
+            // Point in the current bucket forming the largest triangle
+            int rangeStart = (int) Math.floor(i * every) + 1;
+            int rangeEnd = (int) Math.floor((i + 1) * every) + 1;
+            int aIndex = (first + a) % capacity;
+            double ax = xs[aIndex];
+            double ay = ys[aIndex];
+            double maxArea = -1;
+            int chosen = rangeStart;
+            for (int j = rangeStart; j < rangeEnd; j++) {
+                int index = (first + j) % capacity;
+                double area = Math.abs((ax - avgX) * (ys[index] - ay) - (ax - xs[index]) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = j;
+                }
+            }
+
+            int chosenIndex = (first + chosen) % capacity;
+            outX[out] = xs[chosenIndex];
+            outY[out] = ys[chosenIndex];
+            out++;
+            a = chosen;
+        }
+
+        int lastIndex = (first + count - 1) % capacity;
+        outX[out] = xs[lastIndex];
+        outY[out] = ys[lastIndex];
+        return out + 1;
+    }
+
+    /**
+     * Same selection over points read once, in order, from a cursor that
+     * yields exactly {@code count} points. Only two buckets are held at a
+     * time, so a long series never has to be copied out first.
+     */
+    public static int downsample(PointCursor points, int count, int threshold, long[] outX, double[] outY) {
+        if (count == 0 || threshold <= 0) {
+            return 0;
+        }
+        if (threshold >= count) {
+            int out = 0;
+            while (out < count && points.next()) {
+                outX[out] = points.time();
+                outY[out] = points.value();
+                out++;
+            }
+            return out;
+        }
+        points.next();
+        outX[0] = points.time();
+        outY[0] = points.value();
+        if (threshold == 1) {
+            return 1;
+        }
+        if (threshold == 2) {
+            while (points.next()) {
+                outX[1] = points.time();
+                outY[1] = points.value();
+            }
+            return 2;
+        }
+
+        double every = (double) (count - 2) / (threshold - 2);
+        int bucketCapacity = (int) Math.ceil(every) + 2;
+        long[] bucketX = new long[bucketCapacity];
+        double[] bucketY = new double[bucketCapacity];
+        long[] nextX = new long[bucketCapacity];
+        double[] nextY = new double[bucketCapacity];
+        int read = 1;
+        int bucketLength = fill(points, (int) Math.floor(every) + 1 - read, bucketX, bucketY);
+        read += bucketLength;
+        int out = 1;
+        double ax = outX[0];
+        double ay = outY[0];
+
+        for (int i = 0; i < threshold - 2; i++) {
+            // Average of the next bucket
+            int avgEnd = Math.min((int) Math.floor((i + 2) * every) + 1, count);
+            int nextLength = fill(points, avgEnd - read, nextX, nextY);
+            read += nextLength;
+            double avgX = 0;
+            double avgY = 0;
+            for (int j = 0; j < nextLength; j++) {
+                avgX += nextX[j];
+                avgY += nextY[j];
+            }
+            avgX /= nextLength;
+            avgY /= nextLength;
+
+            // Point in the current bucket forming the largest triangle
+            double maxArea = -1;
+            int chosen = 0;
+            for (int j = 0; j < bucketLength; j++) {
+                double area = Math.abs((ax - avgX) * (bucketY[j] - ay) - (ax - bucketX[j]) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = j;
+                }
+            }
+            if (bucketLength > 0) {
+                outX[out] = bucketX[chosen];
+                outY[out] = bucketY[chosen];
+                ax = outX[out];
+                ay = outY[out];
+                out++;
+            }
+
+            long[] swapX = bucketX;
+            double[] swapY = bucketY;
+            bucketX = nextX;
+            bucketY = nextY;
+            nextX = swapX;
+            nextY = swapY;
+            bucketLength = nextLength;
+        }
+
+        // The last bucket ends with the last point; pick it up even if the count was short
+        long lastX = bucketLength > 0 ? bucketX[bucketLength - 1] : outX[out - 1];
+        double lastY = bucketLength > 0 ? bucketY[bucketLength - 1] : outY[out - 1];
+        while (points.next()) {
+            lastX = points.time();
+            lastY = points.value();
+        }
+        outX[out] = lastX;
+        outY[out] = lastY;
+        return out + 1;
+    }
+
+    private static int fill(PointCursor points, int wanted, long[] xs, double[] ys) {
+        int n = 0;
+        int limit = Math.min(wanted, xs.length);
+        while (n < limit && points.next()) {
+            xs[n] = points.time();
+            ys[n] = points.value();
+            n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,27 @@
+package shared;
+
+import java.io.IOException;
+
+/**
+ * Source of named metrics beyond the core CPU and memory figures, found with
+ * {@link java.util.ServiceLoader} ({@code META-INF/services/shared.MetricCollector}).
+ *
+ * A collector is opened once and then called on the sampler thread every
+ * sampling interval. Steady-state collection should not allocate: resolve
+ * slots with {@link MetricSet#slot} the first time a metric is seen and keep them.
+ */
+public interface MetricCollector {
+    // Short name used by rms.collectors to enable collectors selectively
+    String getName();
+
+    // False on platforms the collector cannot read; unsupported collectors are never opened
+    boolean isSupported();
+
+    void open() throws IOException;
+
+    // Rates need two readings, so the first call may report nothing
+    void collect(MetricSet metrics) throws IOException;
+
+    default void close() {
+    }
+}
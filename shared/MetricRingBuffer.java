@@ -0,0 +1,98 @@
+package shared;
+
+/**
+ * Fixed-capacity time series of primitive (timestamp, value) pairs. Once full,
+ * each new sample overwrites the oldest one; nothing is boxed or shifted.
+ *
+ * One writer thread and any number of readers; readers go through
+ * {@link #downsample} or {@link #copyRange}, which copy out under the same
+ * lock as {@link #add}.
+ */
+public class MetricRingBuffer implements TimeSeries {
+    private final long[] times;
+    private final double[] values;
+    private int head = 0;   // next slot to write
+    private int size = 0;
+
+    public MetricRingBuffer(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity must be at least 2");
+        }
+        this.times = new long[capacity];
+        this.values = new double[capacity];
+    }
+
+    public synchronized void add(long timeMillis, double value) {
+        times[head] = timeMillis;
+        values[head] = value;
+        head = (head + 1) % times.length;
+        if (size < times.length) {
+            size++;
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return times.length;
+    }
+
+    public synchronized double latest() {
+        return size == 0 ? Double.NaN : values[(head - 1 + times.length) % times.length];
+    }
+
+    /**
+     * Reduces the buffered series to at most {@code maxPoints} points using
+     * largest-triangle-three-buckets and writes them, oldest first, into the
+     * output arrays. Returns the number of points written.
+     */
+    public synchronized int downsample(int maxPoints, long[] outTimes, double[] outValues) {
+        int oldest = (head - size + times.length) % times.length;
+        return Lttb.downsample(times, values, oldest, size, maxPoints, outTimes, outValues);
+    }
+
+    @Override
+    public synchronized int downsampleRecent(long windowMillis, int maxPoints, long[] outTimes, double[] outValues) {
+        if (size == 0) {
+            return 0;
+        }
+        long from = times[(head - 1 + times.length) % times.length] - windowMillis;
+        int oldest = (head - size + times.length) % times.length;
+        int skipped = 0;
+        while (skipped < size && times[(oldest + skipped) % times.length] < from) {
+            skipped++;
+        }
+        return Lttb.downsample(times, values, (oldest + skipped) % times.length, size - skipped, maxPoints,
+                outTimes, outValues);
+    }
+
+    /**
+     * Copies the buffered points with {@code from <= time <= to}, oldest first,
+     * into the output arrays, which must hold {@link #capacity()} points.
+     * Returns the number of points copied.
+     */
+    public synchronized int copyRange(long from, long to, long[] outTimes, double[] outValues) {
+        int oldest = (head - size + times.length) % times.length;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int index = (oldest + i) % times.length;
+            if (times[index] >= from && times[index] <= to) {
+                outTimes[count] = times[index];
+                outValues[count] = values[index];
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Creates a buffer holding the given number of seconds at one sample per second.
+    public static MetricRingBuffer forRetention(int seconds) {
+        return new MetricRingBuffer(Math.max(2, seconds));
+    }
+
+    public static int defaultRetentionSeconds() {
+        return Integer.getInteger("rms.history.seconds", 2 * 60 * 60);
+    }
+}
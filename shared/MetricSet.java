@@ -0,0 +1,62 @@
+package shared;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Mutable set of named values filled by {@link MetricCollector}s on the
+ * sampler thread. Names are turned into slots once; after that a sample only
+ * writes doubles. Values not written in the current round are NaN.
+ */
+public final class MetricSet {
+    public static final int MAX_METRICS = 512;
+    public static final int MAX_NAME_LENGTH = 64;
+
+    private final Map<String, Integer> slots = new HashMap<>();
+    private String[] names = new String[32];
+    private double[] values = new double[32];
+    private int size;
+    // Names array handed to snapshots; replaced only when a slot is added
+    private String[] published = new String[0];
+
+    // Returns the slot for a name, or -1 once MAX_METRICS names exist
+    public int slot(String name) {
+        Integer existing = slots.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        if (name.length() > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Metric name too long: " + name);
+        }
+        if (size == MAX_METRICS) {
+            return -1;
+        }
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        names[size] = name;
+        values[size] = Double.NaN;
+        slots.put(name, size);
+        return size++;
+    }
+
+    public void set(int slot, double value) {
+        if (slot >= 0) {
+            values[slot] = value;
+        }
+    }
+
+    // Starts a sampling round
+    public void clear() {
+        Arrays.fill(values, 0, size, Double.NaN);
+    }
+
+    public MetricValues snapshot() {
+        if (published.length != size) {
+            published = Arrays.copyOf(names, size);
+        }
+        return new MetricValues(published, Arrays.copyOf(values, size));
+    }
+}
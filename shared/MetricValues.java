@@ -0,0 +1,49 @@
+package shared;
+
+import java.io.Serializable;
+
+/**
+ * Immutable named metrics of one sample. Snapshots taken while the set of
+ * names is unchanged share the same names array, which lets the codec skip
+ * the name lookup. A NaN value means the metric was not measured this time.
+ */
+public final class MetricValues implements Serializable {
+    public static final MetricValues EMPTY = new MetricValues(new String[0], new double[0]);
+
+    private final String[] names;
+    private final double[] values;
+
+    public MetricValues(String[] names, double[] values) {
+        if (names.length != values.length) {
+            throw new IllegalArgumentException("Names and values differ in length");
+        }
+        this.names = names;
+        this.values = values;
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String name(int index) {
+        return names[index];
+    }
+
+    public double value(int index) {
+        return values[index];
+    }
+
+    // NaN when absent
+    public double get(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return values[i];
+            }
+        }
+        return Double.NaN;
+    }
+
+    String[] names() {
+        return names;
+    }
+}
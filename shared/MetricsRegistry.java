@@ -0,0 +1,268 @@
+package shared;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Named self-metrics: {@link LongAdder} counters, sampled gauges, timers backed
+ * by a {@link LatencyHistogram} of nanoseconds, and counters labelled by one
+ * key. Updating any of them is lock-free. The registry renders itself in the
+ * Prometheus text format and can publish the same values as a JMX MBean.
+ */
+public class MetricsRegistry {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final String prefix;
+    private final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+    public MetricsRegistry(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public LongAdder counter(String name, String help) {
+        return register(new Counter(name, help)).adder;
+    }
+
+    // Replaces any gauge of the same name, so an owner can re-register after a restart
+    public void gauge(String name, String help, DoubleSupplier value) {
+        metrics.put(name, new Gauge(name, help, value));
+    }
+
+    public void removeGauge(String name) {
+        metrics.remove(name);
+    }
+
+    public LatencyHistogram timer(String name, String help) {
+        return register(new Timer(name, help)).histogram;
+    }
+
+    public CounterFamily counterFamily(String name, String help, String label) {
+        return register(new CounterFamily(name, help, label));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Metric> T register(T metric) {
+        return (T) metrics.computeIfAbsent(metric.name, name -> metric);
+    }
+
+    public String toPrometheusText() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Metric metric : metrics.values()) {
+            String name = prefix + "_" + metric.name;
+            out.append("# HELP ").append(name).append(' ').append(metric.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(metric.type()).append('\n');
+            metric.write(name, out);
+        }
+        return out.toString();
+    }
+
+    // Publishes counters, gauges and timer summaries as attributes of one MBean
+    public void registerMBean(String objectName) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(objectName);
+        if (!server.isRegistered(name)) {
+            server.registerMBean(new RegistryMBean(), name);
+        }
+    }
+
+    private abstract static class Metric {
+        final String name;
+        final String help;
+
+        Metric(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        abstract String type();
+
+        abstract void write(String fullName, StringBuilder out);
+
+        abstract void attributes(Map<String, Object> out);
+    }
+
+    private static final class Counter extends Metric {
+        final LongAdder adder = new LongAdder();
+
+        Counter(String name, String help) {
+            super(name, help);
+        }
+
+        String type() { return "counter"; }
+
+        void write(String fullName, StringBuilder out) {
+            out.append(fullName).append(' ').append(adder.sum()).append('\n');
+        }
+
+        void attributes(Map<String, Object> out) {
+            out.put(name, adder.sum());
+        }
+    }
+
+    private static final class Gauge extends Metric {
+        final DoubleSupplier value;
+
+        Gauge(String name, String help, DoubleSupplier value) {
+            super(name, help);
+            this.value = value;
+        }
+
+        String type() { return "gauge"; }
+
+        void write(String fullName, StringBuilder out) {
+            out.append(fullName).append(' ').append(value.getAsDouble()).append('\n');
+        }
+
+        void attributes(Map<String, Object> out) {
+            out.put(name, value.getAsDouble());
+        }
+    }
+
+    // Exported as a summary in seconds over the whole run
+    private static final class Timer extends Metric {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        Timer(String name, String help) {
+            super(name, help);
+        }
+
+        String type() { return "summary"; }
+
+        void write(String fullName, StringBuilder out) {
+            for (double q : QUANTILES) {
+                out.append(fullName).append("{quantile=\"").append(q).append("\"} ")
+                        .append(histogram.percentile(q) / 1e9).append('\n');
+            }
+            out.append(fullName).append("_sum ").append(histogram.getSum() / 1e9).append('\n');
+            out.append(fullName).append("_count ").append(histogram.getCount()).append('\n');
+        }
+
+        void attributes(Map<String, Object> out) {
+            out.put(name + "_count", histogram.getCount());
+            out.put(name + "_p50_micros", histogram.percentile(0.5) / 1000.0);
+            out.put(name + "_p99_micros", histogram.percentile(0.99) / 1000.0);
+            out.put(name + "_max_micros", histogram.getMax() / 1000.0);
+        }
+    }
+
+    // Counters keyed by one label value, e.g. per host; callers remove values that go away
+    public static final class CounterFamily extends Metric {
+        private final String label;
+        private final Map<String, LongAdder> children = new ConcurrentHashMap<>();
+
+        CounterFamily(String name, String help, String label) {
+            super(name, help);
+            this.label = label;
+        }
+
+        public LongAdder get(String value) {
+            LongAdder adder = children.get(value);
+            return adder != null ? adder : children.computeIfAbsent(value, v -> new LongAdder());
+        }
+
+        public void remove(String value) {
+            children.remove(value);
+        }
+
+        String type() { return "counter"; }
+
+        void write(String fullName, StringBuilder out) {
+            for (Map.Entry<String, LongAdder> child : children.entrySet()) {
+                out.append(fullName).append('{').append(label).append("=\"");
+                escape(child.getKey(), out);
+                out.append("\"} ").append(child.getValue().sum()).append('\n');
+            }
+        }
+
+        // Per-label values are left to the text endpoint; JMX gets the number of children
+        void attributes(Map<String, Object> out) {
+            out.put(name + "_" + label + "s", children.size());
+        }
+
+        private static void escape(String value, StringBuilder out) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '\\' || c == '"') {
+                    out.append('\\').append(c);
+                } else if (c == '\n') {
+                    out.append("\\n");
+                } else {
+                    out.append(c);
+                }
+            }
+        }
+    }
+
+    private final class RegistryMBean implements DynamicMBean {
+        private Map<String, Object> snapshot() {
+            Map<String, Object> values = new TreeMap<>();
+            for (Metric metric : metrics.values()) {
+                metric.attributes(values);
+            }
+            return values;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Object value = snapshot().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Object> values = snapshot();
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                if (values.containsKey(attribute)) {
+                    list.add(new Attribute(attribute, values.get(attribute)));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException(actionName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (Map.Entry<String, Object> value : snapshot().entrySet()) {
+                attributes.add(new MBeanAttributeInfo(value.getKey(), value.getValue().getClass().getName(),
+                        value.getKey(), true, false, false));
+            }
+            return new MBeanInfo(MetricsRegistry.class.getName(), "Self-metrics (" + prefix + ")",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
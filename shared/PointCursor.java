@@ -0,0 +1,14 @@
+package shared;
+
+/**
+ * Forward-only iteration over (timestamp, value) points without boxing:
+ * {@link #next()} advances, then {@link #time()} and {@link #value()} read
+ * the current point.
+ */
+public interface PointCursor {
+    boolean next();
+
+    long time();
+
+    double value();
+}
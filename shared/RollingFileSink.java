@@ -0,0 +1,130 @@
+package shared;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a {@link LogBuffer} to disk on its own thread, rolling the file over
+ * at {@code maxBytes} and keeping {@code keepFiles} older files as
+ * {@code name.1}, {@code name.2}, ... Logging threads never wait for the disk.
+ */
+public class RollingFileSink {
+    private static final long POLL_MILLIS = 500;
+
+    private final LogBuffer buffer;
+    private final Path file;
+    private final long maxBytes;
+    private final int keepFiles;
+    private final Runnable beforePoll;
+    private final Thread thread;
+    private volatile boolean isRunning = true;
+    private BufferedWriter writer;
+    private long written;
+
+    public RollingFileSink(LogBuffer buffer, Path file, long maxBytes, int keepFiles, Runnable beforePoll) {
+        this.buffer = buffer;
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.keepFiles = keepFiles;
+        this.beforePoll = beforePoll;
+        this.thread = new Thread(this::run, "log-writer");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public void close() {
+        isRunning = false;
+        thread.interrupt();
+        try {
+            thread.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        long cursor = buffer.nextSequence();
+        List<LogEntry> entries = new ArrayList<>();
+        long[] lost = new long[1];
+        try {
+            open();
+            while (true) {
+                beforePoll.run();
+                entries.clear();
+                lost[0] = 0;
+                cursor = buffer.read(cursor, 4096, entries, lost);
+                if (lost[0] > 0) {
+                    writeLine("[" + lost[0] + " log entries lost]");
+                }
+                for (LogEntry entry : entries) {
+                    writeLine(entry.format());
+                }
+                writer.flush();
+                if (!isRunning) {
+                    break;
+                }
+                if (entries.isEmpty()) {
+                    try {
+                        Thread.sleep(POLL_MILLIS);
+                    } catch (InterruptedException e) {
+                        isRunning = false;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Log file " + file + " disabled: " + e.getMessage());
+        } finally {
+            try {
+                if (writer != null) writer.close();
+            } catch (IOException ignored) {
+                // Nothing more to do
+            }
+        }
+    }
+
+    private void writeLine(String line) throws IOException {
+        if (written >= maxBytes) {
+            roll();
+        }
+        writer.write(line);
+        writer.newLine();
+        written += line.length() + 1;
+    }
+
+    private void open() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        written = Files.size(file);
+    }
+
+    private void roll() throws IOException {
+        writer.close();
+        for (int i = keepFiles - 1; i >= 1; i--) {
+            Path from = file.resolveSibling(file.getFileName() + "." + i);
+            if (Files.exists(from)) {
+                Files.move(from, file.resolveSibling(file.getFileName() + "." + (i + 1)),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (keepFiles > 0) {
+            Files.move(file, file.resolveSibling(file.getFileName() + ".1"), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(file);
+        }
+        open();
+    }
+}
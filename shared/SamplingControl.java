@@ -0,0 +1,51 @@
+package shared;
+
+/**
+ * Sampling settings the server sends a client in a CONTROL frame. An interval
+ * of 0 and an empty collector list mean the client's own settings, so
+ * {@link #DEFAULT} hands control back to the client.
+ */
+public final class SamplingControl {
+    public static final SamplingControl DEFAULT = new SamplingControl(0, false, "");
+
+    private final int intervalMillis;
+    private final boolean paused;
+    private final String collectors;
+
+    // collectors is a comma-separated list of collector names
+    public SamplingControl(int intervalMillis, boolean paused, String collectors) {
+        if (intervalMillis < 0) {
+            throw new IllegalArgumentException("Negative sampling interval: " + intervalMillis);
+        }
+        this.intervalMillis = intervalMillis;
+        this.paused = paused;
+        this.collectors = collectors == null ? "" : collectors;
+    }
+
+    public int getIntervalMillis() { return intervalMillis; }
+    public boolean isPaused() { return paused; }
+    public String getCollectors() { return collectors; }
+
+    public boolean isDefault() {
+        return intervalMillis == 0 && !paused && collectors.isEmpty();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof SamplingControl)) return false;
+        SamplingControl that = (SamplingControl) other;
+        return intervalMillis == that.intervalMillis && paused == that.paused && collectors.equals(that.collectors);
+    }
+
+    @Override
+    public int hashCode() {
+        return (intervalMillis * 31 + (paused ? 1 : 0)) * 31 + collectors.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        if (isDefault()) return "client default";
+        return (paused ? "paused" : intervalMillis == 0 ? "own interval" : intervalMillis + " ms")
+                + (collectors.isEmpty() ? "" : ", collectors " + collectors);
+    }
+}
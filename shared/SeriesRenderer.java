@@ -0,0 +1,67 @@
+package shared;
+
+import javafx.collections.ObservableList;
+import javafx.scene.chart.XYChart;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Draws the last {@code rms.ui.chartSeconds} (default two hours) of a
+ * {@link TimeSeries} into a chart series, downsampled to roughly one point
+ * per horizontal pixel. Existing {@code XYChart.Data} nodes are updated in
+ * place; the list only grows or shrinks at its tail.
+ * FX thread only.
+ */
+public class SeriesRenderer {
+    private static final int DEFAULT_WIDTH = 400;
+    private static final long WINDOW_MILLIS = Long.getLong("rms.ui.chartSeconds", 2 * 60 * 60) * 1000;
+
+    private final TimeSeries buffer;
+    private final XYChart<Number, Number> chart;
+    private final XYChart.Series<Number, Number> series;
+    private final long originMillis;
+    private long[] times = new long[0];
+    private double[] values = new double[0];
+
+    // Adds a new series to the chart; X values are plotted as seconds since originMillis
+    public SeriesRenderer(TimeSeries buffer, XYChart<Number, Number> chart, String name, long originMillis) {
+        this.buffer = buffer;
+        this.chart = chart;
+        this.series = new XYChart.Series<>();
+        this.originMillis = originMillis;
+        series.setName(name);
+        chart.getData().add(series);
+    }
+
+    public void render() {
+        double pixelWidth = chart.getXAxis().getWidth();
+        int maxPoints = pixelWidth > 0 ? (int) pixelWidth : DEFAULT_WIDTH;
+        if (times.length < maxPoints) {
+            times = new long[maxPoints];
+            values = new double[maxPoints];
+        }
+        int count = buffer.downsampleRecent(WINDOW_MILLIS, maxPoints, times, values);
+
+        ObservableList<XYChart.Data<Number, Number>> data = series.getData();
+        int existing = Math.min(count, data.size());
+        for (int i = 0; i < existing; i++) {
+            XYChart.Data<Number, Number> point = data.get(i);
+            point.setXValue(toSeconds(times[i]));
+            point.setYValue(values[i]);
+        }
+        if (count > data.size()) {
+            List<XYChart.Data<Number, Number>> added = new ArrayList<>(count - data.size());
+            for (int i = data.size(); i < count; i++) {
+                added.add(new XYChart.Data<>(toSeconds(times[i]), values[i]));
+            }
+            data.addAll(added);
+        } else if (count < data.size()) {
+            data.remove(count, data.size());
+        }
+    }
+
+    private double toSeconds(long timeMillis) {
+        return (timeMillis - originMillis) / 1000.0;
+    }
+}
@@ -1,7 +1,9 @@
 package shared;
 
 import java.io.Serializable;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 
 public class SystemInfo implements Serializable {
     private String hostname;
@@ -10,19 +12,50 @@ public class SystemInfo implements Serializable {
     private double cpuUsage;
     private long totalMemory;
     private long usedMemory;
-    private LocalDateTime timestamp;
     private String status;
+    private MetricValues metrics = MetricValues.EMPTY;
+    // Capture time on the client, epoch nanoseconds
+    private long timeNanos;
+    // Sample number within the sending session, -1 when not sent over the wire
+    private long seq = -1;
+    // When the server decoded the sample, epoch nanoseconds; 0 on the client
+    private long receivedNanos;
+    // Derived from timeNanos on first use
+    private transient LocalDateTime timestamp;
 
-    public SystemInfo(String hostname, String os, int cpuCores, double cpuUsage, 
+    public SystemInfo(String hostname, String os, int cpuCores, double cpuUsage,
                      long totalMemory, long usedMemory, String status) {
+        this(hostname, os, cpuCores, cpuUsage, totalMemory, usedMemory, status, EpochClock.nanos(), -1, 0,
+                MetricValues.EMPTY);
+    }
+
+    public SystemInfo(String hostname, String os, int cpuCores, double cpuUsage,
+                     long totalMemory, long usedMemory, String status, LocalDateTime timestamp) {
+        this(hostname, os, cpuCores, cpuUsage, totalMemory, usedMemory, status,
+                toNanos(timestamp.atZone(ZoneId.systemDefault()).toInstant()), -1, 0, MetricValues.EMPTY);
+        this.timestamp = timestamp;
+    }
+
+    // Core figures plus whatever the client's collectors measured
+    public SystemInfo(String hostname, String os, int cpuCores, double cpuUsage,
+                     long totalMemory, long usedMemory, String status, MetricValues metrics) {
+        this(hostname, os, cpuCores, cpuUsage, totalMemory, usedMemory, status, EpochClock.nanos(), -1, 0, metrics);
+    }
+
+    public SystemInfo(String hostname, String os, int cpuCores, double cpuUsage,
+                     long totalMemory, long usedMemory, String status,
+                     long timeNanos, long seq, long receivedNanos, MetricValues metrics) {
         this.hostname = hostname;
         this.os = os;
         this.cpuCores = cpuCores;
         this.cpuUsage = cpuUsage;
         this.totalMemory = totalMemory;
         this.usedMemory = usedMemory;
-        this.timestamp = LocalDateTime.now();
         this.status = status;
+        this.timeNanos = timeNanos;
+        this.seq = seq;
+        this.receivedNanos = receivedNanos;
+        this.metrics = metrics;
     }
 
     // Getters and setters
@@ -32,10 +65,28 @@ public class SystemInfo implements Serializable {
     public double getCpuUsage() { return cpuUsage; }
     public long getTotalMemory() { return totalMemory; }
     public long getUsedMemory() { return usedMemory; }
-    public LocalDateTime getTimestamp() { return timestamp; }
     public String getStatus() { return status; }
-    
+    public MetricValues getMetrics() { return metrics; }
+    public long getTimeNanos() { return timeNanos; }
+    public long getTimeMillis() { return Math.floorDiv(timeNanos, 1_000_000); }
+    public long getSeq() { return seq; }
+    public long getReceivedNanos() { return receivedNanos; }
+
+    // Capture time in the local zone, for display
+    public LocalDateTime getTimestamp() {
+        LocalDateTime value = timestamp;
+        if (value == null) {
+            value = LocalDateTime.ofInstant(Instant.ofEpochSecond(0, timeNanos), ZoneId.systemDefault());
+            timestamp = value;
+        }
+        return value;
+    }
+
     public double getMemoryUsagePercentage() {
         return (totalMemory > 0) ? (usedMemory * 100.0 / totalMemory) : 0;
     }
-}
\ No newline at end of file
+
+    private static long toNanos(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000_000 + instant.getNano();
+    }
+}
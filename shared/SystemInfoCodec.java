@@ -0,0 +1,730 @@
+package shared;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary session protocol for {@link SystemInfo}, shared by client and server.
+ *
+ * Every frame is {@code u16 length} followed by {@code u8 type} and a body:
+ * <pre>
+ *   HELLO   client -> server   u8 version, str hostname, str os, varint cpuCores,
+ *                              varlong totalMemory, str status[, u8 flags (1 = forwarded by a relay)]
+ *   WELCOME server -> client   u8 version, varint sessionId
+ *   BATCH   client -> server   varint sessionId, varlong firstSeq, varint count, then per sample:
+ *                              zigzag varlong capture time delta (microseconds since the epoch),
+ *                              varint cpuUsage (hundredths of a percent),
+ *                              zigzag varlong usedMemory delta (bytes)
+ *   ACK     server -> client   varint sessionId, varlong lastSeq
+ *   SUMMARY client -> server   varint sessionId, varint count, varint cpuMin, varint cpuAvg,
+ *                              varint cpuMax (hundredths), varlong usedMin, varlong usedMax
+ *   BYE     client -> server   varint sessionId
+ *   NAMES   client -> server   varint sessionId, varint firstIndex, then str names to the end of the frame
+ *   METRICS client -> server   varint sessionId, varlong time (epoch ms), u8 last, then to the end
+ *                              of the frame: varint nameIndex, zigzag varlong value (hundredths)
+ *   CONTROL server -> client   varint sessionId, u8 paused, varint intervalMillis, str collectors
+ * </pre>
+ * Strings are an unsigned varint byte count followed by UTF-8. A client
+ * announces its static identity once with HELLO and gets back a session id;
+ * after that each BATCH carries only the id and the changing values, encoded
+ * as deltas against the previous sample of the same session. Samples are
+ * numbered consecutively from {@code firstSeq} and the server acknowledges the
+ * last sequence number of every batch it has accepted. Decoded samples carry
+ * their sequence number and the time the frame was decoded
+ * ({@link SystemInfo#getReceivedNanos()}).
+ *
+ * Session ids are scoped to one connection, and a connection may open several
+ * sessions; a relay forwards many hosts this way, adding a SUMMARY of what
+ * it coalesced and a BYE when a host leaves. At most {@link #MAX_SESSIONS}
+ * are open at once: a later HELLO gets the id of a session closed by BYE, so
+ * a long-lived connection can announce any number of hosts over time. Frames
+ * for a closed session are rejected.
+ *
+ * Named metrics ({@link MetricValues}) travel separately from the core
+ * figures and are not acknowledged: NAMES frames assign each name an index
+ * once per session, then a snapshot is one or more METRICS frames, the last
+ * of which has {@code last} set. NaN values are left out.
+ *
+ * The server may send a CONTROL frame at any time after WELCOME to change how
+ * a session samples ({@link SamplingControl}); each one replaces the last,
+ * and the settings end with the connection. Sessions a relay forwards get
+ * none, since the relay cannot pass them on to the host.
+ *
+ * One codec instance per connection direction, or per session on a
+ * multiplexing sender; it is not thread-safe.
+ */
+public final class SystemInfoCodec {
+    public static final byte VERSION = 5;
+    public static final byte HELLO = 1;
+    public static final byte WELCOME = 2;
+    public static final byte BATCH = 3;
+    public static final byte ACK = 4;
+    public static final byte SUMMARY = 5;
+    public static final byte BYE = 6;
+    public static final byte NAMES = 7;
+    public static final byte METRICS = 8;
+    public static final byte CONTROL = 9;
+
+    // HELLO flags
+    public static final int RELAYED = 1;
+
+    public static final int LENGTH_SIZE = 2;
+    public static final int MAX_FRAME_SIZE = 4096;
+    public static final int MAX_SESSIONS = 1 << 16;
+    public static final int MAX_BATCH = 128;
+    // Room for the largest metrics snapshot: every name plus every value
+    public static final int METRICS_BUFFER_SIZE = 64 * 1024;
+
+    // Stream I/O scratch space, allocated on first use; encode/decode into caller buffers never need it
+    private ByteBuffer buffer;
+
+    // Sending side: the session this codec writes samples for
+    private int sessionId = -1;
+    private long lastSentTime;
+    private long lastSentUsed;
+    private Map<String, Integer> sentNames;
+    private String[] sentNamesFor;
+    private int[] sentIndexes;
+
+    // Receiving side: sessions opened on this connection, indexed by id - 1
+    private final List<Session> sessions = new ArrayList<>();
+    // Ids of sessions closed by BYE, handed out again most recent first
+    private int[] freeIds = new int[16];
+    private int freeCount;
+    private Session lastSession;
+    private final List<SystemInfo> samples = new ArrayList<>(MAX_BATCH);
+    private long lastSeq;
+    private int ackSessionId;
+    private IntervalSummary lastSummary;
+    private MetricValues lastMetrics;
+    private long lastMetricsTime;
+    private SamplingControl lastControl;
+
+    // ---- sending side ----
+
+    public void writeHello(SystemInfo identity, DataOutputStream out) throws IOException {
+        ByteBuffer buffer = buffer();
+        encodeHello(identity, buffer);
+        out.write(buffer.array(), 0, buffer.position());
+    }
+
+    // Blocks until the server answers the HELLO and remembers the session id
+    public int readWelcome(DataInputStream in) throws IOException {
+        if (readFrame(in) != WELCOME) {
+            throw new ProtocolException("Expected WELCOME");
+        }
+        return sessionId;
+    }
+
+    // Sends one sample as a batch of one
+    public void write(SystemInfo info, long seq, DataOutputStream out) throws IOException {
+        ByteBuffer buffer = buffer();
+        encodeSample(info, seq, buffer);
+        out.write(buffer.array(), 0, buffer.position());
+    }
+
+    public void writeBatch(long firstSeq, int count, long[] times, double[] cpuUsage, long[] usedMemory,
+                           DataOutputStream out) throws IOException {
+        ByteBuffer buffer = buffer();
+        encodeBatch(firstSeq, count, times, cpuUsage, usedMemory, buffer);
+        out.write(buffer.array(), 0, buffer.position());
+    }
+
+    public void encodeHello(SystemInfo identity, ByteBuffer dst) {
+        encodeHello(identity, false, dst);
+    }
+
+    // relayed marks a host that a relay forwards rather than one connected directly
+    public void encodeHello(SystemInfo identity, boolean relayed, ByteBuffer dst) {
+        int start = beginFrame(dst, HELLO);
+        dst.put(VERSION);
+        putString(dst, identity.getHostname());
+        putString(dst, identity.getOs());
+        putVarLong(dst, identity.getCpuCores());
+        putVarLong(dst, identity.getTotalMemory());
+        putString(dst, identity.getStatus());
+        if (relayed) {
+            dst.put((byte) RELAYED);
+        }
+        endFrame(dst, start);
+        resetSending();
+    }
+
+    public void encodeSample(SystemInfo info, long seq, ByteBuffer dst) {
+        int start = beginBatch(dst, seq, 1);
+        putSample(dst, info.getTimeNanos(), info.getCpuUsage(), info.getUsedMemory());
+        endFrame(dst, start);
+    }
+
+    // Encodes samples firstSeq .. firstSeq + count - 1; count is at most MAX_BATCH, times are epoch nanoseconds
+    public void encodeBatch(long firstSeq, int count, long[] times, double[] cpuUsage, long[] usedMemory,
+                            ByteBuffer dst) {
+        if (count < 1 || count > MAX_BATCH) {
+            throw new IllegalArgumentException("Batch size out of range: " + count);
+        }
+        int start = beginBatch(dst, firstSeq, count);
+        for (int i = 0; i < count; i++) {
+            putSample(dst, times[i], cpuUsage[i], usedMemory[i]);
+        }
+        endFrame(dst, start);
+    }
+
+    private int beginBatch(ByteBuffer dst, long firstSeq, int count) {
+        if (sessionId < 0) {
+            throw new IllegalStateException("No session: send HELLO and read WELCOME first");
+        }
+        int start = beginFrame(dst, BATCH);
+        putVarLong(dst, sessionId);
+        putVarLong(dst, firstSeq);
+        putVarLong(dst, count);
+        return start;
+    }
+
+    private void putSample(ByteBuffer dst, long timeNanos, double cpuUsage, long used) {
+        long time = Math.floorDiv(timeNanos, 1000);
+        putVarLong(dst, zigzag(time - lastSentTime));
+        putVarLong(dst, Math.round(Math.max(0, cpuUsage) * 100));
+        putVarLong(dst, zigzag(used - lastSentUsed));
+        lastSentTime = time;
+        lastSentUsed = used;
+    }
+
+    public void encodeSummary(IntervalSummary summary, ByteBuffer dst) {
+        int start = beginFrame(dst, SUMMARY);
+        putVarLong(dst, sessionId);
+        putVarLong(dst, summary.getCount());
+        putVarLong(dst, Math.round(Math.max(0, summary.getCpuMin()) * 100));
+        putVarLong(dst, Math.round(Math.max(0, summary.getCpuAvg()) * 100));
+        putVarLong(dst, Math.round(Math.max(0, summary.getCpuMax()) * 100));
+        putVarLong(dst, summary.getUsedMemoryMin());
+        putVarLong(dst, summary.getUsedMemoryMax());
+        endFrame(dst, start);
+    }
+
+    public void encodeBye(ByteBuffer dst) {
+        int start = beginFrame(dst, BYE);
+        putVarLong(dst, sessionId);
+        endFrame(dst, start);
+    }
+
+    public int getSessionId() {
+        return sessionId;
+    }
+
+    // For senders that multiplex sessions and read WELCOME frames on another codec
+    public void setSessionId(int id) {
+        sessionId = id;
+        resetSending();
+    }
+
+    private void resetSending() {
+        lastSentTime = 0;
+        lastSentUsed = 0;
+        sentNames = null;
+        sentNamesFor = null;
+        sentIndexes = null;
+    }
+
+    public void writeMetrics(long timeMillis, MetricValues metrics, DataOutputStream out) throws IOException {
+        ByteBuffer buffer = buffer(METRICS_BUFFER_SIZE);
+        encodeMetrics(timeMillis, metrics, buffer);
+        out.write(buffer.array(), 0, buffer.position());
+    }
+
+    /**
+     * Encodes NAMES frames for names this session has not sent yet, then the
+     * snapshot as METRICS frames; dst needs up to {@link #METRICS_BUFFER_SIZE}
+     * bytes. Nothing is allocated while the names stay the same.
+     */
+    public void encodeMetrics(long timeMillis, MetricValues metrics, ByteBuffer dst) {
+        if (sessionId < 0) {
+            throw new IllegalStateException("No session: send HELLO and read WELCOME first");
+        }
+        int[] indexes = nameIndexes(metrics.names(), dst);
+        int start = -1;
+        int lastFlag = -1;
+        for (int i = 0; i < metrics.size(); i++) {
+            double value = metrics.value(i);
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            if (start >= 0 && dst.position() - start > MAX_FRAME_SIZE - 16) {
+                endFrame(dst, start);
+                start = -1;
+            }
+            if (start < 0) {
+                start = beginFrame(dst, METRICS);
+                putVarLong(dst, sessionId);
+                putVarLong(dst, timeMillis);
+                lastFlag = dst.position();
+                dst.put((byte) 0);
+            }
+            putVarLong(dst, indexes[i]);
+            putVarLong(dst, zigzag(Math.round(value * 100)));
+        }
+        if (start < 0) {
+            start = beginFrame(dst, METRICS);
+            putVarLong(dst, sessionId);
+            putVarLong(dst, timeMillis);
+            lastFlag = dst.position();
+            dst.put((byte) 0);
+        }
+        dst.put(lastFlag, (byte) 1);
+        endFrame(dst, start);
+    }
+
+    private int[] nameIndexes(String[] names, ByteBuffer dst) {
+        if (names == sentNamesFor) {
+            return sentIndexes;
+        }
+        if (sentNames == null) {
+            sentNames = new HashMap<>();
+        }
+        int[] indexes = new int[names.length];
+        int start = -1;
+        for (int i = 0; i < names.length; i++) {
+            Integer known = sentNames.get(names[i]);
+            if (known != null) {
+                indexes[i] = known;
+                continue;
+            }
+            indexes[i] = sentNames.size();
+            sentNames.put(names[i], indexes[i]);
+            if (start >= 0 && dst.position() - start > MAX_FRAME_SIZE - 8 - 4 * MetricSet.MAX_NAME_LENGTH) {
+                endFrame(dst, start);
+                start = -1;
+            }
+            if (start < 0) {
+                start = beginFrame(dst, NAMES);
+                putVarLong(dst, sessionId);
+                putVarLong(dst, indexes[i]);
+            }
+            putString(dst, names[i]);
+        }
+        if (start >= 0) {
+            endFrame(dst, start);
+        }
+        sentNamesFor = names;
+        sentIndexes = indexes;
+        return indexes;
+    }
+
+    // ---- receiving side ----
+
+    /**
+     * Reads one frame and returns its type. After HELLO, {@link #lastSessionId()}
+     * is the id to answer with; after BATCH, {@link #samples()} holds the decoded
+     * samples and {@link #lastSeq()} the sequence number to acknowledge; after
+     * ACK, {@link #lastSeq()} is the acknowledged sequence number of session
+     * {@link #ackSessionId()}; after
+     * CONTROL, {@link #lastControl()} holds the new settings.
+     */
+    public byte readFrame(DataInputStream in) throws IOException {
+        int length = in.readUnsignedShort();
+        checkLength(length);
+        ByteBuffer buffer = buffer();
+        in.readFully(buffer.array(), 0, length);
+        buffer.limit(length);
+        return decode(buffer);
+    }
+
+    // Decodes one frame body (everything after the length prefix) and returns its type.
+    public byte decode(ByteBuffer body) throws ProtocolException {
+        try {
+            byte type = body.get();
+            switch (type) {
+                case HELLO:
+                    decodeHello(body);
+                    break;
+                case WELCOME:
+                    checkVersion(body.get());
+                    sessionId = (int) getVarLong(body);
+                    break;
+                case BATCH:
+                    decodeBatch(body);
+                    break;
+                case ACK:
+                    ackSessionId = (int) getVarLong(body);
+                    lastSeq = getVarLong(body);
+                    break;
+                case SUMMARY:
+                    decodeSummary(body);
+                    break;
+                case BYE:
+                    lastSession = session((int) getVarLong(body));
+                    lastSession.closed = true;
+                    if (freeCount == freeIds.length) {
+                        freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+                    }
+                    freeIds[freeCount++] = lastSession.id;
+                    break;
+                case NAMES:
+                    decodeNames(body);
+                    break;
+                case METRICS:
+                    decodeMetrics(body);
+                    break;
+                case CONTROL:
+                    getVarLong(body);
+                    boolean paused = body.get() != 0;
+                    lastControl = new SamplingControl((int) getVarLong(body), paused, getString(body));
+                    break;
+                default:
+                    throw new ProtocolException("Unknown frame type: " + type);
+            }
+            return type;
+        } catch (BufferUnderflowException e) {
+            throw new ProtocolException("Truncated frame");
+        }
+    }
+
+    public void encodeWelcome(int id, ByteBuffer dst) {
+        int start = beginFrame(dst, WELCOME);
+        dst.put(VERSION);
+        putVarLong(dst, id);
+        endFrame(dst, start);
+    }
+
+    public void writeWelcome(int id, DataOutputStream out) throws IOException {
+        ByteBuffer buffer = buffer();
+        encodeWelcome(id, buffer);
+        out.write(buffer.array(), 0, buffer.position());
+        out.flush();
+    }
+
+    public void encodeAck(int id, long seq, ByteBuffer dst) {
+        int start = beginFrame(dst, ACK);
+        putVarLong(dst, id);
+        putVarLong(dst, seq);
+        endFrame(dst, start);
+    }
+
+    public void writeAck(int id, long seq, DataOutputStream out) throws IOException {
+        ByteBuffer buffer = buffer();
+        encodeAck(id, seq, buffer);
+        out.write(buffer.array(), 0, buffer.position());
+        out.flush();
+    }
+
+    // Collector names are short, so a frame always fits MAX_FRAME_SIZE
+    public void encodeControl(int id, SamplingControl control, ByteBuffer dst) {
+        int start = beginFrame(dst, CONTROL);
+        putVarLong(dst, id);
+        dst.put((byte) (control.isPaused() ? 1 : 0));
+        putVarLong(dst, control.getIntervalMillis());
+        putString(dst, control.getCollectors());
+        endFrame(dst, start);
+    }
+
+    public void writeControl(int id, SamplingControl control, DataOutputStream out) throws IOException {
+        ByteBuffer buffer = buffer();
+        encodeControl(id, control, buffer);
+        out.write(buffer.array(), 0, buffer.position());
+        out.flush();
+    }
+
+    // Settings from the last CONTROL frame
+    public SamplingControl lastControl() {
+        return lastControl;
+    }
+
+    public int lastSessionId() {
+        return lastSession.id;
+    }
+
+    // Host of the session the last HELLO, BATCH, SUMMARY or BYE was about
+    public String lastHostname() {
+        return lastSession.hostname;
+    }
+
+    // Files the session of the last HELLO under another name from now on, e.g. when its own is taken
+    public void renameLastSession(String hostname) {
+        lastSession.hostname = hostname;
+    }
+
+    public IntervalSummary lastSummary() {
+        return lastSummary;
+    }
+
+    // Complete snapshot after the last METRICS frame of one, otherwise null
+    public MetricValues lastMetrics() {
+        return lastMetrics;
+    }
+
+    public long lastMetricsTime() {
+        return lastMetricsTime;
+    }
+
+    // Samples of the last BATCH; the list is reused by the next frame
+    public List<SystemInfo> samples() {
+        return samples;
+    }
+
+    public long lastSeq() {
+        return lastSeq;
+    }
+
+    public int ackSessionId() {
+        return ackSessionId;
+    }
+
+    // Whether the last HELLO came from a relay forwarding the host
+    public boolean lastSessionRelayed() {
+        return lastSession.relayed;
+    }
+
+    // Hostnames of every session on this connection that has not said BYE
+    public List<String> hostnames() {
+        List<String> names = new ArrayList<>(sessions.size());
+        for (Session session : sessions) {
+            if (!session.closed) {
+                names.add(session.hostname);
+            }
+        }
+        return names;
+    }
+
+    private void decodeHello(ByteBuffer body) throws ProtocolException {
+        checkVersion(body.get());
+        String hostname = getString(body);
+        String os = getString(body);
+        int cpuCores = (int) getVarLong(body);
+        long totalMemory = getVarLong(body);
+        String status = getString(body);
+        boolean relayed = body.hasRemaining() && (body.get() & RELAYED) != 0;
+        if (freeCount > 0) {
+            int id = freeIds[--freeCount];
+            lastSession = new Session(id, hostname, os, cpuCores, totalMemory, status, relayed);
+            sessions.set(id - 1, lastSession);
+            return;
+        }
+        if (sessions.size() >= MAX_SESSIONS) {
+            throw new ProtocolException("Too many sessions on one connection");
+        }
+        lastSession = new Session(sessions.size() + 1, hostname, os, cpuCores, totalMemory, status, relayed);
+        sessions.add(lastSession);
+    }
+
+    private Session session(int id) throws ProtocolException {
+        if (id < 1 || id > sessions.size()) {
+            throw new ProtocolException("Unknown session: " + id);
+        }
+        Session session = sessions.get(id - 1);
+        if (session.closed) {
+            throw new ProtocolException("Session " + id + " is closed");
+        }
+        return session;
+    }
+
+    private void decodeSummary(ByteBuffer body) throws ProtocolException {
+        Session session = session((int) getVarLong(body));
+        int count = (int) getVarLong(body);
+        double cpuMin = getVarLong(body) / 100.0;
+        double cpuAvg = getVarLong(body) / 100.0;
+        double cpuMax = getVarLong(body) / 100.0;
+        long usedMin = getVarLong(body);
+        long usedMax = getVarLong(body);
+        lastSession = session;
+        lastSummary = new IntervalSummary(session.hostname, count, cpuMin, cpuAvg, cpuMax, usedMin, usedMax);
+    }
+
+    private void decodeNames(ByteBuffer body) throws ProtocolException {
+        Session session = session((int) getVarLong(body));
+        if (session.metricNames == null) {
+            session.metricNames = new ArrayList<>();
+        }
+        if (getVarLong(body) != session.metricNames.size()) {
+            throw new ProtocolException("Metric names out of order");
+        }
+        while (body.hasRemaining()) {
+            if (session.metricNames.size() >= MetricSet.MAX_METRICS) {
+                throw new ProtocolException("Too many metric names");
+            }
+            session.metricNames.add(getString(body));
+        }
+        lastSession = session;
+    }
+
+    private void decodeMetrics(ByteBuffer body) throws ProtocolException {
+        Session session = session((int) getVarLong(body));
+        long time = getVarLong(body);
+        boolean last = body.get() != 0;
+        int known = session.metricNames == null ? 0 : session.metricNames.size();
+        // Frames of other sessions may come between the parts of a snapshot, so it is assembled per session
+        if (session.pendingNames == null) {
+            session.pendingNames = new String[Math.min(16, MetricSet.MAX_METRICS)];
+            session.pendingValues = new double[session.pendingNames.length];
+        }
+        while (body.hasRemaining()) {
+            int index = (int) getVarLong(body);
+            if (index < 0 || index >= known) {
+                throw new ProtocolException("Unknown metric index: " + index);
+            }
+            int count = session.pendingCount;
+            if (count == MetricSet.MAX_METRICS) {
+                throw new ProtocolException("Too many metrics in one snapshot");
+            }
+            if (count == session.pendingNames.length) {
+                int grown = Math.min(count * 2, MetricSet.MAX_METRICS);
+                session.pendingNames = Arrays.copyOf(session.pendingNames, grown);
+                session.pendingValues = Arrays.copyOf(session.pendingValues, grown);
+            }
+            session.pendingNames[count] = session.metricNames.get(index);
+            session.pendingValues[count] = unzigzag(getVarLong(body)) / 100.0;
+            session.pendingCount = count + 1;
+        }
+        lastSession = session;
+        lastMetrics = null;
+        if (last) {
+            lastMetrics = new MetricValues(Arrays.copyOf(session.pendingNames, session.pendingCount),
+                    Arrays.copyOf(session.pendingValues, session.pendingCount));
+            lastMetricsTime = time;
+            session.pendingCount = 0;
+        }
+    }
+
+    private void decodeBatch(ByteBuffer body) throws ProtocolException {
+        Session session = session((int) getVarLong(body));
+        long firstSeq = getVarLong(body);
+        int count = (int) getVarLong(body);
+        if (count < 1 || count > MAX_BATCH) {
+            throw new ProtocolException("Invalid batch size: " + count);
+        }
+
+        long received = EpochClock.nanos();
+        samples.clear();
+        for (int i = 0; i < count; i++) {
+            session.lastTime += unzigzag(getVarLong(body));
+            double cpuUsage = getVarLong(body) / 100.0;
+            session.lastUsed += unzigzag(getVarLong(body));
+            samples.add(new SystemInfo(session.hostname, session.os, session.cpuCores, cpuUsage,
+                    session.totalMemory, session.lastUsed, session.status,
+                    session.lastTime * 1000, firstSeq + i, received, MetricValues.EMPTY));
+        }
+        lastSession = session;
+        lastSeq = firstSeq + count - 1;
+    }
+
+    private ByteBuffer buffer() {
+        return buffer(LENGTH_SIZE + MAX_FRAME_SIZE);
+    }
+
+    private ByteBuffer buffer(int capacity) {
+        if (buffer == null || buffer.capacity() < capacity) {
+            buffer = ByteBuffer.allocate(capacity);
+        }
+        return buffer.clear();
+    }
+
+    public static void checkLength(int length) throws ProtocolException {
+        if (length < 1 || length > MAX_FRAME_SIZE) {
+            throw new ProtocolException("Invalid frame length: " + length);
+        }
+    }
+
+    // Length of the frame starting at the buffer's position, without consuming it
+    public static int peekLength(ByteBuffer src) {
+        return src.getShort(src.position()) & 0xFFFF;
+    }
+
+    private static void checkVersion(byte version) throws ProtocolException {
+        if (version != VERSION) {
+            throw new ProtocolException("Unsupported protocol version: " + version);
+        }
+    }
+
+    private static int beginFrame(ByteBuffer dst, byte type) {
+        int start = dst.position();
+        dst.putShort((short) 0);
+        dst.put(type);
+        return start;
+    }
+
+    private static void endFrame(ByteBuffer dst, int start) {
+        dst.putShort(start, (short) (dst.position() - start - LENGTH_SIZE));
+    }
+
+    private static void putString(ByteBuffer dst, String value) {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        putVarLong(dst, bytes.length);
+        dst.put(bytes);
+    }
+
+    private static String getString(ByteBuffer src) throws ProtocolException {
+        int length = (int) getVarLong(src);
+        if (length < 0 || length > src.remaining()) {
+            throw new ProtocolException("Invalid string length: " + length);
+        }
+        String value = new String(src.array(), src.arrayOffset() + src.position(), length, StandardCharsets.UTF_8);
+        src.position(src.position() + length);
+        return value;
+    }
+
+    static void putVarLong(ByteBuffer dst, long value) {
+        while ((value & ~0x7FL) != 0) {
+            dst.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        dst.put((byte) value);
+    }
+
+    static long getVarLong(ByteBuffer src) throws ProtocolException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = src.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new ProtocolException("Malformed varint");
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // Static identity announced by HELLO plus the delta decoding state
+    private static final class Session {
+        final int id;
+        String hostname;
+        final String os;
+        final int cpuCores;
+        final long totalMemory;
+        final String status;
+        final boolean relayed;
+        long lastTime;
+        long lastUsed;
+        boolean closed;
+        List<String> metricNames;
+        // Metrics snapshot being assembled from METRICS frames until the last one
+        String[] pendingNames;
+        double[] pendingValues;
+        int pendingCount;
+
+        Session(int id, String hostname, String os, int cpuCores, long totalMemory, String status,
+                boolean relayed) {
+            this.id = id;
+            this.hostname = hostname;
+            this.os = os;
+            this.cpuCores = cpuCores;
+            this.totalMemory = totalMemory;
+            this.status = status;
+            this.relayed = relayed;
+        }
+    }
+}
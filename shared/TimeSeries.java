@@ -0,0 +1,11 @@
+package shared;
+
+// A retained metric series that a SeriesRenderer can draw
+public interface TimeSeries {
+    /**
+     * Reduces the points no older than {@code windowMillis} before the newest
+     * one to at most {@code maxPoints} points and writes them, oldest first,
+     * into the output arrays. Returns the number of points written.
+     */
+    int downsampleRecent(long windowMillis, int maxPoints, long[] outTimes, double[] outValues);
+}
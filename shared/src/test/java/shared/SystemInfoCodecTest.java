@@ -0,0 +1,130 @@
+package shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SystemInfoCodecTest {
+    private final ByteBuffer frame = ByteBuffer.allocate(SystemInfoCodec.MAX_FRAME_SIZE);
+    private final SystemInfoCodec sender = new SystemInfoCodec();
+    private final SystemInfoCodec receiver = new SystemInfoCodec();
+
+    // A relay announces hosts for as long as its connection lives, far more than MAX_SESSIONS over time
+    @Test
+    void closedSessionIdsAreHandedOutAgain() throws ProtocolException {
+        int longLived = hello("long-lived");
+        for (int i = 0; i < SystemInfoCodec.MAX_SESSIONS + 10; i++) {
+            String hostname = "host-" + i;
+            int id = hello(hostname);
+            assertNotEquals(longLived, id);
+            assertEquals(hostname, sample(id));
+            bye(id);
+        }
+        assertEquals("long-lived", sample(longLived));
+        assertEquals(List.of("long-lived"), receiver.hostnames());
+    }
+
+    @Test
+    void openSessionsAreLimited() throws ProtocolException {
+        for (int i = 0; i < SystemInfoCodec.MAX_SESSIONS; i++) {
+            hello("host-" + i);
+        }
+        assertThrows(ProtocolException.class, () -> hello("one-too-many"));
+    }
+
+    @Test
+    void framesForClosedSessionsAreRejected() throws ProtocolException {
+        int id = hello("gone");
+        bye(id);
+        assertThrows(ProtocolException.class, () -> sample(id));
+    }
+
+    // A relay may send frames of another host between the parts of a snapshot
+    @Test
+    void splitMetricsSnapshotsOfDifferentSessionsStayApart() throws ProtocolException {
+        List<ByteBuffer> first = metricsFrames(hello("first"), 1_000_000_000_000.0);
+        List<ByteBuffer> second = metricsFrames(hello("second"), 2_000_000_000_000.0);
+        assertTrue(first.stream().filter(part -> part.get(part.position()) == SystemInfoCodec.METRICS).count() > 1,
+                "the snapshot should need more than one METRICS frame");
+
+        // Everything but the first host's last frame, then all of the second host's
+        for (ByteBuffer part : first.subList(0, first.size() - 1)) {
+            receiver.decode(part);
+            assertNull(receiver.lastMetrics());
+        }
+        for (ByteBuffer part : second) {
+            receiver.decode(part);
+        }
+        assertSnapshot("second", 2_000_000_000_000.0);
+        receiver.decode(first.get(first.size() - 1));
+        assertSnapshot("first", 1_000_000_000_000.0);
+    }
+
+    // NAMES frames followed by a snapshot of every metric there may be, each frame ready to decode
+    private List<ByteBuffer> metricsFrames(int id, double base) {
+        String[] names = new String[MetricSet.MAX_METRICS];
+        double[] values = new double[MetricSet.MAX_METRICS];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "metric." + i;
+            values[i] = base + i;
+        }
+        SystemInfoCodec session = new SystemInfoCodec();
+        session.setSessionId(id);
+        ByteBuffer encoded = ByteBuffer.allocate(SystemInfoCodec.METRICS_BUFFER_SIZE);
+        session.encodeMetrics(0, new MetricValues(names, values), encoded);
+        List<ByteBuffer> frames = new ArrayList<>();
+        encoded.flip();
+        while (encoded.hasRemaining()) {
+            int length = SystemInfoCodec.peekLength(encoded);
+            int start = encoded.position() + SystemInfoCodec.LENGTH_SIZE;
+            frames.add(ByteBuffer.wrap(encoded.array(), start, length));
+            encoded.position(start + length);
+        }
+        return frames;
+    }
+
+    private void assertSnapshot(String hostname, double base) {
+        assertEquals(hostname, receiver.lastHostname());
+        MetricValues metrics = receiver.lastMetrics();
+        assertEquals(MetricSet.MAX_METRICS, metrics.size());
+        for (int i = 0; i < metrics.size(); i++) {
+            assertEquals("metric." + i, metrics.name(i));
+            assertEquals(base + i, metrics.value(i));
+        }
+    }
+
+    private int hello(String hostname) throws ProtocolException {
+        sender.encodeHello(new SystemInfo(hostname, "Linux", 4, 0, 1L << 30, 0, "Connected"), true, frame.clear());
+        assertEquals(SystemInfoCodec.HELLO, decode());
+        return receiver.lastSessionId();
+    }
+
+    // Hostname the receiver files a sample of this session under
+    private String sample(int id) throws ProtocolException {
+        sender.setSessionId(id);
+        sender.encodeSample(new SystemInfo("ignored", "Linux", 4, 12.5, 1L << 30, 1L << 20, "Connected"), 0,
+                frame.clear());
+        assertEquals(SystemInfoCodec.BATCH, decode());
+        return receiver.samples().get(0).getHostname();
+    }
+
+    private void bye(int id) throws ProtocolException {
+        sender.setSessionId(id);
+        sender.encodeBye(frame.clear());
+        assertEquals(SystemInfoCodec.BYE, decode());
+    }
+
+    private byte decode() throws ProtocolException {
+        frame.flip().position(SystemInfoCodec.LENGTH_SIZE);
+        return receiver.decode(frame);
+    }
+}